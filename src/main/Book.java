@@ -1,24 +1,63 @@
 package main;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 
 public class Book {
 	
+	/** Last checkout day of a book that was never checked out.*/
+	public static final int NO_DATE = Integer.MIN_VALUE;
+	/** Day the library works with, books are checked out on it and fees are calculated up to it, as an epoch day.*/
+	static final int TODAY = (int) LocalDate.of(2023, 9, 15).toEpochDay();
+	/** Days since the checkout at which a book starts owing fees.*/
+	static final int LATE_AFTER_DAYS = 31;
+	/** Fee of a book the day it becomes late, in cents.*/
+	static final long BASE_FEE_CENTS = 1000;
+	/** Fee added for every day after that, in cents.*/
+	static final long DAILY_FEE_CENTS = 150;
+	
 	private int id;
 	private String title;
+	/** Books read from a file share the strings of equal authors and genres, see {@link StringDictionary}.*/
 	private String author;
 	private String genre;
-	private LocalDate lastCheckoutDate;
+	/** Last checkout date as an epoch day (days since 1970-01-01), LocalDate is only created by the getter.*/
+	private int lastCheckoutDay;
 	private boolean checkedOut;
+	/** Whether the book changed since it was last saved, set by every setter.*/
+	private boolean dirty;
 	
 	public Book(int id, String title, String author, String genre, LocalDate lastCheckoutDate, boolean checkedOut) {
+		this(id, title, author, genre, toEpochDay(lastCheckoutDate), checkedOut);
+	}
+	
+	/**
+	 * Constructs a book with the last checkout date as an epoch day.
+	 * 
+	 * @param lastCheckoutDay Epoch day of the last checkout, or {@link #NO_DATE}.
+	 * 
+	*/
+	public Book(int id, String title, String author, String genre, int lastCheckoutDay, boolean checkedOut) {
 		this.id = id;
 		this.title = title;
 		this.author = author;
 		this.genre = genre;
-		this.lastCheckoutDate = lastCheckoutDate;
+		this.lastCheckoutDay = lastCheckoutDay;
 		this.checkedOut = checkedOut;
+	}
+	
+	/**
+	 * Constructs a copy of a book. The author and genre strings are shared with it.
+	 * 
+	 * @param other Book to copy.
+	 * 
+	*/
+	Book(Book other) {
+		this.id = other.getId();
+		this.title = other.getTitle();
+		this.author = other.getAuthor();
+		this.genre = other.getGenre();
+		this.lastCheckoutDay = other.getLastCheckoutDay();
+		this.checkedOut = other.isCheckedOut();
 	}	
 	
 	public int getId() {
@@ -27,6 +66,7 @@ public class Book {
 	
 	public void setId(int id) {
 		this.id = id;
+		dirty = true;
 	}
 	
 	public String getTitle() {
@@ -35,6 +75,7 @@ public class Book {
 	
 	public void setTitle(String title) {
 		this.title = title;
+		dirty = true;
 	}
 	public String getAuthor() {
 		return author;
@@ -42,6 +83,7 @@ public class Book {
 	
 	public void setAuthor(String author) {
 		this.author = author;
+		dirty = true;
 	}
 	
 	public String getGenre() {
@@ -49,19 +91,56 @@ public class Book {
 	}
 	public void setGenre(String genre) {
 		this.genre = genre;
+		dirty = true;
 	}
 	
 	public LocalDate getLastCheckOut() {
-		return lastCheckoutDate;
+		return toDate(getLastCheckoutDay());
 	}
 	public void setLastCheckOut(LocalDate lastCheckOut) {
-		this.lastCheckoutDate = lastCheckOut;
+		setLastCheckoutDay(toEpochDay(lastCheckOut));
+	}
+	
+	/** Returns the last checkout date as an epoch day, or {@link #NO_DATE} if the book was never checked out. */
+	public int getLastCheckoutDay() {
+		return lastCheckoutDay;
+	}
+	public void setLastCheckoutDay(int lastCheckoutDay) {
+		this.lastCheckoutDay = lastCheckoutDay;
+		dirty = true;
+	}
+	
+	/** Converts a date to an epoch day, {@code null} becomes {@link #NO_DATE}. */
+	static int toEpochDay(LocalDate date) {
+		return date == null ? NO_DATE : (int) date.toEpochDay();
+	}
+	
+	/** Converts an epoch day to a date, {@link #NO_DATE} becomes {@code null}. */
+	static LocalDate toDate(int epochDay) {
+		return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
 	}
 	public boolean isCheckedOut() {
 		return checkedOut;
 	}
 	public void setCheckedOut(boolean checkedOut) {
 		this.checkedOut = checkedOut;
+		dirty = true;
+	}
+	
+	/** Returns the position of the book in the store it's a view of, or -1 if the book holds its own data. */
+	int getStoreIndex() {
+		return -1;
+	}
+	
+	/** Returns whether the book changed since it was last saved. */
+	public boolean isDirty() {
+		return dirty;
+	}
+	public void markDirty() {
+		this.dirty = true;
+	}
+	public void markClean() {
+		this.dirty = false;
 	}
 	
 	@Override
@@ -73,30 +152,69 @@ public class Book {
 		 * 
 		 * Both the title and author are in uppercase.
 		 */
-		return title.toUpperCase() + " BY " + author.toUpperCase();
+		return getTitle().toUpperCase() + " BY " + getAuthor().toUpperCase();
 	}
 	
 	
 	
 	/**
-	 * Calculates the late fee for a checked out book based on the number of days it's overdue.
+	 * Calculates the late fee for a checked out book based on the number of days it's overdue. The days are a
+	 * subtraction of epoch days, nothing is allocated. The fee is calculated up to the fixed day the library
+	 * works with ({@link #TODAY}), not the clock of a catalog, see {@link #calculateFees(FeeEngine)}.
 	 * 
-	 * @return How much money is owed in late fees, or 0 if not overdue
+	 * @return How much money is owed in late fees, or 0 if not overdue or never checked out
 	 * 
 	*/
 	public float calculateFees() {
+		return calculateFees(getLastCheckoutDay(), TODAY);
+	}
+	
+	/**
+	 * Calculates the late fee of the book as of the current day of a fee engine, like the one of the catalog
+	 * the book belongs to (see {@link LibraryCatalog#getFeeEngine()}).
+	 * 
+	 * @param engine Engine that tells the current day.
+	 * @return How much money is owed in late fees, or 0 if not overdue or never checked out
+	 * 
+	*/
+	public float calculateFees(FeeEngine engine) {
+		return engine.fee(this, engine.today());
+	}
+	
+	/**
+	 * Calculates the late fee of a book checked out on a day, as of another day. Used by code that keeps the
+	 * checkout days without the books.
+	 * 
+	 * @param lastCheckoutDay Epoch day of the last checkout, or {@link #NO_DATE}.
+	 * @param asOfDay Epoch day the fee is calculated up to.
+	 * @return How much money is owed in late fees, or 0 if not overdue or never checked out
+	 * 
+	*/
+	static float calculateFees(int lastCheckoutDay, int asOfDay) {
+		return calculateFeeCents(lastCheckoutDay, asOfDay) / 100.0f;
+	}
+	
+	/**
+	 * Calculates the late fee of a book checked out on a day, as of another day, in cents. Fees are added up
+	 * in cents, so totals are exact no matter how many books are added.
+	 * 
+	 * @param lastCheckoutDay Epoch day of the last checkout, or {@link #NO_DATE}.
+	 * @param asOfDay Epoch day the fee is calculated up to.
+	 * @return How many cents are owed in late fees, or 0 if not overdue or never checked out
+	 * 
+	*/
+	static long calculateFeeCents(int lastCheckoutDay, int asOfDay) {
 		
-		LocalDate today = LocalDate.of(2023, 9, 15);
-		long daysSince = ChronoUnit.DAYS.between(this.getLastCheckOut(), today);
+		if (lastCheckoutDay == NO_DATE) {
+			return 0;
+		}
+		long daysSince = (long) asOfDay - lastCheckoutDay;
 		
-		if (daysSince >= 31) {
-			float baseFee = 10.0f;
-			float additionalFees = 1.50f;
-			float lateFee = baseFee + additionalFees * (daysSince - 31);
-			return lateFee;
+		if (daysSince >= LATE_AFTER_DAYS) {
+			return BASE_FEE_CENTS + DAILY_FEE_CENTS * (daysSince - LATE_AFTER_DAYS);
 		}
 		else {
-			return 0.0f;
+			return 0;
 		}		
 	}
 }
@@ -0,0 +1,89 @@
+package main;
+
+
+/**
+ * Class that represents a change made to a LibraryCatalog. The catalog publishes one event for every book
+ * that is added, removed, checked out or returned, so views and indexes can update themselves with the change
+ * instead of rescanning the whole catalog.
+ * 
+*/
+public class CatalogEvent {
+
+	/** Kinds of changes the catalog publishes. */
+	public enum Type {
+		/** A new book was added to the catalog. */
+		BOOK_ADDED,
+		/** A book was removed from the catalog. */
+		BOOK_REMOVED,
+		/** A book was checked out, by a user if {@link CatalogEvent#getUserId()} isn't {@link CatalogEvent#NO_USER}. */
+		BOOK_CHECKED_OUT,
+		/** A book was returned, by a user if {@link CatalogEvent#getUserId()} isn't {@link CatalogEvent#NO_USER}. */
+		BOOK_RETURNED,
+		/**
+		 * A returned book was taken out of the checked out list of another user that had it, published right after
+		 * {@link #BOOK_RETURNED} once for every such user. The book itself didn't change again.
+		 */
+		BOOK_RELEASED
+	}
+
+	/** User ID of the events that aren't tied to a user.*/
+	public static final int NO_USER = -1;
+
+	/** Kind of change.*/
+	private final Type type;
+	/** Version of the catalog right after the change.*/
+	private final long version;
+	/** Book that changed.*/
+	private final Book book;
+	/** ID of the user that checked out or returned the book, or NO_USER.*/
+	private final int userId;
+
+
+	/**
+	 * Constructs a new event.
+	 * 
+	 * @param type Kind of change.
+	 * @param version Version of the catalog right after the change.
+	 * @param book Book that changed.
+	 * @param userId ID of the user involved, or {@link #NO_USER}.
+	 * 
+	*/
+	public CatalogEvent(Type type, long version, Book book, int userId) {
+		this.type = type;
+		this.version = version;
+		this.book = book;
+		this.userId = userId;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the book that changed. It's the live book of the catalog, so listeners that receive the event
+	 * later (asynchronously) may see changes made after the event.
+	 * 
+	 * @return The book that changed.
+	 * 
+	*/
+	public Book getBook() {
+		return book;
+	}
+
+	public int getBookId() {
+		return book.getId();
+	}
+
+	public int getUserId() {
+		return userId;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + book.getId() + (userId == NO_USER ? "" : " user " + userId) + " @" + version;
+	}
+}
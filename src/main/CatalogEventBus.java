@@ -0,0 +1,218 @@
+package main;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Class that delivers the CatalogEvents of a LibraryCatalog to its listeners. Listeners can be registered in two
+ * ways:
+ * <ul>
+ * <li>Synchronous: called right away by the thread that changed the catalog, while it still holds the catalog
+ * lock. They see every event in order and the book exactly as the change left it, so they must be quick and
+ * shouldn't block.</li>
+ * <li>Asynchronous: every listener gets its own bounded ring buffer drained by a daemon thread, so slow
+ * listeners never hold back the catalog. If the buffer is full the event is dropped and counted in
+ * {@link Subscription#getDroppedEvents()}, a listener that sees drops should rebuild its state from the
+ * catalog.</li>
+ * </ul>
+ * 
+*/
+public class CatalogEventBus {
+
+	/** Default capacity of the ring buffer of asynchronous listeners.*/
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** Listeners called by the publishing thread.*/
+	private final CopyOnWriteArrayList<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+	/** Asynchronous listeners with their buffers.*/
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * Registers a listener that is called synchronously for every event.
+	 * 
+	 * @param listener Listener to register.
+	 * 
+	*/
+	public void addListener(CatalogListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a synchronous listener.
+	 * 
+	 * @param listener Listener to unregister.
+	 * @return {@code true} if the listener was registered.
+	 * 
+	*/
+	public boolean removeListener(CatalogListener listener) {
+		return listeners.remove(listener);
+	}
+
+	/**
+	 * Registers a listener that is called asynchronously with a ring buffer of {@link #DEFAULT_CAPACITY} events.
+	 * 
+	 * @param listener Listener to register.
+	 * @return The subscription, used to check dropped events and to unregister the listener.
+	 * 
+	*/
+	public Subscription addAsyncListener(CatalogListener listener) {
+		return addAsyncListener(listener, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Registers a listener that is called asynchronously, in order, by its own daemon thread.
+	 * 
+	 * @param listener Listener to register.
+	 * @param capacity Maximum number of events waiting to be delivered to the listener.
+	 * @return The subscription, used to check dropped events and to unregister the listener.
+	 * @throws IllegalArgumentException if the capacity isn't positive.
+	 * 
+	*/
+	public Subscription addAsyncListener(CatalogListener listener, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		Subscription subscription = new Subscription(listener, capacity);
+		subscriptions.add(subscription);
+		subscription.thread.start();
+		return subscription;
+	}
+
+
+	/**
+	 * Delivers an event to every listener. Exceptions thrown by synchronous listeners are reported and don't stop
+	 * the delivery to the rest, since the change was already made.
+	 * 
+	 * @param event Event to deliver.
+	 * 
+	*/
+	public void publish(CatalogEvent event) {
+		for (CatalogListener listener : listeners) {
+			try {
+				listener.onEvent(event);
+			}
+			catch (RuntimeException e) {
+				System.err.println("Catalog listener failed on " + event + ": " + e);
+			}
+		}
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(event);
+		}
+	}
+
+	/** Returns whether any listener is registered, so publishers can skip building events nobody reads. */
+	public boolean hasListeners() {
+		return !listeners.isEmpty() || !subscriptions.isEmpty();
+	}
+
+
+	/**
+	 * Asynchronous listener together with its ring buffer and delivery thread.
+	 */
+	public class Subscription {
+
+		private final CatalogListener listener;
+		private final CatalogEvent[] ring;
+		private final Thread thread;
+		/** Position of the oldest event waiting in the ring.*/
+		private int head;
+		/** Number of events waiting in the ring.*/
+		private int size;
+		/** Whether the listener is handling an event taken from the ring.*/
+		private boolean delivering;
+		private long dropped;
+		private boolean closed;
+
+		private Subscription(CatalogListener listener, int capacity) {
+			this.listener = listener;
+			this.ring = new CatalogEvent[capacity];
+			this.thread = new Thread(this::deliver, "catalog-events-" + subscriptions.size());
+			this.thread.setDaemon(true);
+		}
+
+		private synchronized void offer(CatalogEvent event) {
+			if (closed) {
+				return;
+			}
+			if (size == ring.length) {
+				dropped++;
+				return;
+			}
+			ring[(head + size) % ring.length] = event;
+			size++;
+			notifyAll();
+		}
+
+		private synchronized CatalogEvent take() throws InterruptedException {
+			while (size == 0 && !closed) {
+				wait();
+			}
+			if (size == 0) {
+				return null;
+			}
+			CatalogEvent event = ring[head];
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			size--;
+			delivering = true;
+			return event;
+		}
+
+		private synchronized void delivered() {
+			delivering = false;
+			notifyAll();
+		}
+
+		private void deliver() {
+			try {
+				CatalogEvent event;
+				while ((event = take()) != null) {
+					try {
+						listener.onEvent(event);
+					}
+					catch (RuntimeException e) {
+						System.err.println("Catalog listener failed on " + event + ": " + e);
+					}
+					delivered();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/** Returns the number of events dropped because the buffer was full. */
+		public synchronized long getDroppedEvents() {
+			return dropped;
+		}
+
+		/** Returns the number of events waiting to be delivered. */
+		public synchronized int getPendingEvents() {
+			return size;
+		}
+
+		/**
+		 * Waits until every event offered so far was delivered to the listener.
+		 * 
+		 * @throws InterruptedException if interrupted while waiting.
+		 * 
+		*/
+		public synchronized void awaitDelivery() throws InterruptedException {
+			while (size > 0 || delivering) {
+				wait();
+			}
+		}
+
+		/**
+		 * Unregisters the listener. Events already in the buffer are still delivered, new ones are ignored.
+		 */
+		public void close() {
+			subscriptions.remove(this);
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import interfaces.List;
+
+
+/**
+ * Class that serves a LibraryCatalog over HTTP so several self-checkout kiosks can share one catalog. It uses
+ * the HTTP server that comes with the JDK and answers in plain text, one record per line.
+ * 
+ * Endpoints:
+ * <ul>
+ * <li>{@code GET /search?title=&author=&genre=} - books matching every given field ignoring case, as
+ * {@code id,title,author,genre,available}, fields with commas, quotes or line breaks are quoted like in the
+ * CSV files</li>
+ * <li>{@code GET /availability?book=ID} - {@code true} if the book can be checked out</li>
+ * <li>{@code GET /fees?user=ID} - late fees owed by the user</li>
+ * <li>{@code POST /checkout?user=ID&book=ID,ID,...} - checks out the books for the user, one {@code id,result}
+ * line per book</li>
+ * <li>{@code POST /return?book=ID,ID,...} - returns the books, one {@code id,result} line per book</li>
+ * </ul>
+ * 
+ * Each request runs on its own virtual thread when the JVM supports them, otherwise on a cached thread pool.
+ * Invalid parameters are answered with a 400 and unexpected errors with a 500.
+ * 
+*/
+public class CatalogHttpServer {
+
+	/** Default port the server listens on.*/
+	public static final int DEFAULT_PORT = 8080;
+
+	/** Catalog served by this server.*/
+	private final LibraryCatalog catalog;
+	/** Underlying JDK HTTP server.*/
+	private final HttpServer server;
+	/** Runs the handlers, one thread per request.*/
+	private final ExecutorService executor;
+
+
+	/**
+	 * Constructs a server for the catalog bound to the given port. The server doesn't accept requests until
+	 * {@link #start()} is called.
+	 * 
+	 * @param catalog Catalog to serve.
+	 * @param port Port to listen on, 0 picks a free one.
+	 * @throws IOException if the port can't be bound.
+	 * 
+	*/
+	public CatalogHttpServer(LibraryCatalog catalog, int port) throws IOException {
+		this.catalog = catalog;
+		this.server = HttpServer.create(new InetSocketAddress(port), 4096);
+		this.executor = newRequestExecutor();
+
+		server.createContext("/search", exchange -> handle(exchange, "GET", this::search));
+		server.createContext("/availability", exchange -> handle(exchange, "GET", this::availability));
+		server.createContext("/fees", exchange -> handle(exchange, "GET", this::fees));
+		server.createContext("/checkout", exchange -> handle(exchange, "POST", this::checkout));
+		server.createContext("/return", exchange -> handle(exchange, "POST", this::returnBooks));
+		server.setExecutor(executor);
+	}
+
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread. Virtual threads need Java 21, on older
+	 * JVMs it falls back to a cached thread pool.
+	 * 
+	 * @return Executor with one thread per task.
+	 * 
+	*/
+	static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+
+	/** Starts accepting requests. */
+	public void start() {
+		server.start();
+	}
+
+	/** Stops the server, waiting up to a second for the requests in progress to finish. */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/** Returns the port the server is listening on. */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+
+	/** Handles a request that was already validated, returns the body of the response. */
+	@FunctionalInterface
+	private interface Endpoint {
+		String respond(HashMap<String, String> params) throws BadRequestException;
+	}
+
+	/** Thrown by the endpoints when a parameter is missing or invalid, answered with a 400. */
+	@SuppressWarnings("serial")
+	private static class BadRequestException extends Exception {
+		BadRequestException(String message) {
+			super(message);
+		}
+	}
+
+
+	/**
+	 * Checks the method of the request, runs the endpoint and sends its response.
+	 * 
+	 * @param exchange Request being handled.
+	 * @param method Method accepted by the endpoint.
+	 * @param endpoint Endpoint that builds the response.
+	 * @throws IOException if the response can't be sent.
+	 * 
+	*/
+	private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+				send(exchange, 405, "Method not allowed\n");
+				return;
+			}
+			String body = endpoint.respond(parseQuery(exchange.getRequestURI().getRawQuery()));
+			if (body == null) {
+				send(exchange, 404, "Not found\n");
+			}
+			else {
+				send(exchange, 200, body);
+			}
+		}
+		catch (BadRequestException e) {
+			send(exchange, 400, e.getMessage() + "\n");
+		}
+		catch (RuntimeException e) {
+			// the client still gets an answer, the error goes to the server's log
+			System.err.println("Catalog request " + exchange.getRequestURI() + " failed: " + e);
+			send(exchange, 500, "Internal server error\n");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Splits a raw query string into its decoded parameters.
+	 * 
+	 * @param query Raw query of the request, may be {@code null}.
+	 * @return Map of parameter names to values.
+	 * 
+	*/
+	private static HashMap<String, String> parseQuery(String query) {
+		HashMap<String, String> params = new HashMap<>();
+		if (query == null || query.isEmpty()) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	private static int intParam(HashMap<String, String> params, String name) throws BadRequestException {
+		String value = params.get(name);
+		if (value == null) {
+			throw new BadRequestException("Missing parameter " + name);
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new BadRequestException("Invalid " + name + ": " + value);
+		}
+	}
+
+	private static int[] intListParam(HashMap<String, String> params, String name) throws BadRequestException {
+		String value = params.get(name);
+		if (value == null || value.isBlank()) {
+			throw new BadRequestException("Missing parameter " + name);
+		}
+		String[] split = value.split(",");
+		int[] ids = new int[split.length];
+		try {
+			for (int i = 0; i < split.length; i++) {
+				ids[i] = Integer.parseInt(split[i].trim());
+			}
+		}
+		catch (NumberFormatException e) {
+			throw new BadRequestException("Invalid " + name + ": " + value);
+		}
+		return ids;
+	}
+
+
+	private String search(HashMap<String, String> params) {
+		String title = params.get("title");
+		String author = params.get("author");
+		String genre = params.get("genre");
+		List<Book> books = catalog.searchForBook(book ->
+				(genre == null || genre.equalsIgnoreCase(book.getGenre()))
+				&& (author == null || author.equalsIgnoreCase(book.getAuthor()))
+				&& (title == null || book.getTitle().equalsIgnoreCase(title)));
+
+		StringBuilder body = new StringBuilder();
+		for (Book book : books) {
+			body.append(book.getId()).append(',').append(CsvReader.quote(book.getTitle())).append(',')
+					.append(CsvReader.quote(book.getAuthor())).append(',')
+					.append(CsvReader.quote(book.getGenre())).append(',').append(!book.isCheckedOut())
+					.append('\n');
+		}
+		return body.toString();
+	}
+
+	private String availability(HashMap<String, String> params) throws BadRequestException {
+		return catalog.getBookAvailability(intParam(params, "book")) + "\n";
+	}
+
+	private String fees(HashMap<String, String> params) throws BadRequestException {
+		User user = catalog.findUser(intParam(params, "user"));
+		if (user == null) {
+			return null;
+		}
+		return MoneyFormat.format(catalog.calculateLibraryFeeCents(user)) + "\n";
+	}
+
+	private String checkout(HashMap<String, String> params) throws BadRequestException {
+		int userId = intParam(params, "user");
+		int[] bookIds = intListParam(params, "book");
+		if (catalog.findUser(userId) == null) {
+			return null;
+		}
+		return results(bookIds, catalog.checkOutBooks(userId, bookIds));
+	}
+
+	private String returnBooks(HashMap<String, String> params) throws BadRequestException {
+		int[] bookIds = intListParam(params, "book");
+		return results(bookIds, catalog.returnBooks(bookIds));
+	}
+
+	private static String results(int[] bookIds, boolean[] results) {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < bookIds.length; i++) {
+			body.append(bookIds[i]).append(',').append(results[i]).append('\n');
+		}
+		return body.toString();
+	}
+
+
+	public static void main(String[] args) {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		try {
+			CatalogHttpServer server = new CatalogHttpServer(new LibraryCatalog(), port);
+			server.start();
+			System.out.println("Serving the library catalog on port " + server.getPort());
+		}
+		catch (IOException e) {
+			System.err.println("Catalog server failed to start: " + e);
+		}
+	}
+}
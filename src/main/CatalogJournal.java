@@ -0,0 +1,557 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+
+/**
+ * Class that keeps an append-only write-ahead journal of the changes made to a LibraryCatalog, so checkouts and
+ * returns survive a crash without rewriting the data files on every change.
+ * 
+ * The journal listens to the events of the catalog. Every event is encoded into an in-memory buffer while the
+ * catalog lock is held, which only takes microseconds, and a background thread writes the buffer to the file
+ * and forces it to disk. Events that arrive while the thread is forcing the file are written together in the
+ * next round (group commit), so a single fsync covers many operations. Callers that need to know a change is
+ * on disk wait for it with {@link #awaitDurable(long)}.
+ * 
+ * On startup the catalog is loaded from the last checkpoint (a snapshot file, or the CSV files if there's
+ * none) and {@link #open(LibraryCatalog, Path)} replays the journal records newer than the catalog version.
+ * {@link #checkpoint(Path)} saves a snapshot and drops the records it covers. {@link #recover(Path, Path)} does
+ * both, a typical startup is:
+ * 
+ * <pre>
+ * CatalogJournal journal = CatalogJournal.recover(snapshot, journalFile);
+ * journal.scheduleCheckpoints(snapshot, 10, TimeUnit.MINUTES);
+ * </pre>
+ * 
+ * Each record is framed by its length and a CRC32, so a record torn by a crash is detected and discarded. A
+ * record holds the catalog version, the type of the event with the record format in its high bits, the book
+ * and user IDs, every field of an added book, and the epoch day of a checkout, so a replayed checkout keeps its
+ * day instead of taking the current one. Records written before the format was numbered have 0 there and no
+ * checkout day.
+ * 
+*/
+public class CatalogJournal implements CatalogListener, Closeable {
+
+	/** Initial size of the buffer of records waiting to be written.*/
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Format of the records written, kept in the high bits of the type byte.*/
+	private static final int RECORD_FORMAT = 1;
+	private static final int FORMAT_SHIFT = 4;
+
+	private final LibraryCatalog catalog;
+	private final Path path;
+	/** Journal segment that was rotated out by a checkpoint in progress.*/
+	private final Path previous;
+	private final Thread writer;
+	private FileChannel channel;
+	private ScheduledExecutorService checkpoints;
+
+	// guarded by this
+	/** Records encoded but not written yet.*/
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	/** Buffer being written by the writer thread, swapped with pending.*/
+	private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE);
+	/** Version of the last record appended.*/
+	private long appendedVersion;
+	/** Version of the last record forced to disk.*/
+	private long durableVersion;
+	/** Whether a checkpoint asked the writer to start a new segment.*/
+	private boolean rotateRequested;
+	/** Error of the writer thread, the journal stops accepting records after it.*/
+	private IOException failure;
+	private boolean closed;
+
+
+	private CatalogJournal(LibraryCatalog catalog, Path path) throws IOException {
+		this.catalog = catalog;
+		this.path = path;
+		this.previous = previousOf(path);
+		boolean created = !Files.exists(path);
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if (created) {
+			// records forced to a new file are lost in a crash if the file itself isn't
+			CatalogSnapshotFile.forceDirectory(path.toAbsolutePath().getParent());
+		}
+		this.appendedVersion = catalog.getVersion();
+		this.durableVersion = appendedVersion;
+		this.writer = new Thread(this::writeLoop, "catalog-journal");
+		this.writer.setDaemon(true);
+	}
+
+
+	/**
+	 * Replays a journal onto a catalog and starts journaling its changes. Records with a version the catalog
+	 * already has are skipped, so the catalog should come from the last checkpoint (or the CSV files if there
+	 * wasn't any checkpoint yet).
+	 * 
+	 * @param catalog Catalog to recover and journal.
+	 * @param path File of the journal, created if it doesn't exist.
+	 * @return The journal, registered as a listener of the catalog.
+	 * @throws IOException if an error occurs while reading or opening the journal.
+	 * 
+	*/
+	public static CatalogJournal open(LibraryCatalog catalog, Path path) throws IOException {
+		Path previous = previousOf(path);
+		synchronized (catalog) {
+			// a checkpoint that didn't finish leaves the older records in the previous segment
+			if (Files.exists(previous)) {
+				replay(previous, catalog);
+			}
+			if (Files.exists(path)) {
+				replay(path, catalog);
+			}
+			CatalogJournal journal = new CatalogJournal(catalog, path);
+			catalog.getEvents().addListener(journal);
+			journal.writer.start();
+			return journal;
+		}
+	}
+
+	/**
+	 * Loads the catalog from its last checkpoint and replays the journal onto it, see
+	 * {@link #open(LibraryCatalog, Path)}. Without a checkpoint the catalog is read from the CSV files. The
+	 * deltas of an {@link IncrementalCatalogSaver} are merged into them first only if the journal has no
+	 * records yet: once it has, it recorded the same changes from the CSV files as they were, and merging them
+	 * would apply them twice.
+	 * 
+	 * @param snapshot Snapshot file saved by {@link #checkpoint(Path)}, may not exist yet.
+	 * @param path File of the journal, created if it doesn't exist.
+	 * @return The journal of the recovered catalog.
+	 * @throws IOException if an error occurs while reading the files.
+	 * 
+	*/
+	public static CatalogJournal recover(Path snapshot, Path path) throws IOException {
+		LibraryCatalog catalog;
+		if (Files.exists(snapshot)) {
+			catalog = LibraryCatalog.loadSnapshot(snapshot);
+		}
+		else {
+			if (isEmpty(path) && isEmpty(previousOf(path))) {
+				IncrementalCatalogSaver.compact(Paths.get(LibraryCatalog.CATALOG_FILE),
+						Paths.get(LibraryCatalog.USER_FILE));
+			}
+			catalog = new LibraryCatalog();
+		}
+		return open(catalog, path);
+	}
+
+	/** Returns the segment a checkpoint in progress moves the records to. */
+	private static Path previousOf(Path path) {
+		return path.resolveSibling(path.getFileName() + ".old");
+	}
+
+	private static boolean isEmpty(Path segment) throws IOException {
+		return !Files.exists(segment) || Files.size(segment) == 0;
+	}
+
+	/** Returns the catalog this journal records. */
+	public LibraryCatalog getCatalog() {
+		return catalog;
+	}
+
+
+	/**
+	 * Appends the record of an event to the buffer of the writer thread. Called by the catalog while it holds its
+	 * lock, it never touches the disk.
+	 * 
+	 * @param event Event to record.
+	 * 
+	*/
+	@Override
+	public void onEvent(CatalogEvent event) {
+		if (event.getType() == CatalogEvent.Type.BOOK_RELEASED) {
+			return; // replaying the return takes the book out of every list again
+		}
+		synchronized (this) {
+			if (closed || failure != null) {
+				return;
+			}
+			int start = pending.position();
+			ensureCapacity(event.getType() == CatalogEvent.Type.BOOK_ADDED ? 64 + recordStringsSize(event.getBook()) : 64);
+			pending.putInt(0); // length, filled below
+			pending.putLong(event.getVersion());
+			pending.put((byte) (RECORD_FORMAT << FORMAT_SHIFT | event.getType().ordinal()));
+			pending.putInt(event.getBookId());
+			pending.putInt(event.getUserId());
+			if (event.getType() == CatalogEvent.Type.BOOK_CHECKED_OUT) {
+				pending.putInt(event.getBook().getLastCheckoutDay());
+			}
+			else if (event.getType() == CatalogEvent.Type.BOOK_ADDED) {
+				Book book = event.getBook();
+				putString(book.getTitle());
+				putString(book.getAuthor());
+				putString(book.getGenre());
+				pending.putLong(book.getLastCheckoutDay() == Book.NO_DATE ? Long.MIN_VALUE : book.getLastCheckoutDay());
+				pending.put((byte) (book.isCheckedOut() ? 1 : 0));
+			}
+			int length = pending.position() - start - 4;
+			pending.putInt(start, length);
+			CRC32 checksum = new CRC32();
+			checksum.update(pending.array(), start + 4, length);
+			pending.putInt((int) checksum.getValue());
+
+			appendedVersion = Math.max(appendedVersion, event.getVersion());
+			notifyAll();
+		}
+	}
+
+	private static int recordStringsSize(Book book) {
+		// a UTF-8 character takes at most 3 bytes for chars of a Java string
+		return 3 * (book.getTitle().length() + book.getAuthor().length() + book.getGenre().length());
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (pending.remaining() < bytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+	}
+
+	private void putString(String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		pending.putInt(bytes.length);
+		pending.put(bytes);
+	}
+
+
+	/**
+	 * Loop of the writer thread: takes every record appended so far, writes them with a single write and forces
+	 * them to disk, then wakes up the callers waiting for those versions.
+	 */
+	private void writeLoop() {
+		while (true) {
+			long version;
+			boolean rotate;
+			synchronized (this) {
+				while (pending.position() == 0 && !rotateRequested && !closed) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				if (pending.position() == 0 && closed) {
+					notifyAll();
+					return;
+				}
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				pending.clear();
+				version = appendedVersion;
+				rotate = rotateRequested;
+			}
+
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) {
+					channel.write(writing);
+				}
+				writing.clear();
+				channel.force(false);
+				if (rotate) {
+					rotate();
+				}
+				synchronized (this) {
+					durableVersion = version;
+					if (rotate) {
+						rotateRequested = false;
+					}
+					notifyAll();
+				}
+			}
+			catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				System.err.println("Catalog journal failed, changes are no longer journaled: " + e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves the current segment out of the way and starts a new one. If the previous segment of a failed
+	 * checkpoint is still there, the current segment is added to it so no records are lost.
+	 */
+	private void rotate() throws IOException {
+		channel.close();
+		if (Files.exists(previous)) {
+			try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+					FileChannel target = FileChannel.open(previous, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+				long position = 0;
+				while (position < source.size()) {
+					position += source.transferTo(position, source.size() - position, target);
+				}
+				target.force(false);
+			}
+			Files.delete(path);
+		}
+		else {
+			Files.move(path, previous, StandardCopyOption.ATOMIC_MOVE);
+		}
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		CatalogSnapshotFile.forceDirectory(path.toAbsolutePath().getParent());
+	}
+
+
+	/**
+	 * Waits until the changes up to a catalog version are on disk.
+	 * 
+	 * @param version Catalog version, usually {@link CatalogEvent#getVersion()} or
+	 * {@link LibraryCatalog#getVersion()} right after a change.
+	 * @throws IOException if the journal failed to write the changes.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * 
+	*/
+	public synchronized void awaitDurable(long version) throws IOException, InterruptedException {
+		while (durableVersion < version && failure == null) {
+			if (closed && pending.position() == 0 && durableVersion == appendedVersion) {
+				break; // nothing else will be written
+			}
+			wait();
+		}
+		if (durableVersion < version) {
+			throw new IOException("Catalog journal failed before version " + version + " was written", failure);
+		}
+	}
+
+	/**
+	 * Waits until every change journaled so far is on disk.
+	 * 
+	 * @throws IOException if the journal failed to write the changes.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * 
+	*/
+	public void sync() throws IOException, InterruptedException {
+		long version;
+		synchronized (this) {
+			version = appendedVersion;
+		}
+		awaitDurable(version);
+	}
+
+
+	/**
+	 * Saves a snapshot of the catalog and drops the journal records it covers. The journal moves to a new
+	 * segment first, then the snapshot is saved and the old segment deleted. The old segment is only deleted once
+	 * the snapshot file and its directory are forced to disk, so a crash at any point leaves either the snapshot
+	 * or the records it covers. If saving fails the old segment is kept and replayed on the next startup.
+	 * 
+	 * @param snapshot File to save the snapshot to.
+	 * @throws IOException if an error occurs while writing the snapshot or the journal.
+	 * @throws InterruptedException if interrupted while waiting for the journal.
+	 * 
+	*/
+	public void checkpoint(Path snapshot) throws IOException, InterruptedException {
+		synchronized (this) {
+			if (failure != null) {
+				throw new IOException("Catalog journal failed", failure);
+			}
+			rotateRequested = true;
+			notifyAll();
+			while (rotateRequested && failure == null) {
+				wait();
+			}
+			if (failure != null) {
+				throw new IOException("Catalog journal failed", failure);
+			}
+		}
+		// every record of the old segment is older than the snapshot, the new segment may have some that are too
+		// but they are skipped on replay by version. saveSnapshot forces the snapshot and its directory before it
+		// returns, the old segment must not go away while the snapshot may still be lost.
+		catalog.saveSnapshot(snapshot);
+		Files.deleteIfExists(previous);
+	}
+
+	/**
+	 * Saves a checkpoint periodically on a background thread. Failed checkpoints are reported and retried on
+	 * the next period.
+	 * 
+	 * @param snapshot File to save the snapshots to.
+	 * @param period Time between checkpoints.
+	 * @param unit Unit of the period.
+	 * 
+	*/
+	public synchronized void scheduleCheckpoints(Path snapshot, long period, TimeUnit unit) {
+		if (checkpoints == null) {
+			checkpoints = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "catalog-checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		checkpoints.scheduleAtFixedRate(() -> {
+			try {
+				checkpoint(snapshot);
+			}
+			catch (IOException e) {
+				System.err.println("Catalog checkpoint failed: " + e);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, period, period, unit);
+	}
+
+
+	/**
+	 * Stops journaling the catalog. Records appended so far are written and forced to disk before closing.
+	 * 
+	 * @throws IOException if the journal failed to write some records.
+	 * 
+	*/
+	@Override
+	public void close() throws IOException {
+		catalog.getEvents().removeListener(this);
+		ScheduledExecutorService scheduled;
+		synchronized (this) {
+			closed = true;
+			scheduled = checkpoints;
+			notifyAll();
+		}
+		if (scheduled != null) {
+			scheduled.shutdownNow();
+		}
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+
+	/**
+	 * Applies the records of a journal segment to a catalog, skipping the ones it already has. Reading stops at
+	 * the first incomplete or corrupted record, which is what a crash in the middle of a write leaves behind, and
+	 * the segment is truncated there so new records follow the last good one.
+	 * 
+	 * @param segment Journal segment to replay.
+	 * @param catalog Catalog to apply the records to, its lock must be held.
+	 * @throws IOException if an error occurs while reading the segment, or it has records of a newer format.
+	 * 
+	*/
+	private static void replay(Path segment, LibraryCatalog catalog) throws IOException {
+		long start = catalog.getVersion();
+		long lastVersion = start;
+		long goodBytes = 0;
+		try (InputStream file = Files.newInputStream(segment)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(file, BUFFER_SIZE));
+			while (true) {
+				byte[] record;
+				try {
+					int length = in.readInt();
+					if (length < 17) {
+						break;
+					}
+					record = new byte[length];
+					in.readFully(record);
+					CRC32 checksum = new CRC32();
+					checksum.update(record);
+					if (in.readInt() != (int) checksum.getValue()) {
+						break;
+					}
+					goodBytes += length + 8;
+				}
+				catch (EOFException e) {
+					break;
+				}
+
+				ByteBuffer data = ByteBuffer.wrap(record);
+				long version = data.getLong();
+				if (version > start) {
+					apply(data, catalog);
+					lastVersion = Math.max(lastVersion, version);
+				}
+			}
+		}
+		if (goodBytes < Files.size(segment)) {
+			try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+				channel.truncate(goodBytes);
+			}
+		}
+		// replayed batches bump the version once per record, the catalog goes back to the journaled version
+		catalog.restore(0, lastVersion);
+	}
+
+	/**
+	 * Applies a single record to a catalog with the same operation that produced it. Checkouts take the day they
+	 * were recorded on, or the current day for records without one.
+	 */
+	private static void apply(ByteBuffer record, LibraryCatalog catalog) throws IOException {
+		int typeAndFormat = record.get() & 0xFF;
+		int format = typeAndFormat >>> FORMAT_SHIFT;
+		if (format > RECORD_FORMAT) {
+			throw new IOException("Unsupported journal record format: " + format);
+		}
+		CatalogEvent.Type type = CatalogEvent.Type.values()[typeAndFormat & ((1 << FORMAT_SHIFT) - 1)];
+		int bookId = record.getInt();
+		int userId = record.getInt();
+		switch (type) {
+		case BOOK_ADDED:
+			String title = getString(record);
+			String author = getString(record);
+			String genre = getString(record);
+			long epochDay = record.getLong();
+			boolean checkedOut = record.get() != 0;
+			int lastCheckout = epochDay == Long.MIN_VALUE ? Book.NO_DATE : (int) epochDay;
+			catalog.addBook(new Book(bookId, title, author, genre, lastCheckout, checkedOut));
+			break;
+		case BOOK_REMOVED:
+			catalog.removeBook(bookId);
+			break;
+		case BOOK_CHECKED_OUT:
+			int day = format > 0 ? record.getInt() : catalog.today();
+			if (userId == CatalogEvent.NO_USER) {
+				catalog.checkOutBook(bookId, day);
+			}
+			else {
+				catalog.checkOutBooks(userId, new int[] { bookId }, day);
+			}
+			break;
+		case BOOK_RETURNED:
+			if (userId == CatalogEvent.NO_USER) {
+				catalog.returnBook(bookId);
+			}
+			else {
+				catalog.returnBooks(new int[] { bookId });
+			}
+			break;
+		}
+	}
+
+	private static String getString(ByteBuffer record) {
+		byte[] bytes = new byte[record.getInt()];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
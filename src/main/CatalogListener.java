@@ -0,0 +1,6 @@
+package main;
+
+@FunctionalInterface
+public interface CatalogListener {
+	public void onEvent(CatalogEvent event);
+}
@@ -0,0 +1,184 @@
+package main;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Local load generator for {@link CatalogHttpServer}. It simulates many kiosks hitting the server at the same
+ * time, each one sending its requests back to back, and prints the throughput and latency percentiles.
+ * 
+ * Usage: {@code CatalogLoadGenerator [clients] [requestsPerClient] [port]}. Without a port it starts a server
+ * for data/ in the same JVM on a free port. The mix is 60% availability checks, 20% searches, 10% fee queries
+ * and 10% checkout + return pairs. The IDs of the books and users asked for are picked from the catalog in
+ * data/, which a server on another port is expected to serve as well.
+ * 
+ * Only the requests that finished are counted, so the numbers stay right when the run is cut short.
+ * 
+*/
+public class CatalogLoadGenerator {
+
+	private static final String[] GENRES = { "Adventure", "Fiction", "Classics", "Mystery", "Science Fiction" };
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		LibraryCatalog catalog = new LibraryCatalog();
+		int[] bookIds = new int[catalog.getBookCatalog().size()];
+		int i = 0;
+		for (Book book : catalog.getBookCatalog()) {
+			bookIds[i++] = book.getId();
+		}
+		int[] userIds = new int[catalog.getUsers().size()];
+		i = 0;
+		for (User user : catalog.getUsers()) {
+			userIds[i++] = user.getId();
+		}
+		if (bookIds.length == 0 || userIds.length == 0) {
+			System.out.println("The catalog needs at least a book and a user");
+			return;
+		}
+
+		CatalogHttpServer localServer = null;
+		int port;
+		if (args.length > 2) {
+			port = Integer.parseInt(args[2]);
+		}
+		else {
+			localServer = new CatalogHttpServer(catalog, 0);
+			localServer.start();
+			port = localServer.getPort();
+		}
+
+		String base = "http://localhost:" + port;
+		HttpClient client = HttpClient.newHttpClient();
+		ExecutorService executor = CatalogHttpServer.newRequestExecutor();
+
+		long[][] latencies = new long[clients][requestsPerClient];
+		// requests each client finished, only those latencies are filled
+		AtomicIntegerArray recorded = new AtomicIntegerArray(clients);
+		AtomicLong errors = new AtomicLong();
+
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			int clientIndex = c;
+			long[] clientLatencies = latencies[c];
+			int userId = userIds[c % userIds.length];
+			executor.execute(() -> {
+				for (int r = 0; r < requestsPerClient; r++) {
+					long begin = System.nanoTime();
+					try {
+						if (send(client, base, userId, bookIds) != 200) {
+							errors.incrementAndGet();
+						}
+					}
+					catch (IOException e) {
+						errors.incrementAndGet();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					clientLatencies[r] = System.nanoTime() - begin;
+					recorded.set(clientIndex, r + 1);
+				}
+			});
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		long elapsed = System.nanoTime() - start;
+		// the client shuts itself down once it's unreachable, even with requests still in flight
+		Reference.reachabilityFence(client);
+
+		if (localServer != null) {
+			localServer.stop();
+		}
+
+		int count = 0;
+		for (int c = 0; c < clients; c++) {
+			count += recorded.get(c);
+		}
+		long[] all = new long[count];
+		int filled = 0;
+		for (int c = 0; c < clients; c++) {
+			int clientCount = recorded.get(c);
+			System.arraycopy(latencies[c], 0, all, filled, clientCount);
+			filled += clientCount;
+		}
+		Arrays.sort(all);
+
+		System.out.println("Clients:\t\t" + clients);
+		System.out.println("Requests:\t\t" + all.length + " of " + (long) clients * requestsPerClient + " ("
+				+ errors.get() + " errors)");
+		if (all.length == 0) {
+			return;
+		}
+		System.out.println("Throughput:\t\t" + String.format("%.0f", all.length / (elapsed / 1e9)) + " requests/sec");
+		System.out.println("Latency p50:\t\t" + millis(percentile(all, 0.50)) + " ms");
+		System.out.println("Latency p99:\t\t" + millis(percentile(all, 0.99)) + " ms");
+		System.out.println("Latency max:\t\t" + millis(all[all.length - 1]) + " ms");
+	}
+
+
+	/**
+	 * Sends one request picked at random from the mix.
+	 * 
+	 * @return Status of the response, or of the first failed one for a checkout + return pair.
+	 * 
+	*/
+	private static int send(HttpClient client, String base, int userId, int[] bookIds)
+			throws IOException, InterruptedException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int roll = random.nextInt(10);
+		int bookId = bookIds[random.nextInt(bookIds.length)];
+
+		if (roll < 6) {
+			return get(client, base + "/availability?book=" + bookId);
+		}
+		if (roll < 8) {
+			String genre = GENRES[random.nextInt(GENRES.length)].replace(" ", "+");
+			return get(client, base + "/search?genre=" + genre);
+		}
+		if (roll < 9) {
+			return get(client, base + "/fees?user=" + userId);
+		}
+		int status = post(client, base + "/checkout?user=" + userId + "&book=" + bookId);
+		if (status != 200) {
+			return status;
+		}
+		return post(client, base + "/return?book=" + bookId);
+	}
+
+	private static int get(HttpClient client, String url) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url)).GET().build();
+		return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+	private static int post(HttpClient client, String url) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.noBody()).build();
+		return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+	private static long percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.2f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,229 @@
+package main;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import data_structures.ArrayList;
+import data_structures.DoublyLinkedList;
+import interfaces.FilterFunction;
+import interfaces.List;
+
+
+/**
+ * Class that represents a read-only, point-in-time view of a LibraryCatalog. A snapshot holds its own copies of
+ * the books and users as they were at a given catalog version, so reports and long searches can walk it without
+ * holding the catalog lock while checkouts and returns keep going on the live catalog.
+ * 
+ * Snapshots are created lazily by {@link LibraryCatalog#snapshot()} the first time a reader asks for one after a
+ * mutation, and every reader of the same version shares it. Once the last reader drops its reference the old
+ * version is reclaimed by the garbage collector.
+ * 
+ * A catalog that keeps its books as objects hands over the frozen state kept by {@link CatalogVersions}, and the
+ * copies are only made the first time the books or users are read, by the reader and outside the catalog lock.
+ * Columnar and off-heap catalogs are copied while the lock is held.
+ * 
+*/
+public class CatalogSnapshot {
+
+	/** Catalog version this snapshot was taken at.*/
+	private final long version;
+	/** Copies of the books in catalog order, {@code null} until they are first read.*/
+	private ArrayList<Book> books;
+	/** Copies of the users, their checked out lists point to the copied books. {@code null} until first read.*/
+	private ArrayList<User> users;
+	/** Frozen books the copies are made from, {@code null} once they are made or if the catalog was copied.*/
+	private PersistentVector<CatalogVersions.Slot> frozenBooks;
+	private PersistentVector<CatalogVersions.FrozenUser> frozenUsers;
+
+
+	/**
+	 * Constructs a snapshot by copying the books and users of the catalog. Must be called while holding the
+	 * catalog lock so that the copy is consistent.
+	 * 
+	 * @param version Catalog version being captured.
+	 * @param bookCatalog Live list of books of the catalog.
+	 * @param catalogUsers Live list of users of the catalog.
+	 * 
+	*/
+	CatalogSnapshot(long version, DoublyLinkedList<Book> bookCatalog, DoublyLinkedList<User> catalogUsers) {
+		this.version = version;
+		this.books = new ArrayList<>(Math.max(bookCatalog.size(), 1));
+		this.users = new ArrayList<>(Math.max(catalogUsers.size(), 1));
+
+		// maps every live book to its copy so users keep pointing at the same (copied) books, rows of the
+		// off-heap store are views created on demand and are matched by equals
+		HashMap<Book, Book> copies = new HashMap<>(bookCatalog.size() * 2);
+		for (Book book : bookCatalog) {
+			Book copy = copyOf(book);
+			copies.put(book, copy);
+			books.add(copy);
+		}
+
+		for (User user : catalogUsers) {
+			User copy = new User(user.getId(), user.getName());
+			for (Book book : user.getCheckedOutList()) {
+				Book bookCopy = copies.get(book);
+				// books that are no longer in the catalog are still copied to keep the user's list intact
+				copy.addBook(bookCopy != null ? bookCopy : copyOf(book));
+			}
+			users.add(copy);
+		}
+	}
+
+	/**
+	 * Constructs a snapshot from the frozen state of a catalog, nothing is copied until the books or users are
+	 * read.
+	 * 
+	 * @param version Catalog version being captured.
+	 * @param frozenBooks Frozen books by position, see {@link CatalogVersions}.
+	 * @param frozenUsers Frozen users in catalog order.
+	 * 
+	*/
+	CatalogSnapshot(long version, PersistentVector<CatalogVersions.Slot> frozenBooks,
+			PersistentVector<CatalogVersions.FrozenUser> frozenUsers) {
+		this.version = version;
+		this.frozenBooks = frozenBooks;
+		this.frozenUsers = frozenUsers;
+	}
+
+	private static Book copyOf(Book book) {
+		return new Book(book);
+	}
+
+	/**
+	 * Copies the frozen books and users the first time they are read. Books held by users that are no longer in
+	 * the catalog are only copied for those users.
+	 */
+	private synchronized void materialize() {
+		if (frozenBooks == null) {
+			return;
+		}
+		Book[] copies = new Book[frozenBooks.size()];
+		books = new ArrayList<>(Math.max(frozenBooks.size(), 1));
+		int position = 0;
+		for (CatalogVersions.Slot slot : frozenBooks) {
+			if (slot.listed) {
+				copies[position] = copyOf(slot.book);
+				books.add(copies[position]);
+			}
+			position++;
+		}
+		users = new ArrayList<>(Math.max(frozenUsers.size(), 1));
+		HashMap<Integer, Integer> positionsById = null;
+		for (CatalogVersions.FrozenUser frozen : frozenUsers) {
+			User copy = new User(frozen.id, frozen.name);
+			int[] positions = frozen.bookPositions;
+			if (positions == null) {
+				// the list of the user was never used, its IDs are looked up like the catalog would
+				if (positionsById == null) {
+					positionsById = positionsById();
+				}
+				positions = new int[frozen.bookIds.length];
+				int count = 0;
+				for (int id : frozen.bookIds) {
+					Integer book = positionsById.get(id);
+					if (book != null) {
+						positions[count++] = book;
+					}
+				}
+				positions = Arrays.copyOf(positions, count);
+			}
+			for (int book : positions) {
+				if (copies[book] == null) {
+					copies[book] = copyOf(frozenBooks.get(book).book);
+				}
+				copy.addBook(copies[book]);
+			}
+			users.add(copy);
+		}
+		frozenBooks = null;
+		frozenUsers = null;
+	}
+
+
+	/** Returns the positions of the frozen books by their IDs, the removed books before the listed ones. */
+	private HashMap<Integer, Integer> positionsById() {
+		HashMap<Integer, Integer> positions = new HashMap<>(frozenBooks.size() * 2);
+		int position = 0;
+		for (CatalogVersions.Slot slot : frozenBooks) {
+			if (!slot.listed || !positions.containsKey(slot.book.getId())) {
+				positions.put(slot.book.getId(), position);
+			}
+			position++;
+		}
+		return positions;
+	}
+
+
+	/** Returns the catalog version this snapshot represents. */
+	public long getVersion() {
+		return version;
+	}
+
+	/** Returns the books of this snapshot. The books are copies, changing them doesn't affect the catalog. */
+	public List<Book> getBookCatalog() {
+		materialize();
+		return books;
+	}
+
+	/**
+	 * Returns the users of this snapshot. The users are copies, changing them doesn't affect the catalog. The
+	 * list is an array list, getting a user by position is O(1).
+	 */
+	public List<User> getUsers() {
+		materialize();
+		return users;
+	}
+
+
+	/**
+	 * Counts the number of books in the snapshot that belong to a specific genre ignoring case.
+	 * 
+	 * @param genre The genre to be counted
+	 * @return The number of books in the snapshot with the genre
+	 * 
+	*/
+	public int genreCount(String genre) {
+		int count = 0;
+		for (Book book : getBookCatalog()) {
+			if (book.getGenre() != null && book.getGenre().equalsIgnoreCase(genre)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * Method that receives a lambda function and searches for books in the snapshot.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of books that follow the condition given by the lambda function.
+	*/
+	public List<Book> searchForBook(FilterFunction<Book> func) {
+		DoublyLinkedList<Book> matchingBooks = new DoublyLinkedList<>();
+		for (Book book : getBookCatalog()) {
+			if (func.filter(book)) {
+				matchingBooks.add(book);
+			}
+		}
+		return matchingBooks;
+	}
+
+
+	/**
+	 * Method that receives a lambda function and searches for users in the snapshot.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of users that follow the condition given by the lambda function.
+	*/
+	public List<User> searchForUsers(FilterFunction<User> func) {
+		DoublyLinkedList<User> matchingUsers = new DoublyLinkedList<>();
+		for (User user : getUsers()) {
+			if (func.filter(user)) {
+				matchingUsers.add(user);
+			}
+		}
+		return matchingUsers;
+	}
+}
@@ -0,0 +1,307 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import data_structures.ArrayList;
+import data_structures.DoublyLinkedList;
+
+
+/**
+ * Class that reads and writes catalog snapshots in a compact binary format, so a restart doesn't have to parse
+ * the CSV files and resolve the checked out lists of the users again. The file is laid out as:
+ * <ol>
+ * <li>Header: magic number, format version, catalog version, next ID and the size of each section.</li>
+ * <li>String table: the offset of every string followed by their UTF-8 bytes. Titles, authors, genres and
+ * names are stored once and referenced by index.</li>
+ * <li>Book records of {@value #BOOK_RECORD_SIZE} bytes: ID, title, author, genre, last checkout date as epoch
+ * day and checked out flag. The catalog books come first, followed by books that are only in the checked out
+ * list of a user.</li>
+ * <li>Users: ID, name and the indexes of the book records in their checked out list.</li>
+ * <li>CRC32 of everything before it.</li>
+ * </ol>
+ * 
+ * Numbers are big endian. Snapshots are written to a temporary file that replaces the old one once complete,
+ * so a crash while saving leaves the previous snapshot intact. The file and its directory are forced to disk
+ * before {@link #write} returns.
+ * 
+*/
+public class CatalogSnapshotFile {
+
+	/** Marks the file as a catalog snapshot ("LCSN").*/
+	private static final int MAGIC = 0x4C43534E;
+	/** Version of the format, incremented on incompatible changes.*/
+	static final int FORMAT_VERSION = 1;
+	/** Size of the header in bytes.*/
+	private static final int HEADER_SIZE = 44;
+	/** Size of a book record in bytes.*/
+	static final int BOOK_RECORD_SIZE = 24;
+	/** Epoch day stored for books without a last checkout date.*/
+	private static final int NO_DATE = Integer.MIN_VALUE;
+
+	private CatalogSnapshotFile() {
+	}
+
+
+	/**
+	 * Writes a snapshot of a catalog to a file.
+	 * 
+	 * @param snapshot Snapshot to write.
+	 * @param nextID Next ID available for new books in the catalog.
+	 * @param path File to write the snapshot to, replaced if it exists.
+	 * @throws IOException if an error occurs while writing the file.
+	 * 
+	*/
+	static void write(CatalogSnapshot snapshot, int nextID, Path path) throws IOException {
+		// every book gets a record index, books only reachable through a user go after the catalog books
+		IdentityHashMap<Book, Integer> records = new IdentityHashMap<>();
+		ArrayList<Book> books = new ArrayList<>(Math.max(snapshot.getBookCatalog().size(), 1));
+		for (Book book : snapshot.getBookCatalog()) {
+			records.put(book, books.size());
+			books.add(book);
+		}
+		int catalogBooks = books.size();
+		for (User user : snapshot.getUsers()) {
+			for (Book book : user.getCheckedOutList()) {
+				if (!records.containsKey(book)) {
+					records.put(book, books.size());
+					books.add(book);
+				}
+			}
+		}
+
+		StringTable strings = new StringTable();
+		for (Book book : books) {
+			strings.add(book.getTitle());
+			strings.add(book.getAuthor());
+			strings.add(book.getGenre());
+		}
+		for (User user : snapshot.getUsers()) {
+			strings.add(user.getName());
+		}
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		CRC32 checksum = new CRC32();
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			OutputStream file = Channels.newOutputStream(channel);
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), checksum));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(snapshot.getVersion());
+			out.writeInt(nextID);
+			out.writeInt(strings.size());
+			out.writeInt(strings.byteSize());
+			out.writeInt(catalogBooks);
+			out.writeInt(books.size() - catalogBooks);
+			out.writeInt(snapshot.getUsers().size());
+			out.writeInt(0); // reserved
+
+			strings.writeTo(out);
+
+			for (Book book : books) {
+				out.writeInt(book.getId());
+				out.writeInt(strings.indexOf(book.getTitle()));
+				out.writeInt(strings.indexOf(book.getAuthor()));
+				out.writeInt(strings.indexOf(book.getGenre()));
+				out.writeInt(book.getLastCheckoutDay() == Book.NO_DATE ? NO_DATE : book.getLastCheckoutDay());
+				out.writeInt(book.isCheckedOut() ? 1 : 0);
+			}
+
+			for (User user : snapshot.getUsers()) {
+				out.writeInt(user.getId());
+				out.writeInt(strings.indexOf(user.getName()));
+				out.writeInt(user.getCheckedOutList().size());
+				for (Book book : user.getCheckedOutList()) {
+					out.writeInt(records.get(book));
+				}
+			}
+			out.flush(); // the checksum covers everything written so far
+			new DataOutputStream(file).writeInt((int) checksum.getValue());
+			// the journal drops its records once this returns, the snapshot must be on disk before it's moved
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(path.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * Forces the entries of a directory to disk, so a file moved into it is still there after a crash.
+	 * 
+	 * @param directory Directory to force.
+	 * @throws IOException if an error occurs while forcing the directory.
+	 * 
+	*/
+	static void forceDirectory(Path directory) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		}
+		catch (AccessDeniedException e) {
+			// directories can't be opened on Windows, a move is durable there once it returns
+			return;
+		}
+		try (FileChannel opened = channel) {
+			opened.force(true);
+		}
+	}
+
+
+	/**
+	 * Reads a snapshot file into a new catalog. The file is memory mapped and its checksum verified before
+	 * anything is materialized.
+	 * 
+	 * @param path File with the snapshot.
+	 * @return Catalog with the books and users of the snapshot, at the version the snapshot was taken.
+	 * @throws IOException if the file can't be read, isn't a snapshot, was written with another format version
+	 * or is corrupted.
+	 * 
+	*/
+	static LibraryCatalog read(Path path) throws IOException {
+		ByteBuffer data;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a catalog snapshot: " + path);
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		if (data.getInt(0) != MAGIC) {
+			throw new IOException("Not a catalog snapshot: " + path);
+		}
+		if (data.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("Unsupported snapshot format " + data.getInt(4) + ": " + path);
+		}
+		CRC32 checksum = new CRC32();
+		ByteBuffer content = data.duplicate();
+		content.limit(data.capacity() - 4);
+		checksum.update(content);
+		if ((int) checksum.getValue() != data.getInt(data.capacity() - 4)) {
+			throw new IOException("Corrupted catalog snapshot, checksum doesn't match: " + path);
+		}
+
+		try {
+			return materialize(data);
+		}
+		catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupted catalog snapshot: " + path, e);
+		}
+	}
+
+	/**
+	 * Builds the catalog out of the content of a snapshot file whose checksum was already verified.
+	 */
+	private static LibraryCatalog materialize(ByteBuffer data) {
+		data.position(8);
+		long version = data.getLong();
+		int nextID = data.getInt();
+		int stringCount = data.getInt();
+		int stringBytes = data.getInt();
+		int catalogBooks = data.getInt();
+		int otherBooks = data.getInt();
+		int userCount = data.getInt();
+		data.getInt(); // reserved
+
+		// string table, the bytes start right after the offsets
+		String[] strings = new String[stringCount];
+		int offsets = data.position();
+		int bytesStart = offsets + (stringCount + 1) * 4;
+		byte[] utf8 = new byte[stringBytes];
+		data.position(bytesStart);
+		data.get(utf8);
+		for (int i = 0; i < stringCount; i++) {
+			int start = data.getInt(offsets + i * 4);
+			int end = data.getInt(offsets + (i + 1) * 4);
+			strings[i] = new String(utf8, start, end - start, StandardCharsets.UTF_8);
+		}
+
+		Book[] records = new Book[catalogBooks + otherBooks];
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int i = 0; i < records.length; i++) {
+			int id = data.getInt();
+			String title = strings[data.getInt()];
+			String author = strings[data.getInt()];
+			String genre = strings[data.getInt()];
+			int epochDay = data.getInt();
+			boolean checkedOut = data.getInt() != 0;
+			records[i] = new Book(id, title, author, genre, epochDay == NO_DATE ? Book.NO_DATE : epochDay, checkedOut);
+			if (i < catalogBooks) {
+				books.add(records[i]);
+			}
+		}
+
+		DoublyLinkedList<User> users = new DoublyLinkedList<>();
+		for (int i = 0; i < userCount; i++) {
+			User user = new User(data.getInt(), strings[data.getInt()]);
+			int checkedOut = data.getInt();
+			for (int j = 0; j < checkedOut; j++) {
+				user.addBook(records[data.getInt()]);
+			}
+			users.add(user);
+		}
+
+		LibraryCatalog catalog = new LibraryCatalog(books, users);
+		catalog.restore(nextID, version);
+		return catalog;
+	}
+
+
+	/**
+	 * Strings of a snapshot, each distinct string is stored once.
+	 */
+	private static class StringTable {
+		private final HashMap<String, Integer> indexes = new HashMap<>();
+		private final ArrayList<byte[]> encoded = new ArrayList<>();
+		private int byteSize;
+
+		void add(String string) {
+			if (!indexes.containsKey(string)) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				indexes.put(string, encoded.size());
+				encoded.add(bytes);
+				byteSize += bytes.length;
+			}
+		}
+
+		int indexOf(String string) {
+			return indexes.get(string);
+		}
+
+		int size() {
+			return encoded.size();
+		}
+
+		int byteSize() {
+			return byteSize;
+		}
+
+		/** Writes the offset of every string, the total size and then the bytes of the strings. */
+		void writeTo(DataOutputStream out) throws IOException {
+			int offset = 0;
+			for (byte[] bytes : encoded) {
+				out.writeInt(offset);
+				offset += bytes.length;
+			}
+			out.writeInt(offset);
+			for (byte[] bytes : encoded) {
+				out.write(bytes);
+			}
+		}
+	}
+}
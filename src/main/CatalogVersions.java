@@ -0,0 +1,309 @@
+package main;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import interfaces.List;
+
+
+/**
+ * Class that keeps a frozen copy of every book and user of a catalog up to date as the catalog changes, so a
+ * snapshot of the current version is taken in O(1) while holding the catalog lock. The copies are kept in
+ * {@link PersistentVector}s that share everything but the changed paths with the snapshots taken before, and a
+ * change only copies the book or user it touches.
+ * 
+ * Removed books stay as slots that aren't listed since users can still hold them. Once there are more of them
+ * than half the listed books, the ones no user holds anymore are dropped and the vector is rebuilt without
+ * them; snapshots taken before keep their own vectors, so the slots are reclaimed with the last snapshot that
+ * can see them. Users whose checked out lists were never used are frozen as the IDs they were loaded with, so
+ * tracking them doesn't look up their books; a user is copied again only when it changes.
+ * 
+ * The catalog has to tell about every change it makes, and must be locked whenever a method is called. Only
+ * catalogs that keep their books as objects are tracked this way.
+ * 
+*/
+class CatalogVersions {
+
+	/** Minimum amount of unlisted slots before they are compacted.*/
+	private static final int MIN_COMPACTION = 32;
+
+	/** Frozen copy of each book by position.*/
+	private PersistentVector<Slot> books = new PersistentVector<>();
+	/** Position of each book of the catalog, or held by a user.*/
+	private HashMap<Book, Integer> bookPositions = new HashMap<>();
+	/** Amount of slots that aren't listed, and the amount at which they are compacted next.*/
+	private int unlisted;
+	private int compactAt = MIN_COMPACTION;
+	/** Frozen copy of each user by position, {@code null} until {@link #trackUsers(Iterable)} is called.*/
+	private PersistentVector<FrozenUser> users;
+	private HashMap<User, Integer> userPositions;
+
+
+	/**
+	 * Starts tracking the books of a catalog.
+	 * 
+	 * @param bookCatalog Books of the catalog.
+	 * 
+	*/
+	CatalogVersions(Iterable<Book> bookCatalog) {
+		for (Book book : bookCatalog) {
+			bookAdded(book);
+		}
+	}
+
+	/**
+	 * Starts tracking the users of the catalog as well, nothing is done if they are already tracked. Users
+	 * whose lists weren't used yet keep them unresolved, the books removed from the catalog get a slot so that
+	 * their IDs can still be found.
+	 * 
+	 * @param catalogUsers Users of the catalog.
+	 * @param removedBooks Books removed from the catalog that unresolved users may still hold.
+	 * 
+	*/
+	void trackUsers(Iterable<User> catalogUsers, Iterable<Book> removedBooks) {
+		if (users == null) {
+			for (Book book : removedBooks) {
+				if (!bookPositions.containsKey(book)) {
+					addUnlisted(book);
+				}
+			}
+			users = new PersistentVector<>();
+			userPositions = new HashMap<>();
+			for (User user : catalogUsers) {
+				int[] ids = user.unresolvedIds();
+				userPositions.put(user, users.add(ids != null ? new FrozenUser(user.getId(), user.getName(), null, ids)
+						: freeze(user)));
+			}
+		}
+	}
+
+
+	/** Tells that a book was added to the catalog. */
+	void bookAdded(Book book) {
+		bookPositions.put(book, books.add(new Slot(book, true)));
+	}
+
+	/** Tells that a book was removed from the catalog, compacts the unlisted slots when there are enough. */
+	void bookRemoved(Book book) {
+		Integer position = bookPositions.get(book);
+		if (position != null) {
+			books.set(position, new Slot(book, false));
+			unlisted++;
+			if (unlisted >= compactAt) {
+				compact();
+			}
+		}
+	}
+
+	/** Tells that a book of the catalog was checked out or returned. */
+	void bookChanged(Book book) {
+		Integer position = bookPositions.get(book);
+		if (position != null) {
+			books.set(position, new Slot(book, books.get(position).listed));
+		}
+	}
+
+	/** Tells that the checked out list of a user changed, ignored until the users are tracked. */
+	void userChanged(User user) {
+		if (users != null) {
+			Integer position = userPositions.get(user);
+			if (position != null) {
+				users.set(position, freeze(user));
+			}
+		}
+	}
+
+
+	/**
+	 * Takes a snapshot of the books and users as they are now, the users must be tracked. Only the roots of the
+	 * vectors are copied, the snapshot creates its own copies of the books and users when they are first read.
+	 * 
+	 * @param version Version of the catalog.
+	 * @return Snapshot of the catalog.
+	 * 
+	*/
+	CatalogSnapshot snapshot(long version) {
+		return new CatalogSnapshot(version, books.freeze(), users.freeze());
+	}
+
+	/**
+	 * Returns the books of the catalog as they are now, without copying them or looking at the users. The books
+	 * are shared with the snapshots and must not be changed.
+	 * 
+	 * @return Frozen books in catalog order.
+	 * 
+	*/
+	Iterable<Book> freezeBooks() {
+		PersistentVector<Slot> frozen = books.freeze();
+		return () -> new Iterator<Book>() {
+			private final Iterator<Slot> slots = frozen.iterator();
+			private Book next = advance();
+
+			private Book advance() {
+				while (slots.hasNext()) {
+					Slot slot = slots.next();
+					if (slot.listed) {
+						return slot.book;
+					}
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Book next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				Book book = next;
+				next = advance();
+				return book;
+			}
+		};
+	}
+
+	/**
+	 * Copies a user with the positions of its books, books that aren't tracked (removed before the tracking
+	 * started, or compacted) get a slot that isn't listed.
+	 */
+	private FrozenUser freeze(User user) {
+		List<Book> checkedOut = user.getCheckedOutList();
+		int[] positions = new int[checkedOut.size()];
+		int count = 0;
+		for (Book book : checkedOut) {
+			Integer position = bookPositions.get(book);
+			if (position == null) {
+				position = addUnlisted(book);
+			}
+			positions[count++] = position;
+		}
+		return new FrozenUser(user.getId(), user.getName(), positions, null);
+	}
+
+	private int addUnlisted(Book book) {
+		int position = books.add(new Slot(book, false));
+		bookPositions.put(book, position);
+		unlisted++;
+		return position;
+	}
+
+	/**
+	 * Rebuilds the book vector without the unlisted slots no tracked user holds, and moves the positions of the
+	 * frozen users along. The snapshots taken before keep the vectors they were given. Takes O(n), and the next
+	 * compaction waits until half as many slots as there are now are unlisted again, so removals stay O(1)
+	 * amortized.
+	 */
+	private void compact() {
+		boolean[] held = new boolean[books.size()];
+		if (users != null) {
+			HashMap<Integer, Integer> unlistedById = null;
+			for (FrozenUser user : users) {
+				if (user.bookPositions != null) {
+					for (int position : user.bookPositions) {
+						held[position] = true;
+					}
+				}
+				else {
+					if (unlistedById == null) {
+						unlistedById = unlistedById();
+					}
+					for (int id : user.bookIds) {
+						Integer position = unlistedById.get(id);
+						if (position != null) {
+							held[position] = true;
+						}
+					}
+				}
+			}
+		}
+
+		int[] moved = new int[books.size()];
+		PersistentVector<Slot> compacted = new PersistentVector<>();
+		unlisted = 0;
+		int position = 0;
+		for (Slot slot : books) {
+			if (slot.listed || held[position]) {
+				moved[position] = compacted.add(slot);
+				unlisted += slot.listed ? 0 : 1;
+			}
+			else {
+				moved[position] = -1;
+			}
+			position++;
+		}
+		HashMap<Book, Integer> positions = new HashMap<>(bookPositions.size() * 2);
+		for (Map.Entry<Book, Integer> entry : bookPositions.entrySet()) {
+			if (moved[entry.getValue()] >= 0) {
+				positions.put(entry.getKey(), moved[entry.getValue()]);
+			}
+		}
+		if (users != null) {
+			for (int i = 0; i < users.size(); i++) {
+				FrozenUser user = users.get(i);
+				if (user.bookPositions != null) {
+					int[] userPositions = new int[user.bookPositions.length];
+					for (int j = 0; j < userPositions.length; j++) {
+						userPositions[j] = moved[user.bookPositions[j]];
+					}
+					users.set(i, new FrozenUser(user.id, user.name, userPositions, null));
+				}
+			}
+		}
+		books = compacted;
+		bookPositions = positions;
+		compactAt = unlisted + Math.max(MIN_COMPACTION, compacted.size() / 2);
+	}
+
+	/** Returns the positions of the unlisted slots by the IDs of their books. */
+	private HashMap<Integer, Integer> unlistedById() {
+		HashMap<Integer, Integer> positions = new HashMap<>();
+		int position = 0;
+		for (Slot slot : books) {
+			if (!slot.listed) {
+				positions.putIfAbsent(slot.book.getId(), position);
+			}
+			position++;
+		}
+		return positions;
+	}
+
+
+	/**
+	 * Frozen copy of a book and whether it's listed in the catalog.
+	 */
+	static final class Slot {
+		final Book book;
+		final boolean listed;
+
+		private Slot(Book book, boolean listed) {
+			this.book = new Book(book);
+			this.listed = listed;
+		}
+	}
+
+	/**
+	 * Frozen copy of a user, its checked out books are positions of the book vector. A user whose list was
+	 * never resolved keeps the IDs it was loaded with instead, they are looked up by the snapshot.
+	 */
+	static final class FrozenUser {
+		final int id;
+		final String name;
+		/** Positions of the checked out books, {@code null} if the user is frozen by IDs.*/
+		final int[] bookPositions;
+		/** IDs of the checked out books if the list was never resolved, shared with the user.*/
+		final int[] bookIds;
+
+		private FrozenUser(int id, String name, int[] bookPositions, int[] bookIds) {
+			this.id = id;
+			this.name = name;
+			this.bookPositions = bookPositions;
+			this.bookIds = bookIds;
+		}
+	}
+}
@@ -0,0 +1,562 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import data_structures.DoublyLinkedList;
+import interfaces.FilterFunction;
+import interfaces.List;
+
+
+/**
+ * Class that stores the books of a catalog by column instead of as separate objects: the IDs and checkout dates
+ * (as epoch days) are primitive arrays, the checked out state is a bitset, genres and authors are codes of the
+ * dictionaries of the store (see StringDictionary) and titles are a string column. Scans over a column
+ * (counting a genre, finding the checked out books, counting a title) read consecutive memory instead of
+ * following list nodes to scattered objects.
+ * 
+ * The store also indexes the books by ID in an open addressing table of ints, so the catalog keeps no list or
+ * index of its own. The books are handed out as {@link Row} views created on demand, a row only knows its store
+ * and position and reads and writes the columns, so it can be used anywhere a Book is expected. Nothing is kept
+ * per book besides the columns, and two rows of the same position are equal, so they should be compared with
+ * equals instead of ==.
+ * 
+ * Removed books leave a hole that scans skip, rows keep the order they were added in. The store isn't
+ * synchronized, the catalog that owns it guards it with its lock.
+ * 
+*/
+public class ColumnarBookStore {
+
+	private int[] ids;
+	private String[] titles;
+	private int[] authorCodes;
+	private int[] genreCodes;
+	private int[] checkoutDays;
+	/** Bit per row, set if the book is checked out.*/
+	private long[] checkedOut;
+	/** Bit per row, set if the book was removed.*/
+	private long[] removed;
+	/** ID index: pairs of ID and row + 1 (0 means the entry is empty), linear probing.*/
+	private int[] index;
+	/** Number of entries of the index, a power of 2.*/
+	private int indexCapacity;
+	private int indexed;
+	/** Number of rows, including removed ones.*/
+	private int size;
+	private int removedCount;
+
+	private final StringDictionary authors = new StringDictionary();
+	private final StringDictionary genres = new StringDictionary();
+
+
+	/**
+	 * Constructs an empty store.
+	 * 
+	 * @param capacity Number of books the store holds before growing.
+	 * 
+	*/
+	public ColumnarBookStore(int capacity) {
+		capacity = Math.max(capacity, 16);
+		ids = new int[capacity];
+		titles = new String[capacity];
+		authorCodes = new int[capacity];
+		genreCodes = new int[capacity];
+		checkoutDays = new int[capacity];
+		checkedOut = new long[(capacity + 63) >> 6];
+		removed = new long[(capacity + 63) >> 6];
+		indexCapacity = Integer.highestOneBit(capacity) * 4;
+		index = new int[indexCapacity * 2];
+	}
+
+	private void grow() {
+		int capacity = ids.length + (ids.length >> 1);
+		ids = Arrays.copyOf(ids, capacity);
+		titles = Arrays.copyOf(titles, capacity);
+		authorCodes = Arrays.copyOf(authorCodes, capacity);
+		genreCodes = Arrays.copyOf(genreCodes, capacity);
+		checkoutDays = Arrays.copyOf(checkoutDays, capacity);
+		checkedOut = Arrays.copyOf(checkedOut, (capacity + 63) >> 6);
+		removed = Arrays.copyOf(removed, (capacity + 63) >> 6);
+	}
+
+
+	/**
+	 * Adds a book at the end of the store.
+	 * 
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(int id, String title, String author, String genre, LocalDate lastCheckoutDate, boolean isCheckedOut) {
+		return add(id, title, author, genre, Book.toEpochDay(lastCheckoutDate), isCheckedOut);
+	}
+
+	/**
+	 * Adds a book at the end of the store with the last checkout date as an epoch day.
+	 * 
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(int id, String title, String author, String genre, int lastCheckoutDay, boolean isCheckedOut) {
+		if (size == ids.length) {
+			grow();
+		}
+		int row = size++;
+		ids[row] = id;
+		titles[row] = title;
+		authorCodes[row] = authors.encode(author);
+		genreCodes[row] = genres.encode(genre);
+		checkoutDays[row] = lastCheckoutDay;
+		setBit(checkedOut, row, isCheckedOut);
+		if (lookup(id) < 0) {
+			insert(id, row);
+		}
+		return new Row(row);
+	}
+
+	/**
+	 * Adds a copy of a book at the end of the store.
+	 * 
+	 * @param book Book to copy.
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(Book book) {
+		return add(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getLastCheckoutDay(), book.isCheckedOut());
+	}
+
+	/**
+	 * Removes a book from the store. Scans and lookups skip it from now on, if another book has the same ID it's
+	 * found by the ID instead. Rows of the book keep working for whoever still holds them.
+	 * 
+	 * @param book Row of the book to remove.
+	 * @return {@code true} if the book was a row of this store that wasn't removed yet.
+	 * 
+	*/
+	public boolean remove(Book book) {
+		if (!contains(book)) {
+			return false;
+		}
+		int row = ((Row) book).index;
+		setBit(removed, row, true);
+		removedCount++;
+		int id = ids[row];
+		if (lookup(id) == row) {
+			delete(id);
+			for (int other = 0; other < size; other++) {
+				if (ids[other] == id && !isRemoved(other)) {
+					insert(id, other);
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns whether a book is a row of this store that wasn't removed. */
+	public boolean contains(Book book) {
+		return book instanceof Row && ((Row) book).store() == this && !isRemoved(((Row) book).index);
+	}
+
+	/** Returns the number of books in the store. */
+	public int size() {
+		return size - removedCount;
+	}
+
+	private boolean isRemoved(int row) {
+		return (removed[row >> 6] & (1L << row)) != 0;
+	}
+
+	private static void setBit(long[] bits, int row, boolean value) {
+		if (value) {
+			bits[row >> 6] |= 1L << row;
+		}
+		else {
+			bits[row >> 6] &= ~(1L << row);
+		}
+	}
+
+	/**
+	 * Finds a book by its ID.
+	 * 
+	 * @param id ID of the book.
+	 * @return A row of the first book added with the ID that wasn't removed, or {@code null} if there's none.
+	 * 
+	*/
+	public Row find(int id) {
+		int row = lookup(id);
+		return row < 0 ? null : new Row(row);
+	}
+
+	/** Returns the biggest ID in the store, 0 if it's empty. */
+	public int maxId() {
+		int max = 0;
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				max = Math.max(max, ids[row]);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns rows of every book in store order. The list is built on every call, adding or removing books in it
+	 * doesn't change the store.
+	 * 
+	 * @return New list with the rows of the books.
+	 * 
+	*/
+	public DoublyLinkedList<Book> books() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				books.add(new Row(row));
+			}
+		}
+		return books;
+	}
+
+
+	/*
+	 * ID index, linear probing with backward shift deletion
+	 */
+
+	private int slot(int id) {
+		return (id * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(indexCapacity));
+	}
+
+	private int lookup(int id) {
+		int mask = indexCapacity - 1;
+		for (int slot = slot(id);; slot = (slot + 1) & mask) {
+			int row = index[slot * 2 + 1] - 1;
+			if (row < 0) {
+				return -1;
+			}
+			if (index[slot * 2] == id) {
+				return row;
+			}
+		}
+	}
+
+	private void insert(int id, int row) {
+		if ((indexed + 1) * 2 > indexCapacity) {
+			resize();
+		}
+		int mask = indexCapacity - 1;
+		int slot = slot(id);
+		while (index[slot * 2 + 1] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot * 2] = id;
+		index[slot * 2 + 1] = row + 1;
+		indexed++;
+	}
+
+	private void delete(int id) {
+		int mask = indexCapacity - 1;
+		int slot = slot(id);
+		while (index[slot * 2] != id || index[slot * 2 + 1] == 0) {
+			slot = (slot + 1) & mask;
+		}
+		// moves back the entries after the slot that would no longer be reachable from their home slot
+		int hole = slot;
+		for (int next = (hole + 1) & mask; index[next * 2 + 1] != 0; next = (next + 1) & mask) {
+			int home = slot(index[next * 2]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				index[hole * 2] = index[next * 2];
+				index[hole * 2 + 1] = index[next * 2 + 1];
+				hole = next;
+			}
+		}
+		index[hole * 2] = 0;
+		index[hole * 2 + 1] = 0;
+		indexed--;
+	}
+
+	private void resize() {
+		int[] old = index;
+		indexCapacity *= 2;
+		index = new int[indexCapacity * 2];
+		indexed = 0;
+		for (int slot = 0; slot < old.length; slot += 2) {
+			if (old[slot + 1] != 0) {
+				insert(old[slot], old[slot + 1] - 1);
+			}
+		}
+	}
+
+
+	/**
+	 * Counts the books of a genre ignoring case. The genre is matched against the dictionary once, the scan
+	 * only compares codes.
+	 * 
+	 * @param genre The genre to be counted
+	 * @return The number of books with the genre
+	 * 
+	*/
+	public int genreCount(String genre) {
+		boolean[] matches = genres.matchesIgnoreCase(genre);
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (genres.matches(matches, genreCodes[row], genre) && !isRemoved(row)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the books of several genres ignoring case in a single pass over the genre column.
+	 * 
+	 * @param genreNames Genres to count.
+	 * @return Number of books of each genre, aligned with {@code genreNames}.
+	 * 
+	*/
+	public int[] genreCounts(String[] genreNames) {
+		// counts per code first, then added up per genre
+		int[] perCode = new int[genres.size()];
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row) && genreCodes[row] != StringDictionary.NULL_CODE) {
+				perCode[genreCodes[row]]++;
+			}
+		}
+		int[] counts = new int[genreNames.length];
+		for (int i = 0; i < genreNames.length; i++) {
+			boolean[] matches = genres.matchesIgnoreCase(genreNames[i]);
+			for (int code = 0; code < perCode.length; code++) {
+				if (genres.matches(matches, code, genreNames[i])) {
+					counts[i] += perCode[code];
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the books with a title ignoring case.
+	 * 
+	 * @param title Title of the book to count instances of.
+	 * @return The number of books with matching title.
+	 * 
+	*/
+	public int titleCount(String title) {
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (titles[row].equalsIgnoreCase(title) && !isRemoved(row)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the checked out books scanning the checked out bitset a word (64 books) at a time.
+	 * 
+	 * @return Rows of the checked out books in store order.
+	 * 
+	*/
+	public List<Book> checkedOutBooks() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int word = 0; word < checkedOut.length; word++) {
+			long bits = checkedOut[word] & ~removed[word];
+			while (bits != 0) {
+				int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+				books.add(new Row(row));
+				bits &= bits - 1;
+			}
+		}
+		return books;
+	}
+
+	/**
+	 * Goes through the checked out books without collecting them, scanning the bitset a word at a time. The
+	 * store must not change while iterating.
+	 * 
+	 * @return Iterator over the rows of the checked out books in store order.
+	 * 
+	*/
+	public Iterator<Book> checkedOutIterator() {
+		return new Iterator<Book>() {
+			private int word = -1;
+			private long bits;
+
+			@Override
+			public boolean hasNext() {
+				while (bits == 0 && word + 1 < checkedOut.length) {
+					word++;
+					bits = checkedOut[word] & ~removed[word];
+				}
+				return bits != 0;
+			}
+
+			@Override
+			public Book next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				return new Row(row);
+			}
+		};
+	}
+
+	/**
+	 * Adds every book to a report in a single pass over the genre and checked out columns. The checked out
+	 * books are added as copies, so the report doesn't change with the store.
+	 * 
+	 * @param aggregator Report to add the books to.
+	 * 
+	*/
+	public void aggregate(ReportAggregator aggregator) {
+		aggregate(aggregator, 0, size);
+	}
+
+	/**
+	 * Adds the books of a range of rows to a report, see {@link #aggregate(ReportAggregator)}. Ranges can be
+	 * aggregated from several threads at once as long as the store doesn't change meanwhile.
+	 * 
+	 * @param aggregator Report to add the books to.
+	 * @param from First row of the range.
+	 * @param to Row after the last row of the range, at most {@link #rowCount()}.
+	 * 
+	*/
+	public void aggregate(ReportAggregator aggregator, int from, int to) {
+		for (int row = from; row < to; row++) {
+			if (!isRemoved(row)) {
+				aggregator.countGenre(genres, genreCodes[row]);
+				if ((checkedOut[row >> 6] & (1L << row)) != 0) {
+					// copied from the columns, the report must not change with the store
+					aggregator.addCheckedOut(new Book(ids[row], titles[row], authors.decode(authorCodes[row]),
+							genres.decode(genreCodes[row]), checkoutDays[row], true));
+				}
+			}
+		}
+	}
+
+	/** Returns the number of rows, including the rows of removed books. */
+	public int rowCount() {
+		return size;
+	}
+
+	/**
+	 * Searches for books going through the rows in store order.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of books that follow the condition given by the lambda function.
+	 * 
+	*/
+	public List<Book> search(FilterFunction<Book> func) {
+		DoublyLinkedList<Book> matchingBooks = new DoublyLinkedList<>();
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				Row book = new Row(row);
+				if (func.filter(book)) {
+					matchingBooks.add(book);
+				}
+			}
+		}
+		return matchingBooks;
+	}
+
+
+	/**
+	 * View of a book of the store. Every getter and setter goes to the columns, the fields inherited from Book
+	 * are left unused. Rows of the same position are equal.
+	 */
+	public class Row extends Book {
+
+		private final int index;
+
+		private Row(int index) {
+			super(0, null, null, null, Book.NO_DATE, false);
+			this.index = index;
+		}
+
+		private ColumnarBookStore store() {
+			return ColumnarBookStore.this;
+		}
+
+		@Override
+		public int getId() {
+			return ids[index];
+		}
+
+		@Override
+		public void setId(int id) {
+			ids[index] = id;
+			markDirty();
+		}
+
+		@Override
+		public String getTitle() {
+			return titles[index];
+		}
+
+		@Override
+		public void setTitle(String title) {
+			titles[index] = title;
+			markDirty();
+		}
+
+		@Override
+		public String getAuthor() {
+			return authors.decode(authorCodes[index]);
+		}
+
+		@Override
+		public void setAuthor(String author) {
+			authorCodes[index] = authors.encode(author);
+			markDirty();
+		}
+
+		@Override
+		public String getGenre() {
+			return genres.decode(genreCodes[index]);
+		}
+
+		@Override
+		int getStoreIndex() {
+			return index;
+		}
+
+		@Override
+		public void setGenre(String genre) {
+			genreCodes[index] = genres.encode(genre);
+			markDirty();
+		}
+
+		@Override
+		public int getLastCheckoutDay() {
+			return checkoutDays[index];
+		}
+
+		@Override
+		public void setLastCheckoutDay(int lastCheckoutDay) {
+			checkoutDays[index] = lastCheckoutDay;
+			markDirty();
+		}
+
+		@Override
+		public boolean isCheckedOut() {
+			return (checkedOut[index >> 6] & (1L << index)) != 0;
+		}
+
+		@Override
+		public void setCheckedOut(boolean isCheckedOut) {
+			setBit(checkedOut, index, isCheckedOut);
+			markDirty();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Row && ((Row) other).store() == store() && ((Row) other).index == index;
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+	}
+}
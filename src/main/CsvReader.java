@@ -0,0 +1,516 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+
+/**
+ * Class that reads CSV records straight from bytes. A record is split into fields by remembering where each
+ * field starts and ends in the buffer, nothing is copied until a value is asked for: numbers, dates and
+ * booleans are parsed from the bytes directly and only text fields become Strings.
+ * 
+ * Fields may be quoted with double quotes, in which case they can contain commas, line breaks and escaped
+ * quotes ({@code ""}). Records end with {@code \n} or {@code \r\n}. Text is decoded as UTF-8.
+ * 
+ * The reader works either over an InputStream, keeping a buffer that is refilled as records are read, or over
+ * a ByteBuffer that already holds all the bytes (like a memory mapped file).
+ * 
+*/
+public class CsvReader implements Closeable {
+
+	/** Initial size of the buffer used for streams.*/
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Stream the bytes come from, or null if the whole input is in the buffer.*/
+	private final InputStream in;
+	/** Bytes being parsed, valid between its position and its limit.*/
+	private ByteBuffer buffer;
+	/** Whether the stream has no more bytes.*/
+	private boolean endOfStream;
+
+	/** Start of each field of the current record in the buffer, excluding quotes.*/
+	private int[] fieldStarts = new int[8];
+	/** End (exclusive) of each field of the current record in the buffer, excluding quotes.*/
+	private int[] fieldEnds = new int[8];
+	/** Whether each field of the current record contains escaped quotes.*/
+	private boolean[] fieldEscaped = new boolean[8];
+	/** Number of fields of the current record.*/
+	private int fieldCount;
+	/** Start and end (exclusive, line break included) of the current record in the buffer.*/
+	private int recordStart;
+	private int recordEnd;
+	/** Used to decode text when the buffer isn't backed by an array.*/
+	private byte[] scratch = new byte[256];
+
+
+	/**
+	 * Constructs a reader over a stream.
+	 * 
+	 * @param in Stream to read, closed by {@link #close()}.
+	 * 
+	*/
+	public CsvReader(InputStream in) {
+		this.in = in;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.limit(0);
+	}
+
+	/**
+	 * Constructs a reader over bytes already in memory, from the position to the limit of the buffer. The
+	 * buffer itself isn't modified.
+	 * 
+	 * @param bytes Bytes to read.
+	 * 
+	*/
+	public CsvReader(ByteBuffer bytes) {
+		this.in = null;
+		this.buffer = bytes.duplicate();
+		this.endOfStream = true;
+	}
+
+
+	/**
+	 * Moves to the next record.
+	 * 
+	 * @return {@code true} if there was a record, {@code false} at the end of the input.
+	 * @throws IOException if an error occurs while reading the stream.
+	 * 
+	*/
+	public boolean nextRecord() throws IOException {
+		while (true) {
+			if (buffer.position() >= buffer.limit() && !fill()) {
+				fieldCount = 0;
+				recordStart = recordEnd = buffer.position();
+				return false;
+			}
+			recordStart = buffer.position();
+			int end = scanRecord(recordStart);
+			if (end >= 0) {
+				recordEnd = end;
+				buffer.position(end);
+				return true;
+			}
+			// the record continues past the bytes in the buffer, read more and scan it again
+			if (!fill()) {
+				recordStart = buffer.position();
+				recordEnd = scanRecord(recordStart, true);
+				buffer.position(recordEnd);
+				return true;
+			}
+		}
+	}
+
+	private int scanRecord(int start) {
+		return scanRecord(start, false);
+	}
+
+	/**
+	 * Splits the record starting at a position into fields.
+	 * 
+	 * @param start Position where the record starts.
+	 * @param atEnd Whether the end of the buffer is the end of the input.
+	 * @return Position after the record, or -1 if the buffer ends before the record does.
+	 * 
+	*/
+	private int scanRecord(int start, boolean atEnd) {
+		int limit = buffer.limit();
+		int pos = start;
+		fieldCount = 0;
+
+		while (true) {
+			if (pos < limit && buffer.get(pos) == '"') {
+				// quoted field, runs until a quote that isn't followed by another quote
+				int fieldStart = pos + 1;
+				boolean escaped = false;
+				pos = fieldStart;
+				while (true) {
+					if (pos >= limit) {
+						if (!atEnd) {
+							return -1;
+						}
+						addField(fieldStart, limit, escaped);
+						return limit;
+					}
+					if (buffer.get(pos) == '"') {
+						if (pos + 1 < limit && buffer.get(pos + 1) == '"') {
+							escaped = true;
+							pos += 2;
+							continue;
+						}
+						if (pos + 1 >= limit && !atEnd) {
+							return -1;
+						}
+						break;
+					}
+					pos++;
+				}
+				addField(fieldStart, pos, escaped);
+				pos++; // closing quote
+				// anything between the closing quote and the next separator is ignored
+				while (pos < limit && buffer.get(pos) != ',' && buffer.get(pos) != '\n') {
+					pos++;
+				}
+			}
+			else {
+				int fieldStart = pos;
+				while (pos < limit && buffer.get(pos) != ',' && buffer.get(pos) != '\n') {
+					pos++;
+				}
+				int fieldEnd = pos;
+				if (pos < limit || atEnd) {
+					if (fieldEnd > fieldStart && buffer.get(fieldEnd - 1) == '\r') {
+						fieldEnd--;
+					}
+					addField(fieldStart, fieldEnd, false);
+				}
+			}
+
+			if (pos >= limit) {
+				return atEnd ? limit : -1;
+			}
+			if (buffer.get(pos) == '\n') {
+				return pos + 1;
+			}
+			pos++; // comma
+		}
+	}
+
+	private void addField(int start, int end, boolean escaped) {
+		if (fieldCount == fieldStarts.length) {
+			int length = fieldStarts.length * 2;
+			int[] starts = new int[length];
+			int[] ends = new int[length];
+			boolean[] escapes = new boolean[length];
+			System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+			System.arraycopy(fieldEnds, 0, ends, 0, fieldCount);
+			System.arraycopy(fieldEscaped, 0, escapes, 0, fieldCount);
+			fieldStarts = starts;
+			fieldEnds = ends;
+			fieldEscaped = escapes;
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldEscaped[fieldCount] = escaped;
+		fieldCount++;
+	}
+
+	/**
+	 * Reads more bytes from the stream, keeping the unread ones. The buffer grows if it's full of unread bytes.
+	 * 
+	 * @return {@code false} if there were no more bytes to read.
+	 * 
+	*/
+	private boolean fill() throws IOException {
+		if (endOfStream) {
+			return false;
+		}
+		buffer.compact();
+		if (!buffer.hasRemaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+		int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		if (read < 0) {
+			endOfStream = true;
+			buffer.flip();
+			return false;
+		}
+		buffer.position(buffer.position() + read);
+		buffer.flip();
+		return true;
+	}
+
+
+	/** Returns the number of fields of the current record. */
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	private void checkField(int field) {
+		if (field < 0 || field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Field " + field + " of a record with " + fieldCount + " fields");
+		}
+	}
+
+	/**
+	 * Checks whether a field is empty or only has spaces.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return {@code true} if the field is blank.
+	 * 
+	*/
+	public boolean isBlank(int field) {
+		checkField(field);
+		for (int i = fieldStarts[field]; i < fieldEnds[field]; i++) {
+			if (buffer.get(i) != ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a field as an int. Spaces around the number are ignored.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Value of the field.
+	 * @throws NumberFormatException if the field isn't an int.
+	 * 
+	*/
+	public int getInt(int field) {
+		checkField(field);
+		int pos = fieldStarts[field];
+		int end = fieldEnds[field];
+		while (pos < end && buffer.get(pos) == ' ') {
+			pos++;
+		}
+		while (end > pos && buffer.get(end - 1) == ' ') {
+			end--;
+		}
+		boolean negative = pos < end && buffer.get(pos) == '-';
+		if (negative || (pos < end && buffer.get(pos) == '+')) {
+			pos++;
+		}
+		if (pos == end) {
+			throw new NumberFormatException("Not a number: \"" + getString(field) + "\"");
+		}
+		long value = 0;
+		for (; pos < end; pos++) {
+			int digit = buffer.get(pos) - '0';
+			if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE + 1L) {
+				throw new NumberFormatException("Not a number: \"" + getString(field) + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		value = negative ? -value : value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Out of range: \"" + getString(field) + "\"");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parses a field with a list of ints, like {@code {2 4 6}}. The numbers are separated by spaces and the
+	 * braces around them are skipped, each number is parsed like {@link #getInt(int)}.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Numbers in the field, empty if there are none.
+	 * @throws NumberFormatException if a number isn't an int.
+	 * 
+	*/
+	public int[] getIntList(int field) {
+		checkField(field);
+		int[] values = new int[4];
+		int count = 0;
+		int pos = fieldStarts[field];
+		int end = fieldEnds[field];
+		while (pos < end) {
+			if (isListSeparator(buffer.get(pos))) {
+				pos++;
+				continue;
+			}
+			boolean negative = buffer.get(pos) == '-';
+			if (negative || buffer.get(pos) == '+') {
+				pos++;
+			}
+			int digits = pos;
+			long value = 0;
+			while (pos < end && isDigit(buffer.get(pos))) {
+				value = value * 10 + (buffer.get(pos) - '0');
+				if (value > Integer.MAX_VALUE + 1L) {
+					throw new NumberFormatException("Out of range: \"" + getString(field) + "\"");
+				}
+				pos++;
+			}
+			if (pos == digits || (pos < end && !isListSeparator(buffer.get(pos)))) {
+				throw new NumberFormatException("Not a list of numbers: \"" + getString(field) + "\"");
+			}
+			value = negative ? -value : value;
+			if (value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Out of range: \"" + getString(field) + "\"");
+			}
+			if (count == values.length) {
+				int[] bigger = new int[values.length * 2];
+				System.arraycopy(values, 0, bigger, 0, count);
+				values = bigger;
+			}
+			values[count++] = (int) value;
+		}
+		if (count == values.length) {
+			return values;
+		}
+		int[] result = new int[count];
+		System.arraycopy(values, 0, result, 0, count);
+		return result;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isListSeparator(byte b) {
+		return b == ' ' || b == '{' || b == '}';
+	}
+
+	/**
+	 * Parses a field with a date in the format yyyy-MM-dd.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Date in the field.
+	 * @throws java.time.format.DateTimeParseException if the field isn't a date in that format.
+	 * 
+	*/
+	public LocalDate getDate(int field) {
+		checkField(field);
+		int pos = fieldStarts[field];
+		if (fieldEnds[field] - pos != 10 || buffer.get(pos + 4) != '-' || buffer.get(pos + 7) != '-') {
+			return LocalDate.parse(getString(field)); // reports the error the same way
+		}
+		int year = digits(pos, 4);
+		int month = digits(pos + 5, 2);
+		int day = digits(pos + 8, 2);
+		if (year < 0 || month < 0 || day < 0) {
+			return LocalDate.parse(getString(field));
+		}
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Parses a field with a date in the format yyyy-MM-dd as an epoch day, without creating a LocalDate for
+	 * the usual dates.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Days from 1970-01-01 to the date in the field.
+	 * @throws java.time.format.DateTimeParseException if the field isn't a date in that format.
+	 * 
+	*/
+	public int getEpochDay(int field) {
+		checkField(field);
+		int pos = fieldStarts[field];
+		if (fieldEnds[field] - pos != 10 || buffer.get(pos + 4) != '-' || buffer.get(pos + 7) != '-') {
+			return (int) getDate(field).toEpochDay();
+		}
+		int year = digits(pos, 4);
+		int month = digits(pos + 5, 2);
+		int day = digits(pos + 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+			return (int) getDate(field).toEpochDay(); // reports the error the same way
+		}
+		// days from civil, counting years from March so the leap day is the last day of the year
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		if (month == 2) {
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	/** Parses a fixed amount of digits, returns -1 if any byte isn't a digit. */
+	private int digits(int pos, int length) {
+		int value = 0;
+		for (int i = pos; i < pos + length; i++) {
+			byte b = buffer.get(i);
+			if (!isDigit(b)) {
+				return -1;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a field as a boolean the same way as {@link Boolean#parseBoolean(String)}: it's {@code true} only
+	 * if the field is "true" ignoring case.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Value of the field.
+	 * 
+	*/
+	public boolean getBoolean(int field) {
+		checkField(field);
+		int pos = fieldStarts[field];
+		if (fieldEnds[field] - pos != 4) {
+			return false;
+		}
+		return (buffer.get(pos) | 0x20) == 't' && (buffer.get(pos + 1) | 0x20) == 'r'
+				&& (buffer.get(pos + 2) | 0x20) == 'u' && (buffer.get(pos + 3) | 0x20) == 'e';
+	}
+
+	/**
+	 * Returns the text of the current record as it is in the input, quotes included, without its line break.
+	 * Quoted fields can have line breaks, so a record may span several lines.
+	 * 
+	 * @return Text of the record.
+	 * 
+	*/
+	public String getRecord() {
+		int end = recordEnd;
+		if (end > recordStart && buffer.get(end - 1) == '\n') {
+			end--;
+		}
+		if (end > recordStart && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		return text(recordStart, end - recordStart);
+	}
+
+	/**
+	 * Returns the text of a field, without the surrounding quotes and with escaped quotes unescaped.
+	 * 
+	 * @param field Position of the field in the record.
+	 * @return Text of the field.
+	 * 
+	*/
+	public String getString(int field) {
+		checkField(field);
+		String text = text(fieldStarts[field], fieldEnds[field] - fieldStarts[field]);
+		return fieldEscaped[field] ? text.replace("\"\"", "\"") : text;
+	}
+
+	/** Decodes bytes of the buffer as UTF-8. */
+	private String text(int start, int length) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(start, scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Quotes a field if it has commas, quotes or line breaks, so the reader gives it back as it was.
+	 * 
+	 * @param field Text of the field.
+	 * @return The field, quoted if it needs to be.
+	 * 
+	*/
+	public static String quote(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+}
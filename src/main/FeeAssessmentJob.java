@@ -0,0 +1,336 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import data_structures.ArrayList;
+import interfaces.List;
+
+
+/**
+ * Class that assesses the fees of every user of a catalog at the end of the day and writes them to a ledger.
+ * The users of a snapshot of the catalog are split in chunks that are assessed at the same time on a fork-join
+ * pool, all as of the same day, and the results are written in user order as soon as each chunk is done. The
+ * snapshot holds a copy of every user, but the chunks read the users straight from it and only a few chunks of
+ * fees are in flight at once, so the job adds no memory per user on top of the snapshot.
+ * 
+ * The ledger is a CSV file with a line per user: ID, name, fees and whether the fees are over the threshold.
+ * It's written to a temporary file that replaces the ledger when the job finishes, a cancelled or failed job
+ * leaves the previous ledger as it was.
+ * 
+ * The job can be followed from other threads with {@link #getProgress()} and {@link #getThroughput()}, and
+ * stopped with {@link #cancel()}.
+ * 
+*/
+public class FeeAssessmentJob {
+
+	/** Chunks per thread, more chunks than threads balances the work when some chunks are slower.*/
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** Smallest chunk worth a task of its own.*/
+	private static final int MIN_CHUNK_SIZE = 256;
+	/** Chunks per thread submitted ahead of the one being written.*/
+	private static final int IN_FLIGHT_PER_THREAD = 2;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte[] HEADER = "id,name,fees,flagged\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final LibraryCatalog catalog;
+	private final Path ledger;
+	private final long thresholdCents;
+	private final int parallelism;
+
+	private volatile boolean cancelled;
+	/** Users of the snapshot being assessed, -1 before the job starts.*/
+	private volatile int userCount = -1;
+	private final AtomicLong assessedUsers = new AtomicLong();
+	private volatile long startTime;
+	/** Time the job ended, 0 while it's running.*/
+	private volatile long endTime;
+
+
+	/**
+	 * Constructs a job. It doesn't start until {@link #run()} is called.
+	 * 
+	 * @param catalog Catalog whose users are assessed.
+	 * @param ledger File to write the ledger to, replaced when the job finishes.
+	 * @param thresholdCents Fees, in cents, above which a user is flagged.
+	 * @param parallelism Number of threads assessing the users.
+	 * 
+	*/
+	public FeeAssessmentJob(LibraryCatalog catalog, Path ledger, long thresholdCents, int parallelism) {
+		this.catalog = catalog;
+		this.ledger = ledger;
+		this.thresholdCents = thresholdCents;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+
+	/**
+	 * Runs the job on the calling thread, which writes the ledger while the pool assesses the users. The fees
+	 * are calculated as of the current day of the catalog's {@link FeeEngine}.
+	 * 
+	 * @return Summary of the assessment, marked as cancelled if the job was cancelled before it finished.
+	 * @throws IOException if an error occurs while writing the ledger.
+	 * @throws IllegalStateException if the job was already run.
+	 * 
+	*/
+	public Summary run() throws IOException {
+		synchronized (this) {
+			if (startTime != 0) {
+				throw new IllegalStateException("The job was already run");
+			}
+			startTime = System.nanoTime();
+		}
+		CatalogSnapshot snapshot = catalog.snapshot();
+		int asOfDay = catalog.getFeeEngine().today();
+		List<User> users = snapshot.getUsers();
+		userCount = users.size();
+
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, userCount / (parallelism * CHUNKS_PER_THREAD) + 1);
+		int chunks = (userCount + chunkSize - 1) / chunkSize;
+		int window = parallelism * IN_FLIGHT_PER_THREAD;
+
+		Path temporary = ledger.resolveSibling(ledger.getFileName() + ".tmp");
+		Summary summary = new Summary(asOfDay);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)) {
+			out.write(HEADER);
+			ArrayList<Future<long[]>> inFlight = new ArrayList<>(Math.max(chunks, 1));
+			int submitted = 0;
+			for (int chunk = 0; chunk < chunks && !cancelled; chunk++) {
+				while (submitted < chunks && submitted < chunk + window) {
+					int from = submitted * chunkSize;
+					int to = Math.min(userCount, from + chunkSize);
+					inFlight.add(pool.submit(() -> assess(users, from, to, asOfDay)));
+					submitted++;
+				}
+				long[] fees = inFlight.get(chunk).get();
+				inFlight.set(chunk, null);
+				if (fees == null) {
+					break; // cancelled while assessing
+				}
+				int from = chunk * chunkSize;
+				for (int i = 0; i < fees.length; i++) {
+					boolean flagged = fees[i] > thresholdCents;
+					writeEntry(out, users.get(from + i), fees[i], flagged);
+					summary.add(fees[i], flagged);
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			Files.deleteIfExists(temporary);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel();
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		finally {
+			pool.shutdownNow();
+			endTime = System.nanoTime();
+		}
+
+		if (cancelled) {
+			Files.deleteIfExists(temporary);
+			summary.cancelled = true;
+		}
+		else {
+			Files.move(temporary, ledger, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		summary.elapsedNanos = endTime - startTime;
+		return summary;
+	}
+
+	/**
+	 * Assesses a chunk of users, read by position from the list of the snapshot.
+	 * 
+	 * @return Fees of each user in cents, or {@code null} if the job was cancelled meanwhile.
+	 */
+	private long[] assess(List<User> users, int from, int to, int asOfDay) {
+		long[] fees = new long[to - from];
+		for (int i = from; i < to; i++) {
+			if (cancelled) {
+				return null;
+			}
+			fees[i - from] = LibraryReport.userFeeCents(users.get(i), asOfDay);
+		}
+		assessedUsers.addAndGet(to - from);
+		return fees;
+	}
+
+	private static void writeEntry(OutputStream out, User user, long feeCents, boolean flagged) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		line.append(user.getId()).append(',').append(CsvReader.quote(user.getName())).append(',')
+				.append(MoneyFormat.format(feeCents)).append(',').append(flagged).append('\n');
+		out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	/**
+	 * Asks the job to stop. Chunks being assessed stop at the next user, and {@link #run()} returns a cancelled
+	 * summary without replacing the ledger.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** Returns whether the job was cancelled. */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** Returns the amount of users assessed so far. */
+	public long getAssessedUsers() {
+		return assessedUsers.get();
+	}
+
+	/**
+	 * Returns how much of the job is done.
+	 * 
+	 * @return Fraction of the users assessed, from 0 to 1. 0 before the job starts, 1 if there are no users.
+	 * 
+	*/
+	public double getProgress() {
+		int count = userCount;
+		if (count < 0) {
+			return 0.0;
+		}
+		return count == 0 ? 1.0 : (double) assessedUsers.get() / count;
+	}
+
+	/**
+	 * Returns how fast the users are being assessed.
+	 * 
+	 * @return Users assessed per second since the job started, 0 before it starts.
+	 * 
+	*/
+	public double getThroughput() {
+		long start = startTime;
+		if (start == 0) {
+			return 0.0;
+		}
+		long end = endTime != 0 ? endTime : System.nanoTime();
+		return assessedUsers.get() * 1e9 / Math.max(1, end - start);
+	}
+
+
+	/**
+	 * Totals of an assessment.
+	 */
+	public static class Summary {
+		private final int asOfDay;
+		private long users;
+		private long flaggedUsers;
+		private long totalCents;
+		private long flaggedCents;
+		private long elapsedNanos;
+		private boolean cancelled;
+
+		private Summary(int asOfDay) {
+			this.asOfDay = asOfDay;
+		}
+
+		private void add(long feeCents, boolean flagged) {
+			users++;
+			totalCents += feeCents;
+			if (flagged) {
+				flaggedUsers++;
+				flaggedCents += feeCents;
+			}
+		}
+
+		/** Returns the epoch day the fees were calculated up to. */
+		public int getAsOfDay() {
+			return asOfDay;
+		}
+
+		/** Returns the amount of users written to the ledger. */
+		public long getUsers() {
+			return users;
+		}
+
+		/** Returns the amount of users with fees over the threshold. */
+		public long getFlaggedUsers() {
+			return flaggedUsers;
+		}
+
+		/** Returns the fees of all the users, in cents. */
+		public long getTotalCents() {
+			return totalCents;
+		}
+
+		/** Returns the fees of the flagged users, in cents. */
+		public long getFlaggedCents() {
+			return flaggedCents;
+		}
+
+		/** Returns how long the job took, in nanoseconds. */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/** Returns whether the job was cancelled before it finished, the ledger wasn't replaced then. */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/** Returns the users written to the ledger per second. */
+		public double getThroughput() {
+			return users * 1e9 / Math.max(1, elapsedNanos);
+		}
+
+		@Override
+		public String toString() {
+			return (cancelled ? "Cancelled after " : "Assessed ") + users + " users as of " + Book.toDate(asOfDay)
+					+ " in " + elapsedNanos / 1_000_000 + " ms (" + Math.round(getThroughput()) + " users/s): $"
+					+ MoneyFormat.format(totalCents) + " owed, " + flaggedUsers + " flagged owing $"
+					+ MoneyFormat.format(flaggedCents);
+		}
+	}
+
+
+	/**
+	 * Runs the assessment of the catalog read from the data files and prints its progress. Usage:
+	 * {@code FeeAssessmentJob [ledger] [threshold] [threads]}, by default report/ledger.csv, $50.00 and every
+	 * available core.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path ledger = Paths.get(args.length > 0 ? args[0] : "report/ledger.csv");
+		long threshold = args.length > 1 ? Math.round(Double.parseDouble(args[1]) * 100) : 5000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		FeeAssessmentJob job = new FeeAssessmentJob(new LibraryCatalog(), ledger, threshold, threads);
+		Thread monitor = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					Thread.sleep(1000);
+					System.out.printf("%.1f%% done, %.0f users/s%n", job.getProgress() * 100, job.getThroughput());
+				}
+			}
+			catch (InterruptedException e) {
+				// the job finished
+			}
+		}, "fee-assessment-progress");
+		monitor.setDaemon(true);
+		monitor.start();
+		Summary summary = job.run();
+		monitor.interrupt();
+		System.out.println(summary);
+	}
+}
@@ -0,0 +1,124 @@
+package main;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+
+/**
+ * Class that calculates late fees as of the day given by a clock, so the day the library works with can be
+ * changed (a real clock in production, a fixed one in tests) without touching the books. Fees can be calculated
+ * for a whole batch of books at once for the same day.
+ * 
+ * Fees aren't memoized. The engine first remembered the fee of every book per day, but the fee of a book is a
+ * subtraction of epoch days and a multiplication, which costs less than looking it up, and the memo grew with
+ * the catalog and had to be invalidated on every checkout and return. Every call calculates the fee again and
+ * the engine keeps no state besides its clock.
+ * 
+*/
+public class FeeEngine {
+
+	/** Clock stopped at the start of the day the library works with, see {@link Book#calculateFees()}.*/
+	public static final Clock LIBRARY_CLOCK = Clock.fixed(LocalDate.ofEpochDay(Book.TODAY).atStartOfDay(ZoneOffset.UTC)
+			.toInstant(), ZoneOffset.UTC);
+
+	private final Clock clock;
+
+
+	/**
+	 * Constructs an engine that calculates fees as of the day the library works with.
+	 */
+	public FeeEngine() {
+		this(LIBRARY_CLOCK);
+	}
+
+	/**
+	 * Constructs an engine that calculates fees as of the current day of a clock.
+	 * 
+	 * @param clock Clock that tells the current day, in its own time zone.
+	 * 
+	*/
+	public FeeEngine(Clock clock) {
+		this.clock = clock;
+	}
+
+
+	/** Returns the current day of the clock as an epoch day. */
+	public int today() {
+		return (int) LocalDate.now(clock).toEpochDay();
+	}
+
+	/**
+	 * Calculates the late fee of a book as of a day.
+	 * 
+	 * @param book Book to calculate the fee for.
+	 * @param asOfDay Epoch day the fee is calculated up to.
+	 * @return How much money is owed in late fees, or 0 if not overdue or never checked out.
+	 * 
+	*/
+	public float fee(Book book, int asOfDay) {
+		return feeCents(book, asOfDay) / 100.0f;
+	}
+
+	/**
+	 * Calculates the late fee of a book as of a day in cents, see {@link #fee(Book, int)}.
+	 * 
+	 * @param book Book to calculate the fee for.
+	 * @param asOfDay Epoch day the fee is calculated up to.
+	 * @return How many cents are owed in late fees.
+	 * 
+	*/
+	public long feeCents(Book book, int asOfDay) {
+		return Book.calculateFeeCents(book.getLastCheckoutDay(), asOfDay);
+	}
+
+	/**
+	 * Calculates the late fees of a batch of books as of a day.
+	 * 
+	 * @param books Books to calculate the fees for.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return Fee of each book, aligned with {@code books}.
+	 * 
+	*/
+	public float[] fees(Iterable<Book> books, int asOfDay) {
+		float[] fees = new float[16];
+		int count = 0;
+		for (Book book : books) {
+			if (count == fees.length) {
+				fees = Arrays.copyOf(fees, count * 2);
+			}
+			fees[count++] = fee(book, asOfDay);
+		}
+		return Arrays.copyOf(fees, count);
+	}
+
+	/**
+	 * Adds up the late fees of the books of a batch that are still checked out, as of a day, in cents.
+	 * 
+	 * @param books Books to add up, like the checked out list of a user.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return Total fees owed for the books, in cents.
+	 * 
+	*/
+	public long totalFeeCents(Iterable<Book> books, int asOfDay) {
+		long total = 0;
+		for (Book book : books) {
+			if (book.isCheckedOut()) {
+				total += feeCents(book, asOfDay);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Adds up the late fees a user owes as of the current day of the clock.
+	 * 
+	 * @param user User to calculate the fees for.
+	 * @return Total fees owed by the user, in cents.
+	 * 
+	*/
+	public long userFeeCents(User user) {
+		return totalFeeCents(user.getCheckedOutList(), today());
+	}
+}
@@ -0,0 +1,277 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Class that saves the changes of a LibraryCatalog back to catalog.csv and user.csv without rewriting them. It
+ * listens to the catalog and remembers the books and users that changed, then {@link #save()} appends only
+ * their rows to delta files next to the CSV files (catalog.csv.delta and user.csv.delta), so saving costs the
+ * same for a handful of changes no matter how big the catalog is.
+ * 
+ * Each delta line is a full row of the CSV file preceded by {@code +,} when the row was added or changed, or
+ * {@code -,ID} when the book was removed. {@link #compact(Path, Path)} merges the deltas into the CSV files,
+ * {@link #recover(int, LibraryCatalog.Storage)} does it at startup before the catalog is read, so the saved
+ * changes are never lost.
+ * 
+*/
+public class IncrementalCatalogSaver implements CatalogListener {
+
+	private final LibraryCatalog catalog;
+	private final Path catalogDelta;
+	private final Path userDelta;
+
+	// guarded by the catalog lock
+	/** Books changed since the last save in order, mapped to whether they were removed.*/
+	private LinkedHashMap<Book, Boolean> changedBooks = new LinkedHashMap<>();
+	/** Users changed since the last save.*/
+	private IdentityHashMap<User, Boolean> changedUsers = new IdentityHashMap<>();
+
+
+	/**
+	 * Constructs a saver and starts tracking the changes of a catalog.
+	 * 
+	 * @param catalog Catalog to save.
+	 * @param catalogFile CSV file the books were loaded from.
+	 * @param userFile CSV file the users were loaded from.
+	 * 
+	*/
+	public IncrementalCatalogSaver(LibraryCatalog catalog, Path catalogFile, Path userFile) {
+		this.catalog = catalog;
+		this.catalogDelta = deltaOf(catalogFile);
+		this.userDelta = deltaOf(userFile);
+		catalog.getEvents().addListener(this);
+	}
+
+	/**
+	 * Loads the catalog saved by a saver and starts saving it again: the deltas are merged into data/catalog.csv
+	 * and data/user.csv, then the catalog is read from them. Catalogs kept with a {@link CatalogJournal} are
+	 * loaded with {@link CatalogJournal#recover(Path, Path)} instead, which knows when the deltas can be merged.
+	 * 
+	 * @param parallelism Number of threads reading the books, 1 reads them sequentially.
+	 * @param storage How to keep the books.
+	 * @return Saver of the loaded catalog.
+	 * @throws IOException if an error occurs while merging the deltas or reading the files.
+	 * 
+	*/
+	public static IncrementalCatalogSaver recover(int parallelism, LibraryCatalog.Storage storage) throws IOException {
+		Path catalogFile = Paths.get(LibraryCatalog.CATALOG_FILE);
+		Path userFile = Paths.get(LibraryCatalog.USER_FILE);
+		compact(catalogFile, userFile);
+		return new IncrementalCatalogSaver(new LibraryCatalog(parallelism, storage), catalogFile, userFile);
+	}
+
+	/** Returns the catalog this saver saves. */
+	public LibraryCatalog getCatalog() {
+		return catalog;
+	}
+
+	private static Path deltaOf(Path file) {
+		return file.resolveSibling(file.getFileName() + ".delta");
+	}
+
+
+	/**
+	 * Remembers the book and user of an event. Called by the catalog while it holds its lock. A return changes
+	 * the list of every user that had the book, the others than the first come as
+	 * {@link CatalogEvent.Type#BOOK_RELEASED} events.
+	 * 
+	 * @param event Change made to the catalog.
+	 * 
+	*/
+	@Override
+	public void onEvent(CatalogEvent event) {
+		Book book = event.getBook();
+		if (event.getType() == CatalogEvent.Type.BOOK_REMOVED) {
+			changedBooks.put(book, Boolean.TRUE);
+		}
+		else {
+			book.markDirty();
+			changedBooks.put(book, Boolean.FALSE);
+		}
+		if (event.getUserId() != CatalogEvent.NO_USER) {
+			User user = catalog.findUser(event.getUserId());
+			if (user != null && user.isDirty()) {
+				changedUsers.put(user, Boolean.TRUE);
+			}
+		}
+	}
+
+
+	/**
+	 * Appends the rows of the books and users that changed since the last save to the delta files and forces
+	 * them to disk. The rows are taken while holding the catalog lock, the files are written after releasing it.
+	 * 
+	 * @return Number of rows written.
+	 * @throws IOException if an error occurs while writing the delta files.
+	 * 
+	*/
+	public int save() throws IOException {
+		StringBuilder books = new StringBuilder();
+		StringBuilder users = new StringBuilder();
+		int rows = 0;
+		synchronized (catalog) {
+			for (Map.Entry<Book, Boolean> change : changedBooks.entrySet()) {
+				Book book = change.getKey();
+				if (change.getValue()) {
+					books.append("-,").append(book.getId()).append('\n');
+					rows++;
+				}
+				else if (book.isDirty()) {
+					books.append("+,").append(bookRow(book)).append('\n');
+					book.markClean();
+					rows++;
+				}
+			}
+			for (User user : changedUsers.keySet()) {
+				users.append("+,").append(userRow(user)).append('\n');
+				user.markClean();
+				rows++;
+			}
+			changedBooks = new LinkedHashMap<>();
+			changedUsers = new IdentityHashMap<>();
+		}
+		append(catalogDelta, books);
+		append(userDelta, users);
+		return rows;
+	}
+
+	private static void append(Path delta, StringBuilder rows) throws IOException {
+		if (rows.length() == 0) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(delta, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer bytes = ByteBuffer.wrap(rows.toString().getBytes(StandardCharsets.UTF_8));
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+		}
+	}
+
+
+	/**
+	 * Formats a book as a row of catalog.csv. Books that were never checked out have an empty date.
+	 */
+	static String bookRow(Book book) {
+		LocalDate lastCheckOut = book.getLastCheckOut();
+		return book.getId() + "," + CsvReader.quote(book.getTitle()) + "," + CsvReader.quote(book.getAuthor()) + ","
+				+ CsvReader.quote(book.getGenre()) + "," + (lastCheckOut == null ? "" : lastCheckOut.toString()) + "," + book.isCheckedOut();
+	}
+
+	/**
+	 * Formats a user as a row of user.csv.
+	 */
+	static String userRow(User user) {
+		StringBuilder row = new StringBuilder();
+		row.append(user.getId()).append(',').append(CsvReader.quote(user.getName())).append(',');
+		if (!user.getCheckedOutList().isEmpty()) {
+			row.append('{');
+			boolean first = true;
+			for (Book book : user.getCheckedOutList()) {
+				if (!first) {
+					row.append(' ');
+				}
+				row.append(book.getId());
+				first = false;
+			}
+			row.append('}');
+		}
+		return row.toString();
+	}
+
+
+	/**
+	 * Merges the delta files into the CSV files. Rows that changed replace the row with the same ID, new rows go
+	 * at the end and removed rows are dropped, every other row is kept as it was. The catalog allows several
+	 * books with the same ID and changes them by ID starting with the first one, so a change applies to the first
+	 * row left with its ID and rows that share an ID are all kept. The CSV files are replaced
+	 * atomically and the deltas deleted afterwards, so an interrupted compaction can be repeated. Does nothing if
+	 * there are no deltas.
+	 * 
+	 * @param catalogFile CSV file of the books.
+	 * @param userFile CSV file of the users.
+	 * @throws IOException if an error occurs while reading or writing the files.
+	 * 
+	*/
+	public static void compact(Path catalogFile, Path userFile) throws IOException {
+		compactFile(catalogFile);
+		compactFile(userFile);
+	}
+
+	private static void compactFile(Path file) throws IOException {
+		Path delta = deltaOf(file);
+		if (!Files.exists(delta)) {
+			return;
+		}
+
+		// rows are read with the tokenizer since quoted fields can have line breaks, and copied as they were
+		String header = null;
+		ArrayList<String> rows = new ArrayList<>();
+		// positions of the rows left with each ID, in file order
+		HashMap<String, ArrayDeque<Integer>> positions = new HashMap<>();
+		try (CsvReader reader = new CsvReader(Files.newInputStream(file))) {
+			if (reader.nextRecord()) {
+				header = reader.getRecord();
+			}
+			while (reader.nextRecord()) {
+				if (!reader.getRecord().isBlank()) {
+					positions.computeIfAbsent(reader.getString(0).trim(), key -> new ArrayDeque<>()).add(rows.size());
+					rows.add(reader.getRecord());
+				}
+			}
+		}
+		try (CsvReader reader = new CsvReader(Files.newInputStream(delta))) {
+			while (reader.nextRecord()) {
+				if (reader.fieldCount() < 2) {
+					continue;
+				}
+				String change = reader.getString(0);
+				String id = reader.getString(1).trim();
+				ArrayDeque<Integer> rowsWithId = positions.computeIfAbsent(id, key -> new ArrayDeque<>());
+				if (change.equals("+")) {
+					String row = reader.getRecord().substring(2);
+					if (rowsWithId.isEmpty()) {
+						rowsWithId.add(rows.size());
+						rows.add(row);
+					}
+					else {
+						rows.set(rowsWithId.peekFirst(), row);
+					}
+				}
+				else if (change.equals("-") && !rowsWithId.isEmpty()) {
+					rows.set(rowsWithId.pollFirst(), null);
+				}
+			}
+		}
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write(header == null ? "" : header);
+			for (String row : rows) {
+				if (row != null) {
+					writer.write('\n');
+					writer.write(row);
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.delete(delta);
+	}
+}
@@ -1,12 +1,19 @@
 package main;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 import data_structures.ArrayList;
 import data_structures.DoublyLinkedList;
@@ -20,15 +27,62 @@ import interfaces.List;
  * adding, removing, returning, counting books, among other things. Generates reports on the books found in the
  * library and the users fees, among other things.
  * 
+ * Every public operation is synchronized on the catalog, so it can be shared between threads. Readers that
+ * need to walk the whole catalog (reports, long searches) should use {@link #snapshot()} instead of holding the
+ * lock, that way checkouts and returns are never blocked behind them.
+ * 
 */
 public class LibraryCatalog {
-	
+
+	/** File the books are read from.*/
+	static final String CATALOG_FILE = "data/catalog.csv";
+	/** File the users are read from.*/
+	static final String USER_FILE = "data/user.csv";
+
+	/** Ways the catalog can keep its books in memory.*/
+	public enum Storage {
+		/** A Book object per book in a linked list, indexed by ID.*/
+		OBJECTS,
+		/** Rows of a {@link ColumnarBookStore}, the catalog keeps no list or index of its own.*/
+		COLUMNAR,
+		/** Records of an {@link OffHeapBookStore}, the catalog keeps no list or index of its own.*/
+		OFF_HEAP
+	}
+
 	/** Stores the library's collection of books.*/
 	private DoublyLinkedList<Book> bookCatalog; 
 	/** Stores the information of the library's users.*/
 	private DoublyLinkedList<User> users;
+	/** Index of the books by ID, points to the first book in the catalog with that ID.*/
+	private HashMap<Integer, Book> bookIndex;
+	/** Index of the users by ID.*/
+	private HashMap<Integer, User> userIndex;
 	/** Next ID available for new books in the library.*/
 	private int nextID;
+	/** Incremented on every mutation of the catalog, identifies the state the snapshots were taken at.*/
+	private long version;
+	/** Latest snapshot taken, shared by all readers while the version doesn't change.*/
+	private CatalogSnapshot latestSnapshot;
+	/** Frozen copies of the books and users updated on every change, {@code null} until the first snapshot.*/
+	private CatalogVersions versions;
+	/** Columns holding the books in columnar mode, {@code null} otherwise. bookCatalog and bookIndex are {@code null} then.*/
+	private ColumnarBookStore columns;
+	/** Records holding the books in off-heap mode, {@code null} otherwise. bookCatalog and bookIndex are {@code null} then.*/
+	private OffHeapBookStore records;
+	/** Books removed from the catalog by ID, so users loaded lazily still find the books they had. Only kept when the users were read from the file.*/
+	private HashMap<Integer, Book> removedBooks;
+	/** Looks up the books of the users read from the file when their lists are first used, shared by all of them.*/
+	private final IntFunction<Book> bookResolver = this::resolveBook;
+	/** Delivers an event to the listeners for every change made to the catalog.*/
+	private final CatalogEventBus events = new CatalogEventBus();
+	/** Report data kept up to date with every change, {@code null} until {@link #enableLiveReport()} is called.*/
+	private LiveReport liveReport;
+	/** Latest report rendered, handed out again while the catalog doesn't change.*/
+	private final ReportCache reportCache = new ReportCache();
+	/** Calculates the fees as of the day of its clock, {@code null} until it's first needed or a clock is set.*/
+	private FeeEngine fees;
+	/** Checked out books by checkout day, {@code null} until the outstanding fees are first asked for.*/
+	private OverdueHistogram overdue;
 	
 	
 	/**
@@ -38,11 +92,101 @@ public class LibraryCatalog {
 	 * 
 	*/
 	public LibraryCatalog() throws IOException {
-		bookCatalog = getBooksFromFiles(); 
+		this(1);
+	}
+
+	/**
+	 * Constructs a new LibraryCatalog instance reading the books with several threads. The catalog file is
+	 * memory mapped and parsed in chunks by {@link ParallelCatalogLoader}, the users are read afterwards since
+	 * their checked out lists point to the books. Changes saved by {@link IncrementalCatalogSaver} aren't read,
+	 * use {@link IncrementalCatalogSaver#recover(int, Storage)} or {@link CatalogJournal#recover(Path, Path)} to
+	 * start from the saved state.
+	 * 
+	 * @param parallelism Number of threads reading the books, 1 reads them sequentially.
+	 * @throws IOException if an error occurs while reading the data from the files.
+	 * 
+	*/
+	public LibraryCatalog(int parallelism) throws IOException {
+		this(parallelism, Storage.OBJECTS);
+	}
+
+	/**
+	 * Constructs a new LibraryCatalog instance reading data from files, keeping the books the given way. In
+	 * columnar mode the books of the catalog are rows of a {@link ColumnarBookStore}, and counts, searches and
+	 * the report scan the columns. In off-heap mode the books are records of an {@link OffHeapBookStore}, so
+	 * the heap only holds the users and the books they hold on to. Both stores index the books themselves and
+	 * hand them out as views created on demand, two views of a book are equal but not the same.
+	 * 
+	 * @param parallelism Number of threads reading the books, 1 reads them sequentially.
+	 * @param storage How to keep the books.
+	 * @throws IOException if an error occurs while reading the data from the files.
+	 * 
+	*/
+	public LibraryCatalog(int parallelism, Storage storage) throws IOException {
+		if (storage == Storage.OFF_HEAP && parallelism <= 1) {
+			records = getRecordsFromFiles();
+		}
+		else {
+			if (parallelism > 1) {
+				bookCatalog = ParallelCatalogLoader.loadBooks(Paths.get(CATALOG_FILE), parallelism);
+			}
+			else {
+				bookCatalog = getBooksFromFiles();
+			}
+			if (storage == Storage.COLUMNAR) {
+				// the books read are copied to the columns and dropped
+				columns = new ColumnarBookStore(bookCatalog.size());
+				for (Book book : bookCatalog) {
+					columns.add(book);
+				}
+				bookCatalog = null;
+			}
+			else if (storage == Storage.OFF_HEAP) {
+				// the parallel loader reads objects, they are copied to the records and dropped
+				records = new OffHeapBookStore(bookCatalog.size());
+				for (Book book : bookCatalog) {
+					records.add(book);
+				}
+				bookCatalog = null;
+			}
+		}
+		if (bookCatalog != null) {
+			bookIndex = new HashMap<>();
+			for (Book book : bookCatalog) {
+				indexBook(book);
+			}
+		}
 		users = getUsersFromFiles(); 
+		indexUsers();
 		nextID = calculateNextID();
 	}
 	
+	/**
+	 * Constructs a LibraryCatalog with books and users that were already loaded. The catalog takes ownership of
+	 * the lists, they shouldn't be modified afterwards other than through the catalog.
+	 * 
+	 * @param books Books of the catalog.
+	 * @param users Users of the library, their checked out lists should point to books of the catalog.
+	 * 
+	*/
+	public LibraryCatalog(DoublyLinkedList<Book> books, DoublyLinkedList<User> users) {
+		this.bookCatalog = books;
+		this.bookIndex = new HashMap<>();
+		for (Book book : bookCatalog) {
+			indexBook(book);
+		}
+		this.users = users;
+		indexUsers();
+		nextID = calculateNextID();
+	}
+	
+	private void indexUsers() {
+		userIndex = new HashMap<>();
+		for (User user : users) {
+			userIndex.putIfAbsent(user.getId(), user);
+		}
+	}
+	
 	
 	/**
 	 * Reads book data from catalog.csv. Each line is expected to contain comma-separated values representing
@@ -54,25 +198,15 @@ public class LibraryCatalog {
 	*/
 	private DoublyLinkedList<Book> getBooksFromFiles() throws IOException {
 		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		StringDictionary authors = new StringDictionary();
+		StringDictionary genres = new StringDictionary();
 		
-		try (BufferedReader reader = new BufferedReader(new FileReader("data/catalog.csv"))) {
-			String line; // stores each line read from the file
-			reader.readLine(); // skip the first line 
+		try (CsvReader reader = new CsvReader(new FileInputStream(CATALOG_FILE))) {
+			reader.nextRecord(); // skip the first line 
 			
-			while ((line = reader.readLine()) != null) {
-				String[] split = line.split(",");
-				if (split.length == 6) {
-					
-					// splits the line in their specific type
-					int id = Integer.parseInt(split[0]);
-					String title = split[1];
-					String author = split[2];
-					String genre = split[3];
-					LocalDate lastCheckoutDate = LocalDate.parse(split[4]);
-					boolean checkedOut = Boolean.parseBoolean(split[5]);
-					
-					// creates a new book with the split data and adds it to the books list
-					Book book = new Book(id, title, author, genre, lastCheckoutDate, checkedOut);
+			while (reader.nextRecord()) {
+				Book book = parseBook(reader, authors, genres);
+				if (book != null) {
 					books.add(book);
 				}
 			}
@@ -80,12 +214,64 @@ public class LibraryCatalog {
 		return books;
 	}
 	
+	/**
+	 * Reads book data from catalog.csv straight into off-heap records, without creating a Book for each line.
+	 * 
+	 * @return The records of the books read from the file.
+	 * @throws IOException if an error occurs while reading the data from the file.
+	 * 
+	*/
+	private OffHeapBookStore getRecordsFromFiles() throws IOException {
+		OffHeapBookStore records = new OffHeapBookStore(1024);
+		
+		try (CsvReader reader = new CsvReader(new FileInputStream(CATALOG_FILE))) {
+			reader.nextRecord(); // skip the first line 
+			
+			while (reader.nextRecord()) {
+				if (reader.fieldCount() == 6) {
+					records.add(reader.getInt(0), reader.getString(1), reader.getString(2), reader.getString(3),
+							lastCheckoutDay(reader), reader.getBoolean(5));
+				}
+			}
+		}
+		return records;
+	}
+	
+	/**
+	 * Creates a book from the current record of catalog.csv. The record must have the fields
+	 * ID,Title,Author,Genre,Last Checkout Date,Checked Out, titles and authors with commas have to be quoted.
+	 * 
+	 * @param record Reader positioned on the record.
+	 * @param authors Dictionary of the load, books with the same author share its string.
+	 * @param genres Dictionary of the load, books with the same genre share its string.
+	 * @return The book, or {@code null} if the record doesn't have 6 fields.
+	 * 
+	*/
+	static Book parseBook(CsvReader record, StringDictionary authors, StringDictionary genres) {
+		if (record.fieldCount() != 6) {
+			return null;
+		}
+		int id = record.getInt(0);
+		String title = record.getString(1);
+		String author = authors.intern(record.getString(2));
+		String genre = genres.intern(record.getString(3));
+		int lastCheckoutDay = lastCheckoutDay(record);
+		boolean checkedOut = record.getBoolean(5);
+		return new Book(id, title, author, genre, lastCheckoutDay, checkedOut);
+	}
+	
+	/** Reads the last checkout date of a record of catalog.csv, books never checked out have an empty field. */
+	private static int lastCheckoutDay(CsvReader record) {
+		return record.isBlank(4) ? Book.NO_DATE : record.getEpochDay(4);
+	}
+	
 	/**
 	 * Reads user data from user.csv and construct a list of User objects.
 	 * 
 	 * Each line is expected to contain comma-separated values representing user attributes. The file's format
 	 * is ID,Full Name,{checked out books, if any} . The method iterates each line, creates User objects, and
 	 * adds their information. It skips the first line which contains a header of the file's format for storing.
+	 * The checked out lists are resolved lazily, see {@link #resolveBook(int)}.
 	 * 
 	 * @return A doubly linked list that has user objects read from the file.
 	 * @throws IOException if an error occurs while reading the data from the file.
@@ -93,42 +279,28 @@ public class LibraryCatalog {
 	*/
 	private DoublyLinkedList<User> getUsersFromFiles() throws IOException {
 		DoublyLinkedList<User> users = new DoublyLinkedList<>();
-		DoublyLinkedList<Book> checkedOut;
+		removedBooks = new HashMap<>();
 
-		try (BufferedReader reader = new BufferedReader(new FileReader("data/user.csv"))) {
-			String line; // stores each line read from the file
-			reader.readLine(); // skips the first line
+		try (CsvReader reader = new CsvReader(new FileInputStream(USER_FILE))) {
+			reader.nextRecord(); // skips the first line
 			
-			while ((line = reader.readLine()) != null) {
-				// splits the line in their specific type
-				String[] split = line.split(",");
-				int id = Integer.parseInt(split[0].trim());
-				String name = split[1].trim();
+			while (reader.nextRecord()) {
+				if (reader.fieldCount() < 2) {
+					continue; // blank line
+				}
+				int id = reader.getInt(0);
+				String name = reader.getString(1).trim();
 				
-				// if the line has checked out books
-				if (split.length == 3) {
-					checkedOut = new DoublyLinkedList<>();
-					String[] bookIDs = split[2].replace("{", "").replace("}", "").split(" ");
-					DoublyLinkedList<Book> bookCollection = getBookCatalog();
-
-					for (String bookID : bookIDs) {
-						int bookId = Integer.parseInt(bookID.trim());
-						for (Book book : bookCollection) {
-							if (book.getId() == bookId) {
-								checkedOut.add(book);
-								break;
-							}
-						}
-					}
-	            }
-				else { // no checked out books by users
-					checkedOut = new DoublyLinkedList<>();
+				// creates a new user with the data of the record and adds it to the users list, the checked out
+				// books (if the line has any) are looked up the first time the user's list is used
+				User user;
+				if (reader.fieldCount() > 2) {
+					user = new User(id, name, reader.getIntList(2), bookResolver);
+				}
+				else {
+					user = new User(id, name);
 				}
-				// creates a new user with the split data and adds it to the users list
-				User user = new User(id, name);
-				user.setCheckedOutList(checkedOut);
 				users.add(user);
-			
 			}
 		}
 		return users;
@@ -136,9 +308,52 @@ public class LibraryCatalog {
 
 
 	
-	/** Allows us to access private fields outside of LibraryCatalog. We can access the reference to the DoublyLinkedList that stores the books. */
+	/**
+	 * Finds the book a user read from the file had checked out. The lists are resolved when they are first used,
+	 * so books removed from the catalog before that are still found, like they would have been when loading.
+	 * Users are read outside the lock too (by the GUI, or the rows of a saver), so the lookup takes the lock.
+	 * 
+	 * @param id ID of the book.
+	 * @return The book, or {@code null} if no book had the ID.
+	 * 
+	*/
+	synchronized Book resolveBook(int id) {
+		Book removed = removedBooks == null ? null : removedBooks.get(id);
+		return removed != null ? removed : findBook(id);
+	}
+
+	/**
+	 * Keeps the books removed from now on, and some removed before, so users whose lists aren't resolved yet
+	 * still find them, like they do in a catalog read from the files.
+	 * 
+	 * @param removed Books removed before.
+	 * 
+	*/
+	synchronized void keepRemovedBooks(Iterable<Book> removed) {
+		if (removedBooks == null) {
+			removedBooks = new HashMap<>();
+		}
+		for (Book book : removed) {
+			removedBooks.putIfAbsent(book.getId(), book);
+		}
+	}
+
+	/** Returns the removed books kept for users whose lists aren't resolved yet. */
+	synchronized Iterable<Book> getRemovedBooks() {
+		return removedBooks != null ? removedBooks.values() : Collections.<Book>emptyList();
+	}
+	
+	
+	/**
+	 * Allows us to access private fields outside of LibraryCatalog. We can access the reference to the DoublyLinkedList that stores the books.
+	 * In columnar and off-heap mode there's no such list, a new list with views of the books is returned instead
+	 * and changing the list doesn't change the catalog.
+	 */
 	public DoublyLinkedList<Book> getBookCatalog() {
-		return bookCatalog;
+		if (records != null) {
+			return records.books();
+		}
+		return columns != null ? columns.books() : bookCatalog;
 	}
 	
 	/** Allows us to access private fields outside of LibraryCatalog. We can access the reference to the DoublyLinkedList that stores the users. */
@@ -147,6 +362,212 @@ public class LibraryCatalog {
 	}
 	
 	
+	/**
+	 * Returns the event bus of the catalog. Listeners registered on it are told about every book that is added,
+	 * removed, checked out or returned through the catalog.
+	 * 
+	 * @return The event bus of the catalog.
+	 * 
+	*/
+	public CatalogEventBus getEvents() {
+		return events;
+	}
+	
+	/**
+	 * Returns the fee engine of the catalog. Until a clock is set with {@link #setClock(Clock)}, it works with the
+	 * day the library works with.
+	 * 
+	 * @return The fee engine of the catalog.
+	 * 
+	*/
+	public synchronized FeeEngine getFeeEngine() {
+		if (fees == null) {
+			fees = new FeeEngine();
+		}
+		return fees;
+	}
+	
+	/**
+	 * Sets the clock that tells the current day. Books are checked out on that day, and fees and reports are
+	 * calculated up to it.
+	 * 
+	 * @param clock Clock to use.
+	 * 
+	*/
+	public synchronized void setClock(Clock clock) {
+		fees = new FeeEngine(clock);
+	}
+	
+	/** Returns the current day as an epoch day, the one of the clock if one was set. */
+	synchronized int today() {
+		return fees != null ? fees.today() : Book.TODAY;
+	}
+	
+	/**
+	 * Starts keeping the data of the report up to date on every change made through the catalog, see
+	 * {@link LiveReport}. From then on {@link #generateReport(Path, boolean)} takes time proportional to the
+	 * report instead of going through every book and user.
+	 */
+	public synchronized void enableLiveReport() {
+		if (liveReport == null) {
+			liveReport = new LiveReport(this);
+			events.addListener(liveReport);
+		}
+	}
+	
+	/**
+	 * Publishes a change to the listeners of the catalog. Must be called after the version was incremented.
+	 * 
+	 * @param type Kind of change.
+	 * @param book Book that changed.
+	 * @param userId ID of the user involved, or {@link CatalogEvent#NO_USER}.
+	 * 
+	*/
+	private void publish(CatalogEvent.Type type, Book book, int userId) {
+		if (events.hasListeners()) {
+			events.publish(new CatalogEvent(type, version, book, userId));
+		}
+	}
+	
+	
+	/**
+	 * Adds a book to the ID index unless there's already a book with the same ID, that way lookups keep
+	 * returning the first book with the ID in the catalog.
+	 * 
+	 * @param book Book to index.
+	 * 
+	*/
+	private void indexBook(Book book) {
+		bookIndex.putIfAbsent(book.getId(), book);
+	}
+	
+	/**
+	 * Removes a book from the ID index. If another book in the catalog shares the ID, it takes its place.
+	 * 
+	 * @param book Book that was removed from the catalog.
+	 * 
+	*/
+	private void unindexBook(Book book) {
+		if (bookIndex.get(book.getId()) == book) {
+			bookIndex.remove(book.getId());
+			for (Book other : bookCatalog) {
+				if (other.getId() == book.getId()) {
+					indexBook(other);
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds a book in the catalog by its ID. Books added straight into the list returned by
+	 * {@link #getBookCatalog()} aren't indexed and won't be found.
+	 * 
+	 * @param id ID of the book to find.
+	 * @return The book with the ID, or {@code null} if it isn't in the catalog.
+	 * 
+	*/
+	private Book findBook(int id) {
+		if (records != null) {
+			return records.find(id);
+		}
+		return columns != null ? columns.find(id) : bookIndex.get(id);
+	}
+	
+	
+	/**
+	 * Finds a user of the library by their ID.
+	 * 
+	 * @param id ID of the user to find.
+	 * @return The user with the ID, or {@code null} if there's no such user.
+	 * 
+	*/
+	public synchronized User findUser(int id) {
+		return userIndex.get(id);
+	}
+	
+	
+	/**
+	 * Returns a consistent point-in-time view of the catalog, readers of the same version share it. When the
+	 * books are kept as objects the catalog keeps a frozen copy of every book and user up to date from the first
+	 * snapshot on, each change copies only what it touches and taking a snapshot is O(1); the snapshot makes its
+	 * own copies when it's first read, outside the lock. Columnar and off-heap catalogs are copied under the lock
+	 * the first time a snapshot is requested after a mutation, so their snapshots hold every book on the heap;
+	 * the report, counts and searches of those catalogs read the store instead. Mutations made directly on the lists returned by
+	 * {@link #getBookCatalog()} or {@link #getUsers()}, or on the books and users in them, aren't tracked and
+	 * don't show up in snapshots.
+	 * 
+	 * @return Snapshot of the current version of the catalog.
+	 * 
+	*/
+	public synchronized CatalogSnapshot snapshot() {
+		if (latestSnapshot == null || latestSnapshot.getVersion() != version) {
+			if (columns != null || records != null) {
+				latestSnapshot = new CatalogSnapshot(version, getBookCatalog(), users);
+			}
+			else {
+				if (versions == null) {
+					versions = new CatalogVersions(bookCatalog);
+				}
+				versions.trackUsers(users, getRemovedBooks());
+				latestSnapshot = versions.snapshot(version);
+			}
+		}
+		return latestSnapshot;
+	}
+	
+	/** Returns the current version of the catalog, it changes every time the catalog is mutated. */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+
+	/**
+	 * Saves the current state of the catalog to a binary snapshot file, see {@link CatalogSnapshotFile}. The
+	 * file is written from a snapshot, so the catalog isn't locked while writing, and is on disk when this
+	 * returns.
+	 * 
+	 * @param path File to save the snapshot to, replaced if it exists.
+	 * @throws IOException if an error occurs while writing the file.
+	 * 
+	*/
+	public void saveSnapshot(Path path) throws IOException {
+		CatalogSnapshot snapshot;
+		int next;
+		synchronized (this) {
+			snapshot = snapshot();
+			next = nextID;
+		}
+		CatalogSnapshotFile.write(snapshot, next, path);
+	}
+
+	/**
+	 * Loads a catalog from a binary snapshot file saved with {@link #saveSnapshot(Path)}. It's several times
+	 * faster than reading the CSV files since nothing has to be parsed or looked up.
+	 * 
+	 * @param path File with the snapshot.
+	 * @return Catalog with the books and users of the snapshot, at the version the snapshot was taken.
+	 * @throws IOException if the file can't be read or is corrupted.
+	 * 
+	*/
+	public static LibraryCatalog loadSnapshot(Path path) throws IOException {
+		return CatalogSnapshotFile.read(path);
+	}
+
+	/**
+	 * Restores the counters of a catalog loaded from a snapshot.
+	 * 
+	 * @param nextID Next ID available for new books when the snapshot was saved.
+	 * @param version Version of the catalog when the snapshot was saved.
+	 * 
+	*/
+	synchronized void restore(int nextID, long version) {
+		this.nextID = Math.max(this.nextID, nextID);
+		this.version = version;
+		reportCache.clear();
+	}
+	
+	
 	/**
 	 * Adds a new book to the library catalog
 	 * 
@@ -155,31 +576,92 @@ public class LibraryCatalog {
 	 * @param genre Genre of the new book.
 	 * 
 	*/
-	public void addBook(String title, String author, String genre) {
+	public synchronized void addBook(String title, String author, String genre) {
 		
-		LocalDate today = LocalDate.of(2023, 9, 15);
-		Book newBook = new Book(nextID ,title, author, genre, today, false);
+		Book newBook;
+		if (records != null) {
+			newBook = records.add(nextID, title, author, genre, today(), false);
+		}
+		else if (columns != null) {
+			newBook = columns.add(nextID, title, author, genre, today(), false);
+		}
+		else {
+			newBook = new Book(nextID ,title, author, genre, today(), false);
+		}
 		nextID++; // increments to make sure that each new book will have a unique ID based on the size of the catalog
-		bookCatalog.add(newBook);
+		if (bookCatalog != null) {
+			bookCatalog.add(newBook);
+			indexBook(newBook);
+		}
+		if (versions != null) {
+			versions.bookAdded(newBook);
+		}
+		version++;
+		publish(CatalogEvent.Type.BOOK_ADDED, newBook, CatalogEvent.NO_USER);
 	}
 	
 	
 	/**
-	 * Removes a book from the library catalog based on its ID
+	 * Adds an existing book to the catalog keeping its ID. Used when the ID was assigned somewhere else, like
+	 * a sharded catalog that hands out IDs for all its partitions. In columnar and off-heap mode the catalog
+	 * adds a copy of the book to its store.
 	 * 
-	 * @param id ID of the book to be removed.
+	 * @param book Book to add.
 	 * 
 	*/
-	public void removeBook(int id) {
-		Book toRemove = null;
-		for (Book book : bookCatalog) {
-			if (book.getId() == id) {
-				toRemove = book;
-				break;
+	synchronized void addBook(Book book) {
+		if (records != null) {
+			if (!records.contains(book)) {
+				book = records.add(book);
+			}
+		}
+		else if (columns != null) {
+			if (!columns.contains(book)) {
+				book = columns.add(book);
 			}
 		}
+		else {
+			bookCatalog.add(book);
+			indexBook(book);
+		}
+		if (versions != null) {
+			versions.bookAdded(book);
+		}
+		if (book.getId() >= nextID) {
+			nextID = book.getId() + 1;
+		}
+		version++;
+		publish(CatalogEvent.Type.BOOK_ADDED, book, CatalogEvent.NO_USER);
+	}
+	
+	
+	/**
+	 * Removes a book from the library catalog based on its ID
+	 * 
+	 * @param id ID of the book to be removed.
+	 * 
+	*/
+	public synchronized void removeBook(int id) {
+		Book toRemove = findBook(id);
 		if (toRemove != null) {
-			bookCatalog.remove(toRemove);
+			if (records != null) {
+				records.remove(toRemove);
+			}
+			else if (columns != null) {
+				columns.remove(toRemove);
+			}
+			else {
+				bookCatalog.remove(toRemove);
+				unindexBook(toRemove);
+			}
+			if (removedBooks != null) {
+				removedBooks.putIfAbsent(id, toRemove);
+			}
+			if (versions != null) {
+				versions.bookRemoved(toRemove);
+			}
+			version++;
+			publish(CatalogEvent.Type.BOOK_REMOVED, toRemove, CatalogEvent.NO_USER);
 		}
 	}	
 	
@@ -192,21 +674,33 @@ public class LibraryCatalog {
 	 * catalog.
 	 * 
 	*/
-	public boolean checkOutBook(int id) {
-		for (Book book : bookCatalog) {
-			if (book.getId() == id) {
-				if (book.isCheckedOut()) {
-					return false; 
-				}
-				else {
-					LocalDate today = LocalDate.of(2023, 9, 15); 
-					book.setCheckedOut(true);
-					book.setLastCheckOut(today);
-					return true;
-				}
-			}
+	public synchronized boolean checkOutBook(int id) {
+		return checkOutBook(id, today());
+	}
+	
+	/**
+	 * Checks out a book on a given day instead of the current one, used to replay a checkout that was recorded
+	 * on another day.
+	 * 
+	 * @param id ID of the book to check out.
+	 * @param day Epoch day of the checkout.
+	 * @return {@code true} if successful checkout, {@code false} if already checked out or doesn't exist in
+	 * catalog.
+	 * 
+	*/
+	synchronized boolean checkOutBook(int id, int day) {
+		Book book = findBook(id);
+		if (book == null || book.isCheckedOut()) {
+			return false; 
+		}
+		book.setCheckedOut(true);
+		book.setLastCheckoutDay(day);
+		if (versions != null) {
+			versions.bookChanged(book);
 		}
-		return false;
+		version++;
+		publish(CatalogEvent.Type.BOOK_CHECKED_OUT, book, CatalogEvent.NO_USER);
+		return true;
 	}
 	
 	
@@ -219,20 +713,146 @@ public class LibraryCatalog {
 	 * exist in catalog.
 	 * 
 	*/
-	public boolean returnBook(int id) {
-		for (Book book : bookCatalog) {
-			if (book.getId() == id) {
-				if (!book.isCheckedOut()) {
-					return false;
+	public synchronized boolean returnBook(int id) {
+		Book book = findBook(id);
+		if (book == null || !book.isCheckedOut()) {
+			return false;
+		}
+		book.setCheckedOut(false);
+		if (versions != null) {
+			versions.bookChanged(book);
+		}
+		version++;
+		publish(CatalogEvent.Type.BOOK_RETURNED, book, CatalogEvent.NO_USER);
+		return true;
+	}
+	
+	
+	/**
+	 * Checks out several books for a user at once. Each book is found with a single index lookup and, when
+	 * the checkout succeeds, it's added to the user's checked out list in the same step.
+	 * 
+	 * @param userId ID of the user checking out the books.
+	 * @param bookIds IDs of the books to check out.
+	 * @return Array with the result of each checkout in the same order as {@code bookIds}. An entry is
+	 * {@code false} if the book was already checked out (also by an earlier entry of the batch) or doesn't
+	 * exist. Every entry is {@code false} if the user doesn't exist.
+	 * 
+	*/
+	public synchronized boolean[] checkOutBooks(int userId, int[] bookIds) {
+		return checkOutBooks(userId, bookIds, today());
+	}
+	
+	/**
+	 * Checks out several books for a user on a given day instead of the current one, see
+	 * {@link #checkOutBooks(int, int[])}.
+	 * 
+	 * @param userId ID of the user checking out the books.
+	 * @param bookIds IDs of the books to check out.
+	 * @param day Epoch day of the checkouts.
+	 * @return Array with the result of each checkout in the same order as {@code bookIds}.
+	 * 
+	*/
+	synchronized boolean[] checkOutBooks(int userId, int[] bookIds, int day) {
+		boolean[] results = new boolean[bookIds.length];
+		User user = userIndex.get(userId);
+		if (user == null) {
+			return results;
+		}
+		
+		boolean changed = false;
+		for (int i = 0; i < bookIds.length; i++) {
+			Book book = findBook(bookIds[i]);
+			if (book != null && !book.isCheckedOut()) {
+				if (!changed) {
+					version++; // the whole batch is a single version
+					changed = true;
 				}
-				else {
-					book.setCheckedOut(false);
-					return true;
+				book.setCheckedOut(true);
+				book.setLastCheckoutDay(day);
+				user.addBook(book);
+				if (versions != null) {
+					versions.bookChanged(book);
 				}
+				results[i] = true;
+				publish(CatalogEvent.Type.BOOK_CHECKED_OUT, book, userId);
 			}
 		}
+		if (changed && versions != null) {
+			versions.userChanged(user);
+		}
+		return results;
+	}
+	
+	
+	/**
+	 * Returns several books at once. Each book is found with a single index lookup, then the returned books
+	 * are taken out of the checked out lists of the users in one pass over the users. The return event of a
+	 * book carries the first user that had it, every other user that had it gets a
+	 * {@link CatalogEvent.Type#BOOK_RELEASED} event.
+	 * 
+	 * @param bookIds IDs of the books to return.
+	 * @return Array with the result of each return in the same order as {@code bookIds}. An entry is
+	 * {@code false} if the book isn't checked out (also if an earlier entry of the batch returned it) or
+	 * doesn't exist.
+	 * 
+	*/
+	public synchronized boolean[] returnBooks(int[] bookIds) {
+		boolean[] results = new boolean[bookIds.length];
+		// returned books mapped to the IDs of the users that had them, off-heap views of a book are equal
+		HashMap<Book, ArrayList<Integer>> returned = new HashMap<>();
 		
-		return false;
+		for (int i = 0; i < bookIds.length; i++) {
+			Book book = findBook(bookIds[i]);
+			if (book != null && book.isCheckedOut()) {
+				book.setCheckedOut(false);
+				returned.put(book, new ArrayList<>(1));
+				if (versions != null) {
+					versions.bookChanged(book);
+				}
+				results[i] = true;
+			}
+		}
+		if (returned.isEmpty()) {
+			return results;
+		}
+		
+		for (User user : users) {
+			List<Book> checkedOut = user.getCheckedOutList();
+			DoublyLinkedList<Book> toRemove = null;
+			for (Book book : checkedOut) {
+				ArrayList<Integer> holders = returned.get(book);
+				if (holders != null) {
+					if (holders.isEmpty() || holders.get(holders.size() - 1) != user.getId()) {
+						holders.add(user.getId());
+					}
+					if (toRemove == null) {
+						toRemove = new DoublyLinkedList<>();
+					}
+					toRemove.add(book);
+				}
+			}
+			if (toRemove != null) {
+				for (Book book : toRemove) {
+					user.removeBook(book);
+				}
+				if (versions != null) {
+					versions.userChanged(user);
+				}
+			}
+		}
+		version++;
+		for (int i = 0; i < bookIds.length; i++) {
+			if (results[i]) {
+				Book book = findBook(bookIds[i]);
+				ArrayList<Integer> holders = returned.get(book);
+				publish(CatalogEvent.Type.BOOK_RETURNED, book, holders.isEmpty() ? CatalogEvent.NO_USER : holders.get(0));
+				for (int j = 1; j < holders.size(); j++) {
+					publish(CatalogEvent.Type.BOOK_RELEASED, book, holders.get(j));
+				}
+			}
+		}
+		return results;
 	}
 	
 	
@@ -243,13 +863,12 @@ public class LibraryCatalog {
 	 * @return {@code true} if available, {@code false} if checked out or book is not found in the catalog.
 	 * 
 	*/
-	public boolean getBookAvailability(int id) {
-		for (Book book : bookCatalog) {
-			if (book.getId() == id) {
-				return !book.isCheckedOut();
-			}
+	public synchronized boolean getBookAvailability(int id) {
+		Book book = findBook(id);
+		if (book == null) {
+			return false; // book doesn't exist
 		}
-		return false; // book doesn't exist
+		return !book.isCheckedOut();
 	}
 	
 	
@@ -261,7 +880,13 @@ public class LibraryCatalog {
 	 * @return The number of books with matching title.
 	 * 
 	*/
-	public int bookCount(String title) {
+	public synchronized int bookCount(String title) {
+		if (records != null) {
+			return records.titleCount(title);
+		}
+		if (columns != null) {
+			return columns.titleCount(title);
+		}
 		int count = 0; 
 		for (Book book : bookCatalog) { 
 			if (book.getTitle().equalsIgnoreCase(title)) {
@@ -278,9 +903,15 @@ public class LibraryCatalog {
 	 * which is one greater than the largest ID found. 
 	 * 
 	 * @return The next available ID for a new book.
-	 *
+	 * 
 	*/
 	private int calculateNextID() {
+		if (records != null) {
+			return records.maxId() + 1;
+		}
+		if (columns != null) {
+			return columns.maxId() + 1;
+		}
 		int biggestID = 0; 
 		
 		for (Book book : bookCatalog) { 
@@ -301,10 +932,17 @@ public class LibraryCatalog {
 	 * @return The number of books in the catalog with the genre
 	 * 
 	*/
-	public int genreCount(String genre) {
+	public synchronized int genreCount(String genre) {
+		if (records != null) {
+			return records.genreCount(genre);
+		}
+		if (columns != null) {
+			return columns.genreCount(genre);
+		}
+		// books read from the files share their genre strings, so most books are matched by reference
 		int count = 0;
 		for (Book book : bookCatalog) {
-			if (book.getGenre().equalsIgnoreCase(genre)) {
+			if (book.getGenre() != null && book.getGenre().equalsIgnoreCase(genre)) {
 				count++;
 			}
 		}
@@ -314,150 +952,325 @@ public class LibraryCatalog {
 	
 	
 	/**
-	 * Calculates the total library fees for a user based on their checked out books.
+	 * Calculates the total library fees for a user based on their checked out books, as of the current day.
+	 * The fees are calculated by the {@link FeeEngine} of the catalog.
 	 * 
 	 * @param user User to calculate library fees.
 	 * @return Total fees for the user.
 	 * 
 	*/
-	public double calculateLibraryFees(User user) {
-		double totalFees = 0.0;
-			for (Book book : user.getCheckedOutList()) {
-				if (book.isCheckedOut() == true) {
-					if (book.calculateFees() > 0) {
-					totalFees += book.calculateFees();
-					}
-				}
-			}
-		return totalFees;
+	public synchronized double calculateLibraryFees(User user) {
+		return calculateLibraryFeeCents(user) / 100.0;
+	}
+	
+	/**
+	 * Calculates the total library fees for a user in cents, see {@link #calculateLibraryFees(User)}.
+	 * 
+	 * @param user User to calculate library fees.
+	 * @return Total fees for the user, in cents.
+	 * 
+	*/
+	public synchronized long calculateLibraryFeeCents(User user) {
+		return getFeeEngine().userFeeCents(user);
+	}
+	
+	
+	/**
+	 * Adds up the late fees owed for every book checked out, as of the current day. The books are counted by
+	 * checkout day in an {@link OverdueHistogram} the first time, after that the total takes time logarithmic
+	 * in the span of checkout days instead of going through the books.
+	 * 
+	 * @return Total fees owed for the checked out books, in cents.
+	 * 
+	*/
+	public synchronized long totalOutstandingFeeCents() {
+		return totalOutstandingFeeCents(Book.toDate(today()));
+	}
+	
+	/**
+	 * Adds up the late fees owed for every book checked out, as of a day, see {@link #totalOutstandingFeeCents()}.
+	 * 
+	 * @param asOf Day the fees are calculated up to.
+	 * @return Total fees owed for the checked out books, in cents.
+	 * 
+	*/
+	public synchronized long totalOutstandingFeeCents(LocalDate asOf) {
+		if (overdue == null) {
+			overdue = new OverdueHistogram(columns != null ? columns.checkedOutIterator()
+					: records != null ? records.checkedOutIterator() : bookCatalog.iterator());
+			events.addListener(overdue);
+		}
+		return overdue.totalFeeCents(Book.toEpochDay(asOf));
 	}
 	
 	
+	/**
+	 * Generates the report of the catalog, writes it to report/report.txt and prints it to the console, see
+	 * {@link #generateReport(Path, boolean)}.
+	 * 
+	 * @throws IOException if an error occurs while generating the report.
+	 * 
+	*/
 	public void generateReport() throws IOException {
+		generateReport(Paths.get("report/report.txt"), true);
+	}
+	
+	/**
+	 * Writes the report of the catalog to a file. The report is rendered once per version of the catalog and
+	 * day the fees are calculated up to, see {@link ReportCache}: asking for it again without changes in between
+	 * hands out the same report, and the file isn't written again if it still holds it. The report is streamed
+	 * to a temporary file next to the destination that replaces it when it's complete.
+	 * 
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param echo Whether to print the report to the console as well.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	public void generateReport(Path path, boolean echo) throws IOException {
+		int asOfDay = today();
+		PrintStream out = echo ? System.out : null;
+		if (reportCache.write(getVersion(), asOfDay, path, out)) {
+			return;
+		}
+		renderReport(path, out, asOfDay, writer -> writeReport(writer, asOfDay));
+	}
+	
+	/**
+	 * Renders a report to a temporary file next to its destination, moves it into place once it's complete and
+	 * caches it. If rendering fails the temporary file is deleted and the destination is left as it was.
+	 * 
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param out Stream to echo the report to, or {@code null}.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @param renderer Writes the report and returns the version of the catalog it was computed at.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	private void renderReport(Path path, PrintStream out, int asOfDay, ReportRenderer renderer) throws IOException {
+		Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		long reportVersion;
+		try (ReportWriter writer = ReportWriter.open(temporary, out)) {
+			reportVersion = renderer.render(writer);
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		reportCache.put(reportVersion, asOfDay, temporary, path);
+	}
+	
+	/** Writes a report, see {@link LibraryCatalog#renderReport(Path, PrintStream, int, ReportRenderer)}. */
+	private interface ReportRenderer {
+		long render(ReportWriter writer) throws IOException;
+	}
+	
+	/**
+	 * Writes the report with a {@link ReportWriter}, each section as it's computed. The summary goes first, so
+	 * the genres are counted in a pass over the books and the checked out books are written in a second one.
+	 * 
+	 * The report is computed from a snapshot, so it reflects a single version of the catalog even if books are
+	 * checked out meanwhile. In columnar and off-heap mode the store is written while holding the lock instead,
+	 * copying it would take memory proportional to the catalog. With the live report enabled, its data is
+	 * written while holding the lock too, which only takes time proportional to the report.
+	 * 
+	 * @param writer Writer to write the report to.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return Version of the catalog the report was computed at.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	private long writeReport(ReportWriter writer, int asOfDay) throws IOException {
+		synchronized (this) {
+			if (liveReport != null) {
+				liveReport.writeTo(writer, asOfDay);
+				return version;
+			}
+			if (columns != null || records != null) {
+				writer.writeSummary(columns != null ? columns.genreCounts(LibraryReport.GENRES) : records.genreCounts(LibraryReport.GENRES));
+				Iterator<Book> checkedOut = columns != null ? columns.checkedOutIterator() : records.checkedOutIterator();
+				writer.beginCheckedOut();
+				while (checkedOut.hasNext()) {
+					writer.checkedOutBook(checkedOut.next());
+				}
+				writer.endCheckedOut();
+				writeFees(writer, users, asOfDay);
+				return version;
+			}
+		}
+		CatalogSnapshot snapshot = snapshot();
 		
-		String output = "\t\t\t\tREPORT\n\n";
-		output += "\t\tSUMMARY OF BOOKS\n";
-		output += "GENRE\t\t\t\t\t\tAMOUNT\n";
-		/*
-		 * In this section you will print the amount of books per category.
-		 * 
-		 * Place in each parenthesis the specified count. 
-		 * 
-		 * Note this is NOT a fixed number, you have to calculate it because depending on the 
-		 * input data we use the numbers will differ.
-		 * 
-		 * How you do the count is up to you. You can make a method, use the searchForBooks()
-		 * function or just do the count right here.
-		 */
-		
-		int adventure = genreCount("Adventure");
-		int fiction = genreCount("Fiction");
-		int classics = genreCount("Classics");
-		int mystery = genreCount("Mystery");
-		int sciFi = genreCount("Science Fiction");
-		
-		output += "Adventure\t\t\t\t\t" + adventure + "\n";
-		output += "Fiction\t\t\t\t\t\t" +  fiction + "\n";
-		output += "Classics\t\t\t\t\t" + classics + "\n";
-		output += "Mystery\t\t\t\t\t\t" + mystery + "\n";
-		output += "Science Fiction\t\t\t\t\t" + sciFi + "\n";
-		output += "====================================================\n";
-		
-		int totalBooks = adventure + fiction + classics + mystery + sciFi;
-		output += "\t\t\tTOTAL AMOUNT OF BOOKS\t" + totalBooks + "\n\n";
-		
-		/*
-		 * This part prints the books that are currently checked out
-		 */
-		output += "\t\t\tBOOKS CURRENTLY CHECKED OUT\n\n";
-		/*
-		 * Here you will print each individual book that is checked out.
-		 * 
-		 * Remember that the book has a toString() method. 
-		 * Notice if it was implemented correctly it should print the books in the 
-		 * expected format.
-		 * 
-		 * PLACE CODE HERE
-		 */
-		
+		ReportAggregator genres = new ReportAggregator();
+		for (Book book : snapshot.getBookCatalog()) {
+			genres.countGenre(book.getGenre());
+		}
+		writer.writeSummary(genres.genreCounts(LibraryReport.GENRES));
 		
-		for (Book book : bookCatalog) {
+		writer.beginCheckedOut();
+		for (Book book : snapshot.getBookCatalog()) {
 			if (book.isCheckedOut()) {
-				output += book.toString() + "\n";
+				writer.checkedOutBook(book);
 			}
 		}
-		
-		
-		output += "====================================================\n";
-		
-		int checkedOutCount = searchForBook(book -> book.isCheckedOut()).size();		
-		
-		output += "\t\t\tTOTAL AMOUNT OF BOOKS\t" + checkedOutCount + "\n\n";
-		
-		
-		/*
-		 * Here we will print the users the owe money.
-		 */
-		output += "\n\n\t\tUSERS THAT OWE BOOK FEES\n\n";
-		/*
-		 * Here you will print all the users that owe money.
-		 * The amount will be calculating taking into account 
-		 * all the books that have late fees.
-		 * 
-		 * For example if user Jane Doe has 3 books and 2 of them have late fees.
-		 * Say book 1 has $10 in fees and book 2 has $78 in fees.
-		 * 
-		 * You would print: Jane Doe\t\t\t\t\t$88.00
-		 * 
-		 * Notice that we place 5 tabs between the name and fee and 
-		 * the fee should have 2 decimal places.
-		 * 
-		 * PLACE CODE HERE!
-		 */
-		
-
-		double totalDue = 0.0;
+		writer.endCheckedOut();
+		writeFees(writer, snapshot.getUsers(), asOfDay);
+		return snapshot.getVersion();
+	}
+	
+	private static void writeFees(ReportWriter writer, Iterable<User> users, int asOfDay) throws IOException {
+		writer.beginFees();
 		for (User user : users) {
-			double userFee = 0.0;
-			for (Book book : user.getCheckedOutList()) {
-				if (book.isCheckedOut()) {
-					float fee = book.calculateFees();
-					if (fee > 0) {
-						userFee += fee;
+			long userFee = LibraryReport.userFeeCents(user, asOfDay);
+			if (userFee > 0) {
+				writer.userFee(user.getName(), userFee);
+			}
+		}
+		writer.endFees();
+	}
+	
+	/**
+	 * Gathers the data of the report in a single pass over the books and, optionally, a single pass over the
+	 * users, both from the same version of the catalog. Without the users, the users aren't looked at at all,
+	 * so partitions of a {@link ShardedLibraryCatalog} can aggregate their books while the users they share
+	 * are changed through another partition.
+	 * 
+	 * @param withUsers Whether to add the fees of the users too.
+	 * @return Aggregator with the data of the catalog.
+	 * 
+	*/
+	ReportAggregator aggregate(boolean withUsers) {
+		int asOfDay = today();
+		ReportAggregator aggregator = new ReportAggregator();
+		if (columns != null || records != null) {
+			synchronized (this) {
+				if (columns != null) {
+					columns.aggregate(aggregator);
+				}
+				else {
+					records.aggregate(aggregator);
+				}
+				if (withUsers) {
+					for (User user : users) {
+						aggregator.addUser(user, asOfDay);
 					}
 				}
 			}
-			if (userFee > 0) {
-				output += user.getName() + "\t\t\t\t\t$" + String.format("%.2f", userFee) + "\n";
-				totalDue += userFee;
+			return aggregator;
+		}
+		if (!withUsers) {
+			Iterable<Book> books;
+			synchronized (this) {
+				if (versions == null) {
+					versions = new CatalogVersions(bookCatalog);
+				}
+				books = versions.freezeBooks();
+			}
+			for (Book book : books) {
+				aggregator.addBook(book);
 			}
+			return aggregator;
 		}
-		
-		
-
-			
-		output += "====================================================\n";
-		
-		output += "\t\t\t\tTOTAL DUE\t$" + String.format("%.2f", totalDue) + "\n\n\n";
-		output += "\n\n";
-		System.out.println(output);// You can use this for testing to see if the report is as expected.
-		
-		/*
-		 * Here we will write to the file.
-		 * 
-		 * The variable output has all the content we need to write to the report file.
-		 * 
-		 * PLACE CODE HERE!!
-		 */
-		
-		
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter("report/report.txt"))) {
-			writer.write(output);
+		CatalogSnapshot snapshot = snapshot();
+		for (Book book : snapshot.getBookCatalog()) {
+			aggregator.addBook(book);
 		}
-		catch (IOException e) {
-			System.err.println(e.getMessage());
+		for (User user : snapshot.getUsers()) {
+			aggregator.addUser(user, asOfDay);
+		}
+		return aggregator;
+	}
+	
+	/**
+	 * Generates the report of the catalog gathering it on a fork-join pool. The books and the users are split in
+	 * ranges that are aggregated in parallel, see {@link ReportTask}, and the partial results are merged in
+	 * order, so the report is byte for byte the one {@link #generateReport(Path, boolean)} writes. Otherwise it
+	 * works the same way: a cached report is written instead of gathering the data again, and a new one goes
+	 * through a temporary file and is cached. The checked out books and the users that owe fees are held in
+	 * memory until they are written. In columnar and off-heap mode the catalog is locked while the pool goes
+	 * through the store.
+	 * 
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param echo Whether to print the report to the console as well.
+	 * @param parallelism Number of threads gathering the report.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	public void generateReport(Path path, boolean echo, int parallelism) throws IOException {
+		int asOfDay = today();
+		PrintStream out = echo ? System.out : null;
+		if (reportCache.write(getVersion(), asOfDay, path, out)) {
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			renderReport(path, out, asOfDay, writer -> writeReport(writer, asOfDay, pool, parallelism));
+		}
+		finally {
+			pool.shutdown();
 		}
-		
+	}
+	
+	/**
+	 * Gathers the report on a fork-join pool and writes it.
+	 * 
+	 * @param writer Writer to write the report to.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @param pool Pool that gathers the report.
+	 * @param parallelism Number of threads of the pool.
+	 * @return Version of the catalog the report was computed at.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	private long writeReport(ReportWriter writer, int asOfDay, ForkJoinPool pool, int parallelism) throws IOException {
+		ReportAggregator aggregator;
+		long reportVersion;
+		if (columns != null || records != null) {
+			synchronized (this) {
+				ReportTask.Range books = columns != null ? columns::aggregate : records::aggregate;
+				int rows = columns != null ? columns.rowCount() : records.rowCount();
+				// the list of users has no random access, the tasks get an array. The lists of the users are looked
+				// up here, the pool can't take the lock held by this thread to do it.
+				User[] userArray = new User[users.size()];
+				int i = 0;
+				for (User user : users) {
+					user.getCheckedOutList();
+					userArray[i++] = user;
+				}
+				aggregator = aggregate(pool, parallelism, books, rows, (partial, from, to) -> {
+					for (int user = from; user < to; user++) {
+						partial.addUser(userArray[user], asOfDay);
+					}
+				}, userArray.length);
+				reportVersion = version;
+			}
+		}
+		else {
+			CatalogSnapshot snapshot = snapshot();
+			List<Book> books = snapshot.getBookCatalog();
+			List<User> snapshotUsers = snapshot.getUsers();
+			aggregator = aggregate(pool, parallelism, (partial, from, to) -> {
+				for (int book = from; book < to; book++) {
+					partial.addBook(books.get(book));
+				}
+			}, books.size(), (partial, from, to) -> {
+				for (int user = from; user < to; user++) {
+					partial.addUser(snapshotUsers.get(user), asOfDay);
+				}
+			}, snapshotUsers.size());
+			reportVersion = snapshot.getVersion();
+		}
+		aggregator.toReport().writeTo(writer);
+		return reportVersion;
+	}
+	
+	private static ReportAggregator aggregate(ForkJoinPool pool, int parallelism, ReportTask.Range books, int bookCount,
+			ReportTask.Range users, int userCount) {
+		ReportTask bookTask = new ReportTask(books, 0, bookCount, ReportTask.leafSize(bookCount, parallelism));
+		ReportTask userTask = new ReportTask(users, 0, userCount, ReportTask.leafSize(userCount, parallelism));
+		pool.execute(bookTask);
+		pool.execute(userTask);
+		ReportAggregator aggregator = bookTask.join();
+		aggregator.merge(userTask.join());
+		return aggregator;
 	}
 	
 	/*
@@ -476,7 +1289,13 @@ public class LibraryCatalog {
 	 * @param func The lambda function received
 	 * @return List of books that follow the condition given by the lambda function.
 	*/
-	public List<Book> searchForBook(FilterFunction<Book> func) {
+	public synchronized List<Book> searchForBook(FilterFunction<Book> func) {
+		if (records != null) {
+			return records.search(func);
+		}
+		if (columns != null) {
+			return columns.search(func);
+		}
 		DoublyLinkedList<Book> matchingBooks = new DoublyLinkedList<>();
 		for (Book book : bookCatalog) {
 			if (func.filter(book)) {
@@ -493,7 +1312,7 @@ public class LibraryCatalog {
 	 * @param func The lambda function received
 	 * @return List of users that follow the condition given by the lambda function.
 	*/
-	public List<User> searchForUsers(FilterFunction<User> func) {
+	public synchronized List<User> searchForUsers(FilterFunction<User> func) {
 		DoublyLinkedList<User> matchingUsers = new DoublyLinkedList<>();
 		for (User user : users) {
 			if (func.filter(user)) {
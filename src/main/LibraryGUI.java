@@ -18,11 +18,21 @@ public class LibraryGUI extends JFrame {
 	private LibraryCatalog libraryCatalog;
 	private DefaultListModel<Book> bookListModel;
 	private JList<Book> bookJList;
+	/** Whether the book list was filled, after that it's kept up to date with the catalog events.*/
+	private boolean bookListDisplayed;
 	
 	public LibraryGUI() throws IOException {
 		libraryCatalog = new LibraryCatalog();
 		bookListModel = new DefaultListModel<>();
 		bookJList = new JList<>(bookListModel);
+		libraryCatalog.getEvents().addListener(event -> {
+			if (SwingUtilities.isEventDispatchThread()) {
+				updateBookList(event);
+			}
+			else {
+				SwingUtilities.invokeLater(() -> updateBookList(event));
+			}
+		});
 		
 		setTitle("LibraryGUI");
 		setSize(500, 500);
@@ -72,7 +82,9 @@ public class LibraryGUI extends JFrame {
 					titleField.setText("");
 					authorField.setText("");
 					genreField.setText("");
-					displayBookList();
+					if (!bookListDisplayed) {
+						displayBookList();
+					}
 				}
 			}
 		});
@@ -91,7 +103,6 @@ public class LibraryGUI extends JFrame {
 				Book selectedBook = bookJList.getSelectedValue();
 				if (selectedBook != null) {
 					libraryCatalog.removeBook(selectedBook.getId());
-					displayBookList();
 				}
 			}
 		});
@@ -131,6 +142,30 @@ public class LibraryGUI extends JFrame {
 		for (Book book : libraryCatalog.getBookCatalog()) {
 			bookListModel.addElement(book);
 		}
+		bookListDisplayed = true;
+	}
+	
+	/**
+	 * Applies a single change of the catalog to the displayed book list, so it doesn't have to be rebuilt
+	 * every time a book is added or removed. Must run on the event dispatch thread.
+	 * 
+	 * @param event Change made to the catalog.
+	 * 
+	*/
+	private void updateBookList(CatalogEvent event) {
+		if (!bookListDisplayed) {
+			return;
+		}
+		switch (event.getType()) {
+			case BOOK_ADDED:
+				bookListModel.addElement(event.getBook());
+				break;
+			case BOOK_REMOVED:
+				bookListModel.removeElement(event.getBook());
+				break;
+			default:
+				break; // checkouts and returns don't change how the books are displayed
+		}
 	}
 	
 	
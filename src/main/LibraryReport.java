@@ -0,0 +1,162 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import data_structures.ArrayList;
+import interfaces.List;
+
+
+/**
+ * Class that holds the data of a library report: the amount of books per genre, the books currently checked
+ * out and the users that owe fees. It knows how to render itself in the format of report/expected_report.txt,
+ * so every catalog that can gather the data (a single catalog, a sharded one) produces the same report. The
+ * text itself is written by {@link ReportWriter}, which catalogs also use to stream the report without holding
+ * its data in memory.
+ * 
+*/
+public class LibraryReport {
+
+	/** Genres listed in the summary of books, in the order they are printed.*/
+	public static final String[] GENRES = { "Adventure", "Fiction", "Classics", "Mystery", "Science Fiction" };
+	/** Tabs printed after each genre name so the amounts line up.*/
+	static final String[] GENRE_TABS = { "\t\t\t\t\t", "\t\t\t\t\t\t", "\t\t\t\t\t", "\t\t\t\t\t\t", "\t\t\t\t\t" };
+
+	/** Amount of books per genre, aligned with GENRES.*/
+	private final int[] genreCounts;
+	/** Books currently checked out, in catalog order.*/
+	private final List<Book> checkedOut;
+	/** Names of the users that owe fees, in user order.*/
+	private final ArrayList<String> owingUsers;
+	/** Fees owed by each user in owingUsers, in cents.*/
+	private final ArrayList<Long> owedFees;
+
+
+	/**
+	 * Constructs a report with the books of the catalog. Users that owe fees are added afterwards with
+	 * {@link #addUserFee(String, long)}.
+	 * 
+	 * @param genreCounts Amount of books per genre, aligned with {@link #GENRES}.
+	 * @param checkedOut Books currently checked out, in catalog order.
+	 * 
+	*/
+	public LibraryReport(int[] genreCounts, List<Book> checkedOut) {
+		this.genreCounts = genreCounts;
+		this.checkedOut = checkedOut;
+		this.owingUsers = new ArrayList<>();
+		this.owedFees = new ArrayList<>();
+	}
+
+
+	/**
+	 * Calculates the fees a user owes as shown in the report: the sum of the late fees of the books in their
+	 * checked out list that are still checked out. The fees are calculated up to the fixed day the library works
+	 * with, see {@link #userFeeCents(User, int)} for another day.
+	 * 
+	 * @param user User to calculate the fees for.
+	 * @return Fees owed by the user.
+	 * 
+	*/
+	public static double userFee(User user) {
+		return userFeeCents(user, Book.TODAY) / 100.0;
+	}
+	
+	/**
+	 * Calculates the fees a user owes as of a day in cents, see {@link #userFee(User)}.
+	 * 
+	 * @param user User to calculate the fees for.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return Fees owed by the user, in cents.
+	 * 
+	*/
+	public static long userFeeCents(User user, int asOfDay) {
+		long userFee = 0;
+		for (Book book : user.getCheckedOutList()) {
+			if (book.isCheckedOut()) {
+				userFee += Book.calculateFeeCents(book.getLastCheckoutDay(), asOfDay);
+			}
+		}
+		return userFee;
+	}
+
+	/**
+	 * Adds a user to the section of users that owe fees. Users are printed in the order they are added.
+	 * 
+	 * @param name Name of the user.
+	 * @param feeCents Fees owed by the user, in cents.
+	 * 
+	*/
+	public void addUserFee(String name, long feeCents) {
+		owingUsers.add(name);
+		owedFees.add(feeCents);
+	}
+
+
+	/**
+	 * Writes the report section by section.
+	 * 
+	 * @param writer Writer to write the report to.
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void writeTo(ReportWriter writer) throws IOException {
+		writer.writeSummary(genreCounts);
+		writer.beginCheckedOut();
+		for (Book book : checkedOut) {
+			writer.checkedOutBook(book);
+		}
+		writer.endCheckedOut();
+		writer.beginFees();
+		for (int i = 0; i < owingUsers.size(); i++) {
+			writer.userFee(owingUsers.get(i), owedFees.get(i));
+		}
+		writer.endFees();
+	}
+
+	/**
+	 * Renders the report.
+	 * 
+	 * @return The text of the report.
+	 * 
+	*/
+	public String render() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (ReportWriter writer = new ReportWriter(Channels.newChannel(output), null)) {
+			writeTo(writer);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e); // memory doesn't fail
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Prints the report to the console and writes it to a file. Errors writing the file are reported but don't
+	 * stop the program.
+	 * 
+	 * @param path Path of the file to write the report to.
+	 * 
+	*/
+	public void print(String path) {
+		ReportWriter writer;
+		try {
+			writer = ReportWriter.open(Paths.get(path), System.out);
+		}
+		catch (IOException e) {
+			System.out.println(render());
+			System.err.println(e.getMessage());
+			return;
+		}
+		try (writer) {
+			writeTo(writer);
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package main;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import data_structures.ArrayList;
+
+
+/**
+ * Class that keeps the data of the library report of a catalog up to date as the catalog changes, so writing
+ * the report takes time proportional to the report instead of to the catalog and its users. It listens to the
+ * events of the catalog: added and removed books change the genre counts, checkouts and returns change the set
+ * of checked out books and the books held by the users involved.
+ * 
+ * Fees aren't kept as amounts, they grow every day a book stays checked out. Each user that has checked out
+ * books in their list keeps the checkout days of those books instead, and the fees are added up as of the day
+ * the report is written. Only those users are visited then.
+ * 
+ * Books kept as objects get their position in catalog order when they are added. Rows of a columnar or off-heap
+ * store are positioned by their place in the store and nothing is kept for them, so the heap only grows with
+ * the checked out books and the books the users hold, like the report itself.
+ * 
+ * Like snapshots, changes made straight on the books or the lists of the catalog (instead of through its
+ * methods) aren't seen.
+ * 
+*/
+public class LiveReport implements CatalogListener {
+
+	private final LibraryCatalog catalog;
+
+	/** Amount of books of the catalog per genre.*/
+	private final ReportAggregator genres = new ReportAggregator();
+	/** Position in catalog order and genre of every book of the catalog kept as an object.*/
+	private final HashMap<Book, Entry> entries = new HashMap<>();
+	/** Position given to the next book added to the catalog.*/
+	private long nextPosition;
+	/** Books currently checked out by their position, so they are listed in catalog order.*/
+	private final TreeMap<Long, Book> checkedOut = new TreeMap<>();
+
+	/** Position of each user in the list of users of the catalog.*/
+	private final HashMap<User, Integer> userPositions = new HashMap<>();
+	/** Users that have each book in their checked out list.*/
+	private final HashMap<Book, ArrayList<User>> holders = new HashMap<>();
+	/** Users with checked out books in their list by position, with the checkout days of those books.*/
+	private final TreeMap<Integer, Holder> holding = new TreeMap<>();
+
+
+	/**
+	 * Builds the report data from the current state of a catalog. It must be registered as a listener of the
+	 * catalog right after, while holding its lock, to see every change made afterwards.
+	 * 
+	 * @param catalog Catalog to keep the report of.
+	 * 
+	*/
+	public LiveReport(LibraryCatalog catalog) {
+		this.catalog = catalog;
+		for (Book book : catalog.getBookCatalog()) {
+			addBook(book);
+		}
+		int position = 0;
+		for (User user : catalog.getUsers()) {
+			userPositions.put(user, position++);
+			for (Book book : user.getCheckedOutList()) {
+				ArrayList<User> bookHolders = holders.computeIfAbsent(book, key -> new ArrayList<>());
+				if (bookHolders.isEmpty() || bookHolders.get(bookHolders.size() - 1) != user) {
+					bookHolders.add(user);
+				}
+			}
+			update(user, null);
+		}
+	}
+
+
+	@Override
+	public void onEvent(CatalogEvent event) {
+		Book book = event.getBook();
+		Entry entry;
+		switch (event.getType()) {
+		case BOOK_ADDED:
+			addBook(book);
+			break;
+		case BOOK_REMOVED:
+			entry = book.getStoreIndex() >= 0 ? entryOf(book) : entries.remove(book);
+			if (entry != null) {
+				genres.uncountGenre(entry.genre);
+				checkedOut.remove(entry.position);
+			}
+			break;
+		case BOOK_CHECKED_OUT:
+			entry = entryOf(book);
+			if (entry != null) {
+				checkedOut.put(entry.position, book);
+			}
+			User user = event.getUserId() == CatalogEvent.NO_USER ? null : catalog.findUser(event.getUserId());
+			if (user != null) {
+				ArrayList<User> bookHolders = holders.computeIfAbsent(book, key -> new ArrayList<>());
+				if (!bookHolders.contains(user)) {
+					bookHolders.add(user);
+				}
+			}
+			updateHolders(book);
+			break;
+		case BOOK_RETURNED:
+			entry = entryOf(book);
+			if (entry != null) {
+				checkedOut.remove(entry.position);
+			}
+			updateHolders(book);
+			break;
+		case BOOK_RELEASED:
+			break; // the return already updated every user that had the book
+		}
+	}
+
+	private void addBook(Book book) {
+		Entry entry;
+		if (book.getStoreIndex() >= 0) {
+			entry = entryOf(book);
+		}
+		else {
+			if (entries.containsKey(book)) {
+				return;
+			}
+			entry = new Entry(nextPosition++, book.getGenre());
+			entries.put(book, entry);
+		}
+		genres.countGenre(entry.genre);
+		if (book.isCheckedOut()) {
+			checkedOut.put(entry.position, book);
+		}
+	}
+
+	/**
+	 * Returns the position and genre of a book, or {@code null} if it isn't in the catalog. Rows of a store are
+	 * positioned by their index in the store, the entry is created on every call.
+	 */
+	private Entry entryOf(Book book) {
+		int index = book.getStoreIndex();
+		return index >= 0 ? new Entry(index, book.getGenre()) : entries.get(book);
+	}
+
+	/**
+	 * Updates the users that have a book in their list, the book may have been checked out again or taken out of
+	 * their lists.
+	 */
+	private void updateHolders(Book book) {
+		ArrayList<User> bookHolders = holders.get(book);
+		if (bookHolders == null) {
+			return;
+		}
+		for (int i = bookHolders.size() - 1; i >= 0; i--) {
+			if (!update(bookHolders.get(i), book)) {
+				bookHolders.remove(i);
+			}
+		}
+		if (bookHolders.isEmpty()) {
+			holders.remove(book);
+		}
+	}
+
+	/**
+	 * Gathers again the checkout days of the checked out books in the list of a user.
+	 * 
+	 * @param user User to update.
+	 * @param book Book to look for in the list, or {@code null}.
+	 * @return Whether the book is in the list of the user.
+	 * 
+	*/
+	private boolean update(User user, Book book) {
+		Integer position = userPositions.get(user);
+		if (position == null) {
+			return false;
+		}
+		boolean found = false;
+		int[] days = new int[user.getCheckedOutList().size()];
+		int count = 0;
+		for (Book held : user.getCheckedOutList()) {
+			if (held.isCheckedOut()) {
+				days[count++] = held.getLastCheckoutDay();
+			}
+			found |= held.equals(book);
+		}
+		if (count == 0) {
+			holding.remove(position);
+		}
+		else {
+			holding.put(position, new Holder(user, count == days.length ? days : Arrays.copyOf(days, count)));
+		}
+		return found;
+	}
+
+
+	/**
+	 * Writes the report as of a day.
+	 * 
+	 * @param writer Writer to write the report to.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void writeTo(ReportWriter writer, int asOfDay) throws IOException {
+		writer.writeSummary(genres.genreCounts(LibraryReport.GENRES));
+		writer.beginCheckedOut();
+		for (Book book : checkedOut.values()) {
+			writer.checkedOutBook(book);
+		}
+		writer.endCheckedOut();
+		writer.beginFees();
+		for (Holder holder : holding.values()) {
+			long userFee = 0;
+			for (int day : holder.checkoutDays) {
+				userFee += Book.calculateFeeCents(day, asOfDay);
+			}
+			if (userFee > 0) {
+				writer.userFee(holder.user.getName(), userFee);
+			}
+		}
+		writer.endFees();
+	}
+
+
+	private static class Entry {
+		private final long position;
+		private final String genre;
+
+		private Entry(long position, String genre) {
+			this.position = position;
+			this.genre = genre;
+		}
+	}
+
+	private static class Holder {
+		private final User user;
+		/** Checkout days of the checked out books in the list of the user, in list order.*/
+		private final int[] checkoutDays;
+
+		private Holder(User user, int[] checkoutDays) {
+			this.user = user;
+			this.checkoutDays = checkoutDays;
+		}
+	}
+}
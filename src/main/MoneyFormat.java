@@ -0,0 +1,68 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Formats amounts of money kept as cents, the way {@code String.format("%.2f", cents / 100.0)} does, straight
+ * into a byte array. Nothing is allocated, so the report can format a fee per user without creating any
+ * string or formatter.
+ * 
+*/
+public final class MoneyFormat {
+
+	/** Most bytes an amount can take: a sign, 17 digits of units, the point and 2 digits of cents.*/
+	public static final int MAX_LENGTH = 21;
+
+	private MoneyFormat() {
+	}
+
+
+	/**
+	 * Writes an amount as ASCII digits with two decimals, like 1234.50 or -0.75.
+	 * 
+	 * @param cents Amount in cents.
+	 * @param dest Array to write to, with at least {@link #MAX_LENGTH} bytes from {@code offset}.
+	 * @param offset Position of the first byte to write.
+	 * @return Position after the last byte written.
+	 * 
+	*/
+	public static int format(long cents, byte[] dest, int offset) {
+		int position = offset;
+		if (cents < 0) {
+			dest[position++] = '-';
+		}
+		// works with the negative value, so Long.MIN_VALUE doesn't overflow
+		long negative = cents < 0 ? cents : -cents;
+		long units = -(negative / 100);
+		int fraction = (int) -(negative % 100);
+
+		int digits = 1;
+		for (long rest = units / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int end = position + digits;
+		for (int i = end - 1; i >= position; i--) {
+			dest[i] = (byte) ('0' + units % 10);
+			units /= 10;
+		}
+		position = end;
+		dest[position++] = '.';
+		dest[position++] = (byte) ('0' + fraction / 10);
+		dest[position++] = (byte) ('0' + fraction % 10);
+		return position;
+	}
+
+	/**
+	 * Formats an amount as a string, for callers that need one.
+	 * 
+	 * @param cents Amount in cents.
+	 * @return The amount with two decimals.
+	 * 
+	*/
+	public static String format(long cents) {
+		byte[] bytes = new byte[MAX_LENGTH];
+		int length = format(cents, bytes, 0);
+		return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+	}
+}
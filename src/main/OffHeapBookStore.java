@@ -0,0 +1,660 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import data_structures.DoublyLinkedList;
+import interfaces.FilterFunction;
+import interfaces.List;
+
+
+/**
+ * Class that stores the books of a catalog outside of the Java heap. Every book is a fixed-width record in
+ * direct ByteBuffers, titles are UTF-8 bytes in a string arena (also direct buffers) and authors and genres are
+ * codes of the dictionaries of the store, see StringDictionary. The index of the books by ID is an open addressing
+ * table in a direct buffer too, so the store keeps the same handful of heap objects no matter how many books it
+ * holds, and the garbage collector has nothing to trace or copy when the catalog grows.
+ * 
+ * Record layout (32 bytes): ID, arena page of the title, offset of the title in the page, length of the title
+ * in bytes, author code, genre code, last checkout date as an epoch day ({@link Book#NO_DATE} if there's none) and
+ * flags (checked out, removed). Records and arena are split in pages so growing never copies what's stored.
+ * 
+ * The books are handed out as {@link Row} views created on demand, a row has no data of its own and reads and
+ * writes the record. Two rows of the same record are equal, so they should be compared with equals instead of
+ * ==. Changing the title of a book leaves its old bytes unused in the arena. The store isn't synchronized, the
+ * catalog that owns it guards it with its lock.
+ * 
+*/
+public class OffHeapBookStore {
+
+	private static final int RECORD_SIZE = 32;
+	private static final int ID = 0;
+	private static final int TITLE_PAGE = 4;
+	private static final int TITLE_OFFSET = 8;
+	private static final int TITLE_LENGTH = 12;
+	private static final int AUTHOR = 16;
+	private static final int GENRE = 20;
+	private static final int CHECKOUT_DAY = 24;
+	private static final int FLAGS = 28;
+
+	private static final int CHECKED_OUT = 1;
+	private static final int REMOVED = 2;
+
+	/** Records per page, a page is 1MB.*/
+	private static final int RECORDS_PER_PAGE = 1 << 15;
+	/** Size of an arena page, longer titles get a page of their own.*/
+	private static final int ARENA_PAGE_SIZE = 1 << 20;
+
+	/** Size of an entry of the ID index: ID and record + 1 (0 means the entry is empty).*/
+	private static final int ENTRY_SIZE = 8;
+
+	private ByteBuffer[] recordPages = new ByteBuffer[4];
+	private ByteBuffer[] arenaPages = new ByteBuffer[4];
+	private int arenaPageCount;
+	/** Free position in the last arena page.*/
+	private int arenaPosition = ARENA_PAGE_SIZE;
+	private ByteBuffer index;
+	/** Number of entries of the index, a power of 2.*/
+	private int indexCapacity;
+	private int indexed;
+
+	/** Number of records, including removed ones.*/
+	private int size;
+	private int removedCount;
+
+	private final StringDictionary authors = new StringDictionary();
+	private final StringDictionary genres = new StringDictionary();
+
+
+	/**
+	 * Constructs an empty store.
+	 * 
+	 * @param capacity Number of books the index holds before growing.
+	 * 
+	*/
+	public OffHeapBookStore(int capacity) {
+		indexCapacity = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+		index = allocate((long) indexCapacity * ENTRY_SIZE);
+	}
+
+	private static ByteBuffer allocate(long bytes) {
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Off-heap buffer of " + bytes + " bytes is too big");
+		}
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+	}
+
+
+	private ByteBuffer page(int record) {
+		return recordPages[record / RECORDS_PER_PAGE];
+	}
+
+	private static int offset(int record, int field) {
+		return (record % RECORDS_PER_PAGE) * RECORD_SIZE + field;
+	}
+
+	private int getInt(int record, int field) {
+		return page(record).getInt(offset(record, field));
+	}
+
+	private void putInt(int record, int field, int value) {
+		page(record).putInt(offset(record, field), value);
+	}
+
+	private boolean hasFlag(int record, int flag) {
+		return (getInt(record, FLAGS) & flag) != 0;
+	}
+
+	private void setFlag(int record, int flag, boolean value) {
+		int flags = getInt(record, FLAGS);
+		putInt(record, FLAGS, value ? flags | flag : flags & ~flag);
+	}
+
+
+	/**
+	 * Adds a book at the end of the store.
+	 * 
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(int id, String title, String author, String genre, LocalDate lastCheckoutDate, boolean isCheckedOut) {
+		return add(id, title, author, genre, Book.toEpochDay(lastCheckoutDate), isCheckedOut);
+	}
+
+	/**
+	 * Adds a book at the end of the store with the last checkout date as an epoch day.
+	 * 
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(int id, String title, String author, String genre, int lastCheckoutDay, boolean isCheckedOut) {
+		int pageIndex = size / RECORDS_PER_PAGE;
+		if (pageIndex == recordPages.length) {
+			recordPages = Arrays.copyOf(recordPages, recordPages.length * 2);
+		}
+		if (recordPages[pageIndex] == null) {
+			recordPages[pageIndex] = allocate((long) RECORDS_PER_PAGE * RECORD_SIZE);
+		}
+		int record = size++;
+		putInt(record, ID, id);
+		writeTitle(record, title);
+		putInt(record, AUTHOR, authors.encode(author));
+		putInt(record, GENRE, genres.encode(genre));
+		putInt(record, CHECKOUT_DAY, lastCheckoutDay);
+		putInt(record, FLAGS, isCheckedOut ? CHECKED_OUT : 0);
+		if (lookup(id) < 0) {
+			insert(id, record);
+		}
+		return new Row(record);
+	}
+
+	/**
+	 * Adds a copy of a book at the end of the store.
+	 * 
+	 * @param book Book to copy.
+	 * @return The row of the new book.
+	 * 
+	*/
+	public Row add(Book book) {
+		return add(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getLastCheckoutDay(), book.isCheckedOut());
+	}
+
+	/**
+	 * Removes a book from the store. Scans and lookups skip it from now on, if another book has the same ID it's
+	 * found by the ID instead. Rows of the book keep working for whoever still holds them.
+	 * 
+	 * @param book Row of the book to remove.
+	 * @return {@code true} if the book was a row of this store that wasn't removed yet.
+	 * 
+	*/
+	public boolean remove(Book book) {
+		if (!contains(book)) {
+			return false;
+		}
+		int record = ((Row) book).record;
+		setFlag(record, REMOVED, true);
+		removedCount++;
+		int id = getInt(record, ID);
+		if (lookup(id) == record) {
+			delete(id);
+			for (int other = 0; other < size; other++) {
+				if (getInt(other, ID) == id && !hasFlag(other, REMOVED)) {
+					insert(id, other);
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns whether a book is a row of this store that wasn't removed. */
+	public boolean contains(Book book) {
+		return book instanceof Row && ((Row) book).store() == this && !hasFlag(((Row) book).record, REMOVED);
+	}
+
+	/** Returns the number of books in the store. */
+	public int size() {
+		return size - removedCount;
+	}
+
+	/**
+	 * Finds a book by its ID.
+	 * 
+	 * @param id ID of the book.
+	 * @return A row of the first book added with the ID that wasn't removed, or {@code null} if there's none.
+	 * 
+	*/
+	public Row find(int id) {
+		int record = lookup(id);
+		return record < 0 ? null : new Row(record);
+	}
+
+	/** Returns the biggest ID in the store, 0 if it's empty. */
+	public int maxId() {
+		int max = 0;
+		for (int record = 0; record < size; record++) {
+			if (!hasFlag(record, REMOVED)) {
+				max = Math.max(max, getInt(record, ID));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns rows of every book in store order. The list is built on every call, adding or removing books in it
+	 * doesn't change the store.
+	 * 
+	 * @return New list with the rows of the books.
+	 * 
+	*/
+	public DoublyLinkedList<Book> books() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int record = 0; record < size; record++) {
+			if (!hasFlag(record, REMOVED)) {
+				books.add(new Row(record));
+			}
+		}
+		return books;
+	}
+
+
+	/*
+	 * Titles
+	 */
+
+	private void writeTitle(int record, String title) {
+		byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > ARENA_PAGE_SIZE - arenaPosition) {
+			if (arenaPageCount == arenaPages.length) {
+				arenaPages = Arrays.copyOf(arenaPages, arenaPages.length * 2);
+			}
+			arenaPages[arenaPageCount++] = allocate(Math.max(bytes.length, ARENA_PAGE_SIZE));
+			arenaPosition = 0;
+		}
+		ByteBuffer page = arenaPages[arenaPageCount - 1];
+		page.put(arenaPosition, bytes);
+		putInt(record, TITLE_PAGE, arenaPageCount - 1);
+		putInt(record, TITLE_OFFSET, arenaPosition);
+		putInt(record, TITLE_LENGTH, bytes.length);
+		// a page sized for a long title is full right away
+		arenaPosition = bytes.length > ARENA_PAGE_SIZE ? ARENA_PAGE_SIZE : arenaPosition + bytes.length;
+	}
+
+	private String readTitle(int record) {
+		byte[] bytes = new byte[getInt(record, TITLE_LENGTH)];
+		arenaPages[getInt(record, TITLE_PAGE)].get(getInt(record, TITLE_OFFSET), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares the title of a record with a title ignoring case. ASCII titles are compared byte by byte in the
+	 * arena, other titles are decoded first.
+	 */
+	private boolean titleEqualsIgnoreCase(int record, String title, boolean asciiTitle) {
+		int length = getInt(record, TITLE_LENGTH);
+		if (asciiTitle && length == title.length()) {
+			ByteBuffer page = arenaPages[getInt(record, TITLE_PAGE)];
+			int start = getInt(record, TITLE_OFFSET);
+			for (int i = 0; i < length; i++) {
+				int b = page.get(start + i);
+				if (b < 0) {
+					return readTitle(record).equalsIgnoreCase(title);
+				}
+				if (toLowerAscii(b) != toLowerAscii(title.charAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (asciiTitle) {
+			// an ASCII title only matches titles with the same number of bytes, unless the record isn't ASCII
+			return length > title.length() && readTitle(record).equalsIgnoreCase(title);
+		}
+		return readTitle(record).equalsIgnoreCase(title);
+	}
+
+	private static int toLowerAscii(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+
+	private static boolean isAscii(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/*
+	 * ID index, linear probing with backward shift deletion
+	 */
+
+	private int slot(int id) {
+		return (id * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(indexCapacity));
+	}
+
+	private int lookup(int id) {
+		int mask = indexCapacity - 1;
+		for (int slot = slot(id);; slot = (slot + 1) & mask) {
+			int entry = slot * ENTRY_SIZE;
+			int record = index.getInt(entry + 4) - 1;
+			if (record < 0) {
+				return -1;
+			}
+			if (index.getInt(entry) == id) {
+				return record;
+			}
+		}
+	}
+
+	private void insert(int id, int record) {
+		if ((indexed + 1) * 2 > indexCapacity) {
+			resize();
+		}
+		int mask = indexCapacity - 1;
+		int slot = slot(id);
+		while (index.getInt(slot * ENTRY_SIZE + 4) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index.putInt(slot * ENTRY_SIZE, id);
+		index.putInt(slot * ENTRY_SIZE + 4, record + 1);
+		indexed++;
+	}
+
+	private void delete(int id) {
+		int mask = indexCapacity - 1;
+		int slot = slot(id);
+		while (index.getInt(slot * ENTRY_SIZE) != id || index.getInt(slot * ENTRY_SIZE + 4) == 0) {
+			slot = (slot + 1) & mask;
+		}
+		// moves back the entries after the slot that would no longer be reachable from their home slot
+		int hole = slot;
+		for (int next = (hole + 1) & mask; index.getInt(next * ENTRY_SIZE + 4) != 0; next = (next + 1) & mask) {
+			int home = slot(index.getInt(next * ENTRY_SIZE));
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				index.putInt(hole * ENTRY_SIZE, index.getInt(next * ENTRY_SIZE));
+				index.putInt(hole * ENTRY_SIZE + 4, index.getInt(next * ENTRY_SIZE + 4));
+				hole = next;
+			}
+		}
+		index.putInt(hole * ENTRY_SIZE, 0);
+		index.putInt(hole * ENTRY_SIZE + 4, 0);
+		indexed--;
+	}
+
+	private void resize() {
+		ByteBuffer old = index;
+		int oldCapacity = indexCapacity;
+		indexCapacity *= 2;
+		index = allocate((long) indexCapacity * ENTRY_SIZE);
+		indexed = 0;
+		for (int slot = 0; slot < oldCapacity; slot++) {
+			int record = old.getInt(slot * ENTRY_SIZE + 4) - 1;
+			if (record >= 0) {
+				insert(old.getInt(slot * ENTRY_SIZE), record);
+			}
+		}
+	}
+
+
+	/*
+	 * Scans
+	 */
+
+	/**
+	 * Counts the books of a genre ignoring case. The genre is matched against the dictionary once, the scan
+	 * only compares codes.
+	 * 
+	 * @param genre The genre to be counted
+	 * @return The number of books with the genre
+	 * 
+	*/
+	public int genreCount(String genre) {
+		boolean[] matches = genres.matchesIgnoreCase(genre);
+		int count = 0;
+		for (int record = 0; record < size; record++) {
+			if (genres.matches(matches, getInt(record, GENRE), genre) && !hasFlag(record, REMOVED)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the books of several genres ignoring case in a single pass over the records.
+	 * 
+	 * @param genreNames Genres to count.
+	 * @return Number of books of each genre, aligned with {@code genreNames}.
+	 * 
+	*/
+	public int[] genreCounts(String[] genreNames) {
+		int[] perCode = new int[genres.size()];
+		for (int record = 0; record < size; record++) {
+			int code = getInt(record, GENRE);
+			if (!hasFlag(record, REMOVED) && code != StringDictionary.NULL_CODE) {
+				perCode[code]++;
+			}
+		}
+		int[] counts = new int[genreNames.length];
+		for (int i = 0; i < genreNames.length; i++) {
+			boolean[] matches = genres.matchesIgnoreCase(genreNames[i]);
+			for (int code = 0; code < perCode.length; code++) {
+				if (genres.matches(matches, code, genreNames[i])) {
+					counts[i] += perCode[code];
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the books with a title ignoring case.
+	 * 
+	 * @param title Title of the book to count instances of.
+	 * @return The number of books with matching title.
+	 * 
+	*/
+	public int titleCount(String title) {
+		boolean ascii = isAscii(title);
+		int count = 0;
+		for (int record = 0; record < size; record++) {
+			if (!hasFlag(record, REMOVED) && titleEqualsIgnoreCase(record, title, ascii)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the checked out books reading only the flags of the records.
+	 * 
+	 * @return Rows of the checked out books in store order.
+	 * 
+	*/
+	public List<Book> checkedOutBooks() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int record = 0; record < size; record++) {
+			if ((getInt(record, FLAGS) & (CHECKED_OUT | REMOVED)) == CHECKED_OUT) {
+				books.add(new Row(record));
+			}
+		}
+		return books;
+	}
+
+	/**
+	 * Goes through the checked out books without collecting them. The store must not change while iterating.
+	 * 
+	 * @return Iterator over rows of the checked out books in store order.
+	 * 
+	*/
+	public Iterator<Book> checkedOutIterator() {
+		return new Iterator<Book>() {
+			private int record = nextCheckedOut(0);
+
+			@Override
+			public boolean hasNext() {
+				return record < size;
+			}
+
+			@Override
+			public Book next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Row book = new Row(record);
+				record = nextCheckedOut(record + 1);
+				return book;
+			}
+		};
+	}
+
+	private int nextCheckedOut(int record) {
+		while (record < size && (getInt(record, FLAGS) & (CHECKED_OUT | REMOVED)) != CHECKED_OUT) {
+			record++;
+		}
+		return record;
+	}
+
+	/**
+	 * Adds every book to a report in a single pass over the records. The checked out books are added as copies,
+	 * so the report doesn't change with the store.
+	 * 
+	 * @param aggregator Report to add the books to.
+	 * 
+	*/
+	public void aggregate(ReportAggregator aggregator) {
+		aggregate(aggregator, 0, size);
+	}
+
+	/**
+	 * Adds the books of a range of records to a report, see {@link #aggregate(ReportAggregator)}. Ranges can be
+	 * aggregated from several threads at once as long as the store doesn't change meanwhile.
+	 * 
+	 * @param aggregator Report to add the books to.
+	 * @param from First record of the range.
+	 * @param to Record after the last record of the range, at most {@link #rowCount()}.
+	 * 
+	*/
+	public void aggregate(ReportAggregator aggregator, int from, int to) {
+		for (int record = from; record < to; record++) {
+			int flags = getInt(record, FLAGS);
+			if ((flags & REMOVED) == 0) {
+				aggregator.countGenre(genres, getInt(record, GENRE));
+				if ((flags & CHECKED_OUT) != 0) {
+					aggregator.addCheckedOut(new Book(new Row(record)));
+				}
+			}
+		}
+	}
+
+	/** Returns the number of records, including the records of removed books. */
+	public int rowCount() {
+		return size;
+	}
+
+	/**
+	 * Searches for books going through the records in store order.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of books that follow the condition given by the lambda function.
+	 * 
+	*/
+	public List<Book> search(FilterFunction<Book> func) {
+		DoublyLinkedList<Book> matchingBooks = new DoublyLinkedList<>();
+		for (int record = 0; record < size; record++) {
+			if (!hasFlag(record, REMOVED)) {
+				Row book = new Row(record);
+				if (func.filter(book)) {
+					matchingBooks.add(book);
+				}
+			}
+		}
+		return matchingBooks;
+	}
+
+
+	/**
+	 * View of a book of the store. Every getter and setter goes to the record, rows of the same record are equal.
+	 */
+	public class Row extends Book {
+
+		private final int record;
+
+		private Row(int record) {
+			super(0, null, null, null, Book.NO_DATE, false);
+			this.record = record;
+		}
+
+		private OffHeapBookStore store() {
+			return OffHeapBookStore.this;
+		}
+
+		@Override
+		public int getId() {
+			return getInt(record, ID);
+		}
+
+		@Override
+		public void setId(int id) {
+			putInt(record, ID, id);
+			markDirty();
+		}
+
+		@Override
+		public String getTitle() {
+			return readTitle(record);
+		}
+
+		@Override
+		public void setTitle(String title) {
+			writeTitle(record, title);
+			markDirty();
+		}
+
+		@Override
+		public String getAuthor() {
+			return authors.decode(getInt(record, AUTHOR));
+		}
+
+		@Override
+		public void setAuthor(String author) {
+			putInt(record, AUTHOR, authors.encode(author));
+			markDirty();
+		}
+
+		@Override
+		public String getGenre() {
+			return genres.decode(getInt(record, GENRE));
+		}
+
+		@Override
+		int getStoreIndex() {
+			return record;
+		}
+
+		@Override
+		public void setGenre(String genre) {
+			putInt(record, GENRE, genres.encode(genre));
+			markDirty();
+		}
+
+		@Override
+		public int getLastCheckoutDay() {
+			return getInt(record, CHECKOUT_DAY);
+		}
+
+		@Override
+		public void setLastCheckoutDay(int lastCheckoutDay) {
+			putInt(record, CHECKOUT_DAY, lastCheckoutDay);
+			markDirty();
+		}
+
+		@Override
+		public boolean isCheckedOut() {
+			return hasFlag(record, CHECKED_OUT);
+		}
+
+		@Override
+		public void setCheckedOut(boolean isCheckedOut) {
+			setFlag(record, CHECKED_OUT, isCheckedOut);
+			markDirty();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Row && ((Row) other).store() == store() && ((Row) other).record == record;
+		}
+
+		@Override
+		public int hashCode() {
+			return record;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package main;
+
+import java.util.Iterator;
+
+
+/**
+ * Class that counts the checked out books of a catalog by the day they were checked out, so the total late fees
+ * owed for them as of any day are calculated without going through the books. The fee of a book grows linearly
+ * with the days since its checkout, so the total as of a day only needs the amount of books checked out up to
+ * the day it becomes late and the sum of their checkout days. Both are kept as prefix sums in Fenwick trees
+ * indexed by day, which makes adding a book, removing it and getting the total take O(log d) for a span of d
+ * days.
+ * 
+ * Registered as a listener of a catalog, books are added when they are checked out and taken out when they are
+ * returned, or removed while checked out.
+ * 
+*/
+public class OverdueHistogram implements CatalogListener {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** Day of the first slot.*/
+	private int base;
+	/** Books checked out on each day, from base.*/
+	private long[] counts;
+	/** Fenwick tree of counts.*/
+	private long[] countTree;
+	/** Fenwick tree of the counts times the day, as days since base.*/
+	private long[] dayTree;
+	/** Books counted.*/
+	private long size;
+
+
+	/**
+	 * Constructs an empty histogram.
+	 */
+	public OverdueHistogram() {
+		counts = new long[0];
+		countTree = new long[1];
+		dayTree = new long[1];
+	}
+
+	/**
+	 * Constructs a histogram with the books that are checked out.
+	 * 
+	 * @param books Books to go through, those that aren't checked out are skipped.
+	 * 
+	*/
+	public OverdueHistogram(Iterator<Book> books) {
+		this();
+		while (books.hasNext()) {
+			Book book = books.next();
+			if (book.isCheckedOut()) {
+				add(book.getLastCheckoutDay());
+			}
+		}
+	}
+
+
+	/**
+	 * Counts a book checked out on a day.
+	 * 
+	 * @param day Epoch day of the checkout, books without one are ignored.
+	 * 
+	*/
+	public synchronized void add(int day) {
+		if (day == Book.NO_DATE) {
+			return;
+		}
+		if (counts.length == 0 || day < base || day - base >= counts.length) {
+			grow(day);
+		}
+		update(day - base, 1);
+	}
+
+	/**
+	 * Takes back a book counted before.
+	 * 
+	 * @param day Epoch day the book was counted with.
+	 * 
+	*/
+	public synchronized void remove(int day) {
+		if (day == Book.NO_DATE || counts.length == 0 || day < base || day - base >= counts.length
+				|| counts[day - base] == 0) {
+			return;
+		}
+		update(day - base, -1);
+	}
+
+	/** Returns the amount of books counted. */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Counts the books that are late as of a day.
+	 * 
+	 * @param asOfDay Epoch day to count up to.
+	 * @return Amount of books that owe fees as of the day.
+	 * 
+	*/
+	public synchronized long overdueCount(int asOfDay) {
+		int last = lastLateSlot(asOfDay);
+		return last < 0 ? 0 : prefix(countTree, last);
+	}
+
+	/**
+	 * Adds up the late fees of the books counted as of a day, the same as adding up
+	 * {@link Book#calculateFeeCents(int, int)} for each book.
+	 * 
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return Total fees owed, in cents.
+	 * 
+	*/
+	public synchronized long totalFeeCents(int asOfDay) {
+		int last = lastLateSlot(asOfDay);
+		if (last < 0) {
+			return 0;
+		}
+		// a book of slot s owes BASE + DAILY * (asOfDay - LATE_AFTER - base - s)
+		long books = prefix(countTree, last);
+		long slots = prefix(dayTree, last);
+		long lateDays = (long) asOfDay - Book.LATE_AFTER_DAYS - base;
+		return books * (Book.BASE_FEE_CENTS + Book.DAILY_FEE_CENTS * lateDays) - Book.DAILY_FEE_CENTS * slots;
+	}
+
+	@Override
+	public void onEvent(CatalogEvent event) {
+		switch (event.getType()) {
+		case BOOK_CHECKED_OUT:
+			add(event.getBook().getLastCheckoutDay());
+			break;
+		case BOOK_RETURNED:
+			remove(event.getBook().getLastCheckoutDay());
+			break;
+		case BOOK_REMOVED:
+			if (event.getBook().isCheckedOut()) {
+				remove(event.getBook().getLastCheckoutDay());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+
+	/** Returns the last slot of the books that are late as of a day, -1 if there's none. */
+	private int lastLateSlot(int asOfDay) {
+		long lastDay = (long) asOfDay - Book.LATE_AFTER_DAYS;
+		if (counts.length == 0 || lastDay < base) {
+			return -1;
+		}
+		return (int) Math.min(lastDay - base, counts.length - 1);
+	}
+
+	private void update(int slot, int delta) {
+		counts[slot] += delta;
+		size += delta;
+		for (int i = slot + 1; i < countTree.length; i += i & -i) {
+			countTree[i] += delta;
+			dayTree[i] += (long) delta * slot;
+		}
+	}
+
+	private static long prefix(long[] tree, int slot) {
+		long sum = 0;
+		for (int i = slot + 1; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Makes room for a day, doubling the span of days until it fits, and builds the trees again.
+	 */
+	private void grow(int day) {
+		long first = counts.length == 0 ? day : Math.min(base, day);
+		long end = counts.length == 0 ? (long) day + 1 : Math.max((long) base + counts.length, (long) day + 1);
+		long capacity = Math.max(INITIAL_CAPACITY, counts.length);
+		while (capacity < end - first) {
+			capacity *= 2;
+		}
+		if (capacity > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Checkout days span too many days: " + first + " to " + day);
+		}
+		// the room left goes to the side the span grew to, a first day gets room on both sides
+		long newBase;
+		if (counts.length == 0) {
+			newBase = day - capacity / 2;
+		}
+		else if (day < base) {
+			newBase = end - capacity;
+		}
+		else {
+			newBase = base;
+		}
+		newBase = Math.max(Integer.MIN_VALUE + 1L, Math.min(newBase, Integer.MAX_VALUE - capacity));
+		long[] newCounts = new long[(int) capacity];
+		for (int slot = 0; slot < counts.length; slot++) {
+			newCounts[(int) (base - newBase) + slot] = counts[slot];
+		}
+		base = (int) newBase;
+		counts = newCounts;
+		countTree = new long[counts.length + 1];
+		dayTree = new long[counts.length + 1];
+		for (int slot = 0; slot < counts.length; slot++) {
+			int i = slot + 1;
+			countTree[i] += counts[slot];
+			dayTree[i] += counts[slot] * slot;
+			int parent = i + (i & -i);
+			if (parent < countTree.length) {
+				countTree[parent] += countTree[i];
+				dayTree[parent] += dayTree[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import data_structures.ArrayList;
+import data_structures.DoublyLinkedList;
+
+
+/**
+ * Class that loads a catalog file using several threads. The file is memory mapped and split into chunks that
+ * start and end at record boundaries, the chunks are parsed at the same time on a fork-join pool and the books
+ * are merged back in the order of the file.
+ * 
+ * A line break inside a quoted field doesn't end a record, so the boundaries are found by following the quotes
+ * from the start of the file the way {@link CsvReader} does. That's a single pass over the bytes without
+ * parsing anything, much cheaper than the parsing done in parallel afterwards.
+ * 
+*/
+public class ParallelCatalogLoader {
+
+	/** Largest chunk mapped at once, a mapping can't be bigger than 2GB.*/
+	private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+	/** Chunks per thread, more chunks than threads balances the work when some chunks are slower.*/
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** Bytes read at once while looking for the record boundaries.*/
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	/** States of the scan for record boundaries, see {@link #chunkBoundaries(FileChannel, int)}.*/
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	/** A quote was found in a quoted field, it's escaped if another quote follows and closes the field otherwise.*/
+	private static final int QUOTE = 3;
+
+	private ParallelCatalogLoader() {
+	}
+
+
+	/**
+	 * Loads the books of a catalog file. The first line is the header and is skipped, lines that aren't valid
+	 * books are skipped like in {@link LibraryCatalog#parseBook(CsvReader, StringDictionary, StringDictionary)}.
+	 * The chunks share the dictionaries of the load, so equal authors and genres are stored once.
+	 * 
+	 * @param file Catalog file to load.
+	 * @param parallelism Number of threads parsing the file.
+	 * @return Books of the file in file order.
+	 * @throws IOException if an error occurs while reading the file.
+	 * 
+	*/
+	public static DoublyLinkedList<Book> loadBooks(Path file, int parallelism) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long[] boundaries = chunkBoundaries(channel, parallelism);
+			int chunks = boundaries.length - 1;
+
+			StringDictionary authors = new StringDictionary();
+			StringDictionary genres = new StringDictionary();
+			ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+			try {
+				ArrayList<Future<ArrayList<Book>>> parsed = new ArrayList<>(Math.max(chunks, 1));
+				for (int i = 0; i < chunks; i++) {
+					long start = boundaries[i];
+					long end = boundaries[i + 1];
+					boolean header = i == 0;
+					parsed.add(pool.submit(() -> parseChunk(channel, start, end, header, authors, genres)));
+				}
+
+				// merge in file order
+				DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+				for (Future<ArrayList<Book>> chunk : parsed) {
+					for (Book book : chunk.get()) {
+						books.add(book);
+					}
+				}
+				return books;
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) e.getCause()).getCause();
+				}
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading " + file, e);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+
+	/**
+	 * Splits the file into chunks of about the same size that start right after the line break ending a record.
+	 * The quotes are followed from the start of the file like {@link CsvReader} does: a quote only opens a
+	 * quoted field at the start of a field, two quotes in a quoted field are an escaped quote, and line breaks
+	 * inside a quoted field don't end the record.
+	 * 
+	 * @param channel Channel of the file.
+	 * @param parallelism Number of threads that will parse the chunks.
+	 * @return Offsets where each chunk starts followed by the size of the file.
+	 * @throws IOException if an error occurs while reading the file.
+	 * 
+	*/
+	private static long[] chunkBoundaries(FileChannel channel, int parallelism) throws IOException {
+		long size = channel.size();
+		long chunks = Math.max((long) Math.max(parallelism, 1) * CHUNKS_PER_THREAD, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+		long chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, (size + chunks - 1) / chunks));
+
+		ArrayList<Long> boundaries = new ArrayList<>();
+		boundaries.add(0L);
+		ByteBuffer window = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		byte[] bytes = window.array();
+		int state = FIELD_START;
+		long next = chunkSize;
+		long position = 0;
+		while (position < size) {
+			window.clear();
+			int read = channel.read(window, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				byte b = bytes[i];
+				switch (state) {
+				case QUOTED:
+					if (b == '"') {
+						state = QUOTE;
+					}
+					continue;
+				case QUOTE:
+					if (b == '"') {
+						state = QUOTED;
+						continue;
+					}
+					break;
+				case FIELD_START:
+					if (b == '"') {
+						state = QUOTED;
+						continue;
+					}
+					break;
+				default:
+					break;
+				}
+				// outside of quotes, only separators matter
+				if (b == ',') {
+					state = FIELD_START;
+				}
+				else if (b == '\n') {
+					state = FIELD_START;
+					long recordEnd = position + i + 1;
+					if (recordEnd >= next && recordEnd < size) {
+						boundaries.add(recordEnd);
+						next = recordEnd + chunkSize;
+					}
+				}
+				else {
+					state = UNQUOTED;
+				}
+			}
+			position += read;
+		}
+		boundaries.add(size);
+
+		long[] result = new long[boundaries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Maps a chunk of the file and parses its books.
+	 * 
+	 * @param channel Channel of the file.
+	 * @param start Offset where the chunk starts.
+	 * @param end Offset where the chunk ends (exclusive).
+	 * @param header Whether the chunk starts with the header line.
+	 * @param authors Dictionary of the authors of the load.
+	 * @param genres Dictionary of the genres of the load.
+	 * @return Books of the chunk in file order.
+	 * 
+	*/
+	private static ArrayList<Book> parseChunk(FileChannel channel, long start, long end, boolean header,
+			StringDictionary authors, StringDictionary genres) {
+		try {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			// rough guess of 64 bytes per line so the list doesn't resize too often
+			ArrayList<Book> books = new ArrayList<>((int) Math.max(16, (end - start) / 64));
+			CsvReader reader = new CsvReader(bytes);
+			if (header) {
+				reader.nextRecord();
+			}
+			while (reader.nextRecord()) {
+				Book book = LibraryCatalog.parseBook(reader, authors, genres);
+				if (book != null) {
+					books.add(book);
+				}
+			}
+			return books;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+
+	/**
+	 * Times loading a catalog file with one thread and with several. Usage:
+	 * {@code ParallelCatalogLoader [file] [threads]}, by default data/catalog.csv and every available core.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : LibraryCatalog.CATALOG_FILE);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		for (int parallelism : new int[] { 1, threads }) {
+			long start = System.nanoTime();
+			int size = loadBooks(file, parallelism).size();
+			long elapsed = System.nanoTime() - start;
+			System.out.println(parallelism + " thread(s):\t" + size + " books in " + elapsed / 1_000_000 + " ms");
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package main;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Array that can be frozen in O(1). The elements are kept in a tree of 32-slot nodes, and {@link #freeze()}
+ * returns a read-only vector that shares the tree. Nodes shared with a frozen vector are copied before they are
+ * changed, so setting or adding an element copies at most one path of the tree (O(log32 n)) the first time it
+ * touches the path after a freeze, and changes it in place afterwards.
+ * 
+ * @param <E> Type of the elements.
+ * 
+*/
+final class PersistentVector<E> implements Iterable<E> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private Node root;
+	/** Bits to shift an index by to get its slot in the root.*/
+	private int shift;
+	private int size;
+	/** Nodes created since the last freeze, changed in place. {@code null} for frozen vectors.*/
+	private Object owner;
+
+
+	/**
+	 * Constructs an empty vector that can be changed.
+	 */
+	PersistentVector() {
+		owner = new Object();
+		root = new Node(owner);
+	}
+
+	private PersistentVector(Node root, int shift, int size) {
+		this.root = root;
+		this.shift = shift;
+		this.size = size;
+	}
+
+
+	/** Returns the amount of elements. */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the element at a position.
+	 * 
+	 * @param index Position of the element.
+	 * @return The element.
+	 * @throws IndexOutOfBoundsException if the index is not valid.
+	 * 
+	*/
+	@SuppressWarnings("unchecked")
+	E get(int index) {
+		checkIndex(index);
+		return (E) leafFor(index).slots[index & MASK];
+	}
+
+	/**
+	 * Replaces the element at a position.
+	 * 
+	 * @param index Position of the element.
+	 * @param element New element.
+	 * @throws IndexOutOfBoundsException if the index is not valid.
+	 * @throws UnsupportedOperationException if the vector is frozen.
+	 * 
+	*/
+	void set(int index, E element) {
+		checkIndex(index);
+		editablePath(index).slots[index & MASK] = element;
+	}
+
+	/**
+	 * Adds an element at the end.
+	 * 
+	 * @param element Element to add.
+	 * @return Position of the element.
+	 * @throws UnsupportedOperationException if the vector is frozen.
+	 * 
+	*/
+	int add(E element) {
+		checkEditable();
+		if ((long) size == (long) WIDTH << shift) {
+			Node newRoot = new Node(owner);
+			newRoot.slots[0] = root;
+			root = newRoot;
+			shift += BITS;
+		}
+		int index = size++;
+		editablePath(index).slots[index & MASK] = element;
+		return index;
+	}
+
+	/**
+	 * Returns a read-only vector with the current elements and makes later changes of this vector copy the
+	 * nodes they touch.
+	 * 
+	 * @return Frozen vector sharing the nodes of this one.
+	 * @throws UnsupportedOperationException if the vector is frozen.
+	 * 
+	*/
+	PersistentVector<E> freeze() {
+		checkEditable();
+		owner = new Object();
+		return new PersistentVector<>(root, shift, size);
+	}
+
+
+	private Node leafFor(int index) {
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Node) node.slots[(index >>> level) & MASK];
+		}
+		return node;
+	}
+
+	/** Returns the leaf of an index, copying the nodes on the way that aren't owned by this vector. */
+	private Node editablePath(int index) {
+		checkEditable();
+		root = root.editable(owner);
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			int slot = (index >>> level) & MASK;
+			Node child = (Node) node.slots[slot];
+			child = child == null ? new Node(owner) : child.editable(owner);
+			node.slots[slot] = child;
+			node = child;
+		}
+		return node;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	private void checkEditable() {
+		if (owner == null) {
+			throw new UnsupportedOperationException("The vector is frozen");
+		}
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private int position;
+			private Node leaf;
+
+			@Override
+			public boolean hasNext() {
+				return position < size;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public E next() {
+				if (position >= size) {
+					throw new NoSuchElementException();
+				}
+				if ((position & MASK) == 0 || leaf == null) {
+					leaf = leafFor(position);
+				}
+				return (E) leaf.slots[position++ & MASK];
+			}
+		};
+	}
+
+
+	/**
+	 * Node of the tree, it belongs to the vector that created it until the vector is frozen.
+	 */
+	private static final class Node {
+		private final Object owner;
+		private final Object[] slots;
+
+		private Node(Object owner) {
+			this(owner, new Object[WIDTH]);
+		}
+
+		private Node(Object owner, Object[] slots) {
+			this.owner = owner;
+			this.slots = slots;
+		}
+
+		private Node editable(Object editor) {
+			return owner == editor ? this : new Node(editor, slots.clone());
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package main;
+
+import java.util.Arrays;
+
+import data_structures.ArrayList;
+import data_structures.DoublyLinkedList;
+import interfaces.List;
+
+
+/**
+ * Class that gathers everything the library report needs in a single pass over the books and a single pass over
+ * the users. Each book adds one to the count of its genre code and, if it's checked out, goes to the checked out
+ * list; each user has its fees added up once. The genre codes are only matched against the genres of the report
+ * when the report is built, so the pass doesn't compare any string. The codes are the aggregator's own, genres
+ * counted by the code of a store are looked up once per code.
+ * 
+ * Aggregators of parts of a catalog (partitions, ranges of books) can be merged, the result is the same as if
+ * the parts were added to a single aggregator in order.
+ * 
+*/
+public class ReportAggregator {
+
+	/** Code that isn't looked up yet in {@link #storeCodes}.*/
+	private static final int UNKNOWN_CODE = -2;
+
+	/** Genres counted so far, only as many as the catalog has.*/
+	private final StringDictionary genres = new StringDictionary();
+	/** Amount of books per genre code.*/
+	private int[] genreCodeCounts = new int[1];
+	/** Dictionary of the store codes last counted and the code of this aggregator for each of them.*/
+	private StringDictionary storeGenres;
+	private int[] storeCodes;
+	/** Books currently checked out, in the order they were added.*/
+	private final DoublyLinkedList<Book> checkedOut = new DoublyLinkedList<>();
+	/** Names of the users that owe fees, in the order they were added.*/
+	private final ArrayList<String> owingUsers = new ArrayList<>();
+	/** Fees owed by each user in owingUsers, in cents.*/
+	private final ArrayList<Long> owedFees = new ArrayList<>();
+
+
+	/**
+	 * Constructs an empty aggregator.
+	 */
+	public ReportAggregator() {
+	}
+
+
+	/**
+	 * Adds a book: counts its genre and keeps it if it's checked out. The book is kept as it is, books that can
+	 * change while the report is printed should be copied first.
+	 * 
+	 * @param book Book to add.
+	 * 
+	*/
+	public void addBook(Book book) {
+		countGenre(book.getGenre());
+		if (book.isCheckedOut()) {
+			checkedOut.add(book);
+		}
+	}
+
+	/**
+	 * Counts a book of a genre.
+	 * 
+	 * @param genre Genre of the book, can be {@code null}.
+	 * 
+	*/
+	public void countGenre(String genre) {
+		count(genres.encode(genre), 1);
+	}
+
+	/**
+	 * Counts a book of a genre, used by stores that read the genre codes without a Book. The code is looked up
+	 * in the dictionary the first time it's counted.
+	 * 
+	 * @param dictionary Dictionary of the store.
+	 * @param genreCode Code of the genre in the dictionary.
+	 * 
+	*/
+	void countGenre(StringDictionary dictionary, int genreCode) {
+		if (genreCode == StringDictionary.NULL_CODE) {
+			return;
+		}
+		if (dictionary != storeGenres || genreCode >= storeCodes.length) {
+			int[] codes = dictionary == storeGenres ? storeCodes : new int[0];
+			storeCodes = Arrays.copyOf(codes, Math.max(genreCode + 1, dictionary.size()));
+			Arrays.fill(storeCodes, codes.length, storeCodes.length, UNKNOWN_CODE);
+			storeGenres = dictionary;
+		}
+		int code = storeCodes[genreCode];
+		if (code == UNKNOWN_CODE) {
+			code = genres.encode(dictionary.decode(genreCode));
+			storeCodes[genreCode] = code;
+		}
+		count(code, 1);
+	}
+
+	/**
+	 * Takes back a book counted before, used by reports kept up to date when a book leaves the catalog.
+	 * 
+	 * @param genre Genre of the book.
+	 * 
+	*/
+	public void uncountGenre(String genre) {
+		count(genres.encode(genre), -1);
+	}
+
+	private void count(int genreCode, int amount) {
+		if (genreCode == StringDictionary.NULL_CODE) {
+			return;
+		}
+		if (genreCode >= genreCodeCounts.length) {
+			genreCodeCounts = Arrays.copyOf(genreCodeCounts, Math.max(genreCode + 1, genreCodeCounts.length * 2));
+		}
+		genreCodeCounts[genreCode] += amount;
+	}
+
+	/**
+	 * Adds a checked out book without counting its genre, used by stores together with {@link #countGenre(int)}.
+	 * 
+	 * @param book Checked out book.
+	 * 
+	*/
+	public void addCheckedOut(Book book) {
+		checkedOut.add(book);
+	}
+
+	/**
+	 * Adds a user with the fees it owes as of a day.
+	 * 
+	 * @param user User to add.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * 
+	*/
+	public void addUser(User user, int asOfDay) {
+		long userFee = LibraryReport.userFeeCents(user, asOfDay);
+		if (userFee > 0) {
+			owingUsers.add(user.getName());
+			owedFees.add(userFee);
+		}
+	}
+
+	/**
+	 * Adds everything gathered by another aggregator after what this one has.
+	 * 
+	 * @param other Aggregator to merge, it isn't changed.
+	 * 
+	*/
+	public void merge(ReportAggregator other) {
+		// the aggregators have their own codes, the genres are merged by value
+		for (int code = 0; code < other.genreCodeCounts.length; code++) {
+			if (other.genreCodeCounts[code] != 0) {
+				count(genres.encode(other.genres.decode(code)), other.genreCodeCounts[code]);
+			}
+		}
+		for (Book book : other.checkedOut) {
+			checkedOut.add(book);
+		}
+		for (int i = 0; i < other.owingUsers.size(); i++) {
+			owingUsers.add(other.owingUsers.get(i));
+			owedFees.add(other.owedFees.get(i));
+		}
+	}
+
+
+	/**
+	 * Adds up the counts of the codes of several genres ignoring case.
+	 * 
+	 * @param genreNames Genres to count.
+	 * @return Number of books of each genre, aligned with {@code genreNames}.
+	 * 
+	*/
+	public int[] genreCounts(String[] genreNames) {
+		int[] counts = new int[genreNames.length];
+		for (int i = 0; i < genreNames.length; i++) {
+			boolean[] matches = genres.matchesIgnoreCase(genreNames[i]);
+			for (int code = 0; code < genreCodeCounts.length; code++) {
+				if (genreCodeCounts[code] > 0 && genres.matches(matches, code, genreNames[i])) {
+					counts[i] += genreCodeCounts[code];
+				}
+			}
+		}
+		return counts;
+	}
+
+	/** Returns the checked out books added so far. */
+	public List<Book> getCheckedOut() {
+		return checkedOut;
+	}
+
+	/**
+	 * Builds the report with the genres of {@link LibraryReport#GENRES}.
+	 * 
+	 * @return The report.
+	 * 
+	*/
+	public LibraryReport toReport() {
+		return toReport(checkedOut);
+	}
+
+	/**
+	 * Builds the report listing the checked out books in a different order, like sorted by ID.
+	 * 
+	 * @param checkedOutBooks Checked out books to list.
+	 * @return The report.
+	 * 
+	*/
+	public LibraryReport toReport(List<Book> checkedOutBooks) {
+		LibraryReport report = new LibraryReport(genreCounts(LibraryReport.GENRES), checkedOutBooks);
+		for (int i = 0; i < owingUsers.size(); i++) {
+			report.addUserFee(owingUsers.get(i), owedFees.get(i));
+		}
+		return report;
+	}
+}
@@ -0,0 +1,156 @@
+package main;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+
+/**
+ * Class that keeps the latest report rendered by a catalog, identified by the version of the catalog and the
+ * day the fees were calculated up to. While neither changes, the report is handed out again instead of being
+ * computed, and writing it to the file it was last written to is skipped if the file wasn't touched since.
+ * 
+ * The report is rendered straight to a file, so the cache keeps the file it was last written to instead of the
+ * report itself. Only reports up to {@link #MAX_IN_MEMORY} bytes are also kept in memory, the others are copied
+ * from their file, and if the file was changed by someone else meanwhile the report has to be rendered again.
+ * 
+*/
+public class ReportCache {
+
+	/** Largest report kept in memory as well as in its file.*/
+	static final int MAX_IN_MEMORY = 64 * 1024;
+
+	/** Version of the catalog the report was rendered at, -1 if there's no report.*/
+	private long version = -1;
+	/** Epoch day the fees of the report were calculated up to.*/
+	private int asOfDay;
+	/** The report if it's small enough, {@code null} otherwise.*/
+	private byte[] report;
+
+	/** File the report was last written to, {@code null} if no file is known to hold it.*/
+	private Path writtenTo;
+	/** Modification time of the file right after it was written.*/
+	private FileTime writtenTime;
+	/** Size of the report in bytes.*/
+	private long size;
+
+
+	/**
+	 * Returns whether the cache has the report rendered at a version of the catalog and as of a day.
+	 * 
+	 * @param version Current version of the catalog.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @return {@code true} if the report is in memory or in a file that still holds it.
+	 * @throws IOException if the file of the report can't be checked.
+	 * 
+	*/
+	public synchronized boolean has(long version, int asOfDay) throws IOException {
+		return this.version == version && this.asOfDay == asOfDay && (report != null || isWritten(writtenTo));
+	}
+
+	/**
+	 * Moves a report rendered to a temporary file to its destination and keeps it, replacing the report cached
+	 * before unless that one is of a newer version. The report is read back into memory if it's small enough.
+	 * 
+	 * @param version Version of the catalog the report was rendered at.
+	 * @param asOfDay Epoch day the fees of the report were calculated up to.
+	 * @param temporary File the report was rendered to, it's moved.
+	 * @param path File to move the report to, replaced if it exists.
+	 * @throws IOException if an error occurs while moving or reading the file.
+	 * 
+	*/
+	public synchronized void put(long version, int asOfDay, Path temporary, Path path) throws IOException {
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (this.version != -1 && version < this.version) {
+			// another thread rendered a newer report, the file doesn't hold it anymore
+			if (path.equals(writtenTo)) {
+				forgetFile();
+			}
+			return;
+		}
+		this.version = version;
+		this.asOfDay = asOfDay;
+		this.size = Files.size(path);
+		this.report = size <= MAX_IN_MEMORY ? Files.readAllBytes(path) : null;
+		this.writtenTo = path;
+		this.writtenTime = Files.getLastModifiedTime(path);
+	}
+
+	/** Drops the cached report, used when the version of the catalog is reset. */
+	public synchronized void clear() {
+		version = -1;
+		report = null;
+		writtenTo = null;
+		writtenTime = null;
+	}
+
+	/** Forgets the file of the report, the report is dropped too if it isn't in memory. */
+	private void forgetFile() {
+		writtenTo = null;
+		writtenTime = null;
+		if (report == null) {
+			version = -1;
+		}
+	}
+
+
+	/**
+	 * Writes the cached report to a file, unless the file still holds it since it was last written, and echoes
+	 * it to a stream like {@link ReportWriter} does. The report is copied from memory, or from the file it was
+	 * last written to.
+	 * 
+	 * @param version Current version of the catalog.
+	 * @param asOfDay Epoch day the fees are calculated up to.
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param echo Stream to echo the report to, or {@code null}.
+	 * @return {@code false} if the cache doesn't have the report, nothing is written then.
+	 * @throws IOException if an error occurs while writing the file.
+	 * 
+	*/
+	public synchronized boolean write(long version, int asOfDay, Path path, PrintStream echo) throws IOException {
+		if (!has(version, asOfDay)) {
+			return false;
+		}
+		if (!path.equals(writtenTo) || !isWritten(path)) {
+			if (report != null) {
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					ByteBuffer buffer = ByteBuffer.wrap(report);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+			}
+			else {
+				Files.copy(writtenTo, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			writtenTo = path;
+			writtenTime = Files.getLastModifiedTime(path);
+		}
+		if (echo != null) {
+			if (report != null) {
+				echo.write(report, 0, report.length);
+			}
+			else {
+				Files.copy(path, echo);
+			}
+			echo.println();
+			echo.flush();
+		}
+		return true;
+	}
+
+	/** Checks if a file still holds the cached report, by its modification time and size. */
+	private boolean isWritten(Path path) throws IOException {
+		if (path == null || !path.equals(writtenTo) || !Files.exists(path)) {
+			return false;
+		}
+		return Files.getLastModifiedTime(path).equals(writtenTime) && Files.size(path) == size;
+	}
+}
@@ -0,0 +1,78 @@
+package main;
+
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Task that gathers the report data of a range of books or users on a fork-join pool. Ranges bigger than the
+ * leaf size are split in halves that run in parallel, and the aggregator of the left half is merged with the
+ * one of the right half. Merging in that order makes the result the same as a single pass over the whole range,
+ * no matter how the work was scheduled, so the report is byte for byte the one generated serially.
+ * 
+*/
+public class ReportTask extends RecursiveTask<ReportAggregator> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Ranges per thread, so threads that finish early can steal work.*/
+	private static final int RANGES_PER_THREAD = 4;
+	/** Smallest range worth a task of its own.*/
+	private static final int MIN_LEAF_SIZE = 1024;
+
+	/**
+	 * Adds the items between two positions to an aggregator.
+	 */
+	public interface Range {
+		void aggregate(ReportAggregator aggregator, int from, int to);
+	}
+
+	private final Range range;
+	private final int from;
+	private final int to;
+	private final int leafSize;
+
+
+	/**
+	 * Constructs a task over a range.
+	 * 
+	 * @param range Adds the items of a range to an aggregator, called from several threads at once.
+	 * @param from First position of the range.
+	 * @param to Position after the last position of the range.
+	 * @param leafSize Size of the ranges that aren't split any more.
+	 * 
+	*/
+	public ReportTask(Range range, int from, int to, int leafSize) {
+		this.range = range;
+		this.from = from;
+		this.to = to;
+		this.leafSize = Math.max(1, leafSize);
+	}
+
+	/**
+	 * Picks the leaf size for a number of items, so every thread gets a few ranges.
+	 * 
+	 * @param count Number of items.
+	 * @param parallelism Number of threads.
+	 * @return Leaf size to use.
+	 * 
+	*/
+	public static int leafSize(int count, int parallelism) {
+		return Math.max(MIN_LEAF_SIZE, count / (Math.max(1, parallelism) * RANGES_PER_THREAD) + 1);
+	}
+
+	@Override
+	protected ReportAggregator compute() {
+		if (to - from <= leafSize) {
+			ReportAggregator aggregator = new ReportAggregator();
+			range.aggregate(aggregator, from, to);
+			return aggregator;
+		}
+		int middle = (from + to) >>> 1;
+		ReportTask left = new ReportTask(range, from, middle, leafSize);
+		left.fork();
+		ReportAggregator right = new ReportTask(range, middle, to, leafSize).compute();
+		ReportAggregator result = left.join();
+		result.merge(right);
+		return result;
+	}
+}
@@ -0,0 +1,257 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Class that writes the library report section by section as it's computed, in the format of
+ * report/expected_report.txt. Text goes to a fixed size buffer that is written to a channel whenever it fills
+ * up, so writing the report takes the same memory no matter how many books are checked out or how many users
+ * owe fees. The report can be echoed to a stream (like System.out) as it's written.
+ * 
+ * The sections have to be written in order: {@link #writeSummary(int[])}, the checked out books between
+ * {@link #beginCheckedOut()} and {@link #endCheckedOut()}, then the users between {@link #beginFees()} and
+ * {@link #endFees()}.
+ * 
+*/
+public class ReportWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String SEPARATOR = "====================================================\n";
+
+	private final WritableByteChannel channel;
+	/** Stream the report is echoed to, {@code null} if it isn't.*/
+	private final PrintStream echo;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/** Checked out books written so far.*/
+	private int checkedOutCount;
+	/** Fees of the users written so far, in cents.*/
+	private long totalDue;
+	/** Scratch space amounts are formatted into.*/
+	private final byte[] money = new byte[MoneyFormat.MAX_LENGTH];
+
+
+	/**
+	 * Constructs a writer over a channel.
+	 * 
+	 * @param channel Channel to write the report to, closed by {@link #close()}.
+	 * @param echo Stream to echo the report to, or {@code null}.
+	 * 
+	*/
+	public ReportWriter(WritableByteChannel channel, PrintStream echo) {
+		this.channel = channel;
+		this.echo = echo;
+	}
+
+	/**
+	 * Opens a writer that writes the report to a file.
+	 * 
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param echo Stream to echo the report to, or {@code null}.
+	 * @return The writer.
+	 * @throws IOException if the file can't be opened.
+	 * 
+	*/
+	public static ReportWriter open(Path path, PrintStream echo) throws IOException {
+		return new ReportWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING), echo);
+	}
+
+
+	/**
+	 * Writes the title and the summary of books.
+	 * 
+	 * @param genreCounts Amount of books per genre, aligned with {@link LibraryReport#GENRES}.
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void writeSummary(int[] genreCounts) throws IOException {
+		write("\t\t\t\tREPORT\n\n");
+		write("\t\tSUMMARY OF BOOKS\n");
+		write("GENRE\t\t\t\t\t\tAMOUNT\n");
+
+		int totalBooks = 0;
+		for (int i = 0; i < LibraryReport.GENRES.length; i++) {
+			write(LibraryReport.GENRES[i]);
+			write(LibraryReport.GENRE_TABS[i]);
+			write(Integer.toString(genreCounts[i]));
+			write("\n");
+			totalBooks += genreCounts[i];
+		}
+		write(SEPARATOR);
+		write("\t\t\tTOTAL AMOUNT OF BOOKS\t");
+		write(Integer.toString(totalBooks));
+		write("\n\n");
+	}
+
+	/**
+	 * Starts the section of checked out books.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void beginCheckedOut() throws IOException {
+		write("\t\t\tBOOKS CURRENTLY CHECKED OUT\n\n");
+		checkedOutCount = 0;
+	}
+
+	/**
+	 * Writes a checked out book.
+	 * 
+	 * @param book Book to write.
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void checkedOutBook(Book book) throws IOException {
+		write(book.toString());
+		write("\n");
+		checkedOutCount++;
+	}
+
+	/**
+	 * Ends the section of checked out books with the amount of books written.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void endCheckedOut() throws IOException {
+		write(SEPARATOR);
+		write("\t\t\tTOTAL AMOUNT OF BOOKS\t");
+		write(Integer.toString(checkedOutCount));
+		write("\n\n");
+	}
+
+	/**
+	 * Starts the section of users that owe fees.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void beginFees() throws IOException {
+		write("\n\n\t\tUSERS THAT OWE BOOK FEES\n\n");
+		totalDue = 0;
+	}
+
+	/**
+	 * Writes a user that owes fees.
+	 * 
+	 * @param name Name of the user.
+	 * @param feeCents Fees owed by the user, in cents.
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void userFee(String name, long feeCents) throws IOException {
+		write(name);
+		write("\t\t\t\t\t$");
+		writeMoney(feeCents);
+		write("\n");
+		totalDue += feeCents;
+	}
+
+	/**
+	 * Ends the section of users with the total they owe, which ends the report.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void endFees() throws IOException {
+		write(SEPARATOR);
+		write("\t\t\t\tTOTAL DUE\t$");
+		writeMoney(totalDue);
+		write("\n\n\n");
+		write("\n\n");
+	}
+
+
+	/**
+	 * Writes text to the buffer. ASCII characters are copied as they are, other characters are encoded as UTF-8.
+	 */
+	private void write(String text) throws IOException {
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				buffer.put((byte) c);
+				i++;
+			}
+			else {
+				int end = i + 1;
+				while (end < length && text.charAt(end) >= 0x80) {
+					end++;
+				}
+				byte[] bytes = text.substring(i, end).getBytes(StandardCharsets.UTF_8);
+				for (int offset = 0; offset < bytes.length;) {
+					if (!buffer.hasRemaining()) {
+						flush();
+					}
+					int count = Math.min(buffer.remaining(), bytes.length - offset);
+					buffer.put(bytes, offset, count);
+					offset += count;
+				}
+				i = end;
+			}
+		}
+	}
+
+	/**
+	 * Writes an amount of money with two decimals, formatted without allocating.
+	 */
+	private void writeMoney(long cents) throws IOException {
+		int length = MoneyFormat.format(cents, money, 0);
+		if (buffer.remaining() < length) {
+			flush();
+		}
+		buffer.put(money, 0, length);
+	}
+
+	/**
+	 * Writes the buffered text to the channel and the echo stream.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	public void flush() throws IOException {
+		buffer.flip();
+		if (echo != null) {
+			echo.write(buffer.array(), 0, buffer.limit());
+		}
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the report and closes the channel. The echo stream gets a line break at the end, like println,
+	 * but isn't closed.
+	 * 
+	 * @throws IOException if an error occurs while writing.
+	 * 
+	*/
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			if (echo != null) {
+				echo.println();
+				echo.flush();
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package main;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import data_structures.ArrayList;
+import data_structures.DoublyLinkedList;
+import interfaces.FilterFunction;
+import interfaces.List;
+
+
+/**
+ * Class that represents a library catalog split into several independent LibraryCatalog partitions, for
+ * holdings too large for a single list. Books are assigned to a partition by a hash of their ID:
+ * <ul>
+ * <li>Operations on a single book (checkout, return, availability, removal) go straight to its partition and
+ * only lock that partition, so operations on different partitions run at the same time.</li>
+ * <li>Searches, counts and the report run on every partition in parallel (scatter-gather) and the partial
+ * results are merged.</li>
+ * </ul>
+ * 
+ * The users are shared by all the partitions. Operations that change or read the checked out list of a user
+ * are serialized on the list of users, since the books of a user can live in different partitions; the
+ * partitions only read the users inside such operations. Users whose lists weren't used yet look their books
+ * up in the partition of each ID.
+ * 
+*/
+public class ShardedLibraryCatalog {
+
+	/** Partitions holding the books.*/
+	private final LibraryCatalog[] partitions;
+	/** Users of the library, shared by every partition.*/
+	private final DoublyLinkedList<User> users;
+	/** Next ID available for new books, shared by every partition.*/
+	private int nextID;
+	/** Position of each book in catalog order by ID, new books go last. The report lists books in this order.*/
+	private int[] sequence;
+	private int nextSequence;
+	/** Finds a book in the partition of its ID, for users whose lists aren't resolved yet.*/
+	private final IntFunction<Book> bookResolver = id -> partitionFor(id).resolveBook(id);
+	private final ReportCache reportCache = new ReportCache();
+
+
+	/**
+	 * Constructs a sharded catalog by reading the data files and splitting the books into partitions.
+	 * 
+	 * @param partitionCount Number of partitions.
+	 * @throws IOException if an error occurs while reading the data from the files.
+	 * 
+	*/
+	public ShardedLibraryCatalog(int partitionCount) throws IOException {
+		this(partitionCount, new LibraryCatalog());
+	}
+
+	/**
+	 * Constructs a sharded catalog splitting the books of an existing catalog into partitions. The source
+	 * catalog shares its books and users with the partitions and shouldn't be used afterwards, the users stop
+	 * looking their books up in it.
+	 * 
+	 * @param partitionCount Number of partitions.
+	 * @param source Catalog with the books and users to split.
+	 * @throws IllegalArgumentException if the number of partitions isn't positive.
+	 * 
+	*/
+	public ShardedLibraryCatalog(int partitionCount, LibraryCatalog source) {
+		if (partitionCount <= 0) {
+			throw new IllegalArgumentException("Number of partitions must be positive: " + partitionCount);
+		}
+		this.users = source.getUsers();
+
+		ArrayList<DoublyLinkedList<Book>> books = new ArrayList<>(partitionCount);
+		for (int i = 0; i < partitionCount; i++) {
+			books.add(new DoublyLinkedList<>());
+		}
+		int biggestID = 0;
+		for (Book book : source.getBookCatalog()) {
+			books.get(partitionOf(book.getId(), partitionCount)).add(book);
+			biggestID = Math.max(biggestID, book.getId());
+		}
+		this.sequence = new int[biggestID + 1];
+		for (Book book : source.getBookCatalog()) {
+			sequence[book.getId()] = nextSequence++;
+		}
+
+		this.partitions = new LibraryCatalog[partitionCount];
+		for (int i = 0; i < partitionCount; i++) {
+			partitions[i] = new LibraryCatalog(books.get(i), users);
+			partitions[i].keepRemovedBooks(Collections.<Book>emptyList());
+		}
+		for (Book book : source.getRemovedBooks()) {
+			partitionFor(book.getId()).keepRemovedBooks(Collections.singletonList(book));
+		}
+		for (User user : users) {
+			user.setResolver(bookResolver);
+		}
+		this.nextID = biggestID + 1;
+	}
+
+
+	/**
+	 * Finds the partition a book ID belongs to. The ID is mixed first so that IDs following a pattern still
+	 * spread evenly over the partitions.
+	 * 
+	 * @param id ID of the book.
+	 * @param partitionCount Number of partitions.
+	 * @return Index of the partition of the book.
+	 * 
+	*/
+	private static int partitionOf(int id, int partitionCount) {
+		int hash = id * 0x9E3779B9;
+		return Math.floorMod(hash ^ (hash >>> 16), partitionCount);
+	}
+
+	private LibraryCatalog partitionFor(int id) {
+		return partitions[partitionOf(id, partitions.length)];
+	}
+
+	/** Returns the number of partitions. */
+	public int getPartitionCount() {
+		return partitions.length;
+	}
+
+	/**
+	 * Returns the version of the catalog, it changes every time a partition is mutated. Partitions only count
+	 * up, so their sum never repeats.
+	 * 
+	 * @return Sum of the versions of the partitions.
+	 * 
+	*/
+	public long getVersion() {
+		long version = 0;
+		for (LibraryCatalog partition : partitions) {
+			version += partition.getVersion();
+		}
+		return version;
+	}
+
+	/** Returns the users of the library, shared by every partition. */
+	public DoublyLinkedList<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * Sets the clock that tells the current day on every partition, see {@link LibraryCatalog#setClock(Clock)}.
+	 * 
+	 * @param clock Clock to use.
+	 * 
+	*/
+	public void setClock(Clock clock) {
+		for (LibraryCatalog partition : partitions) {
+			partition.setClock(clock);
+		}
+	}
+
+
+	/**
+	 * Runs a query on every partition in parallel and waits for all the partial results.
+	 * 
+	 * @param query Query to run on each partition.
+	 * @return Results of the query, aligned with the partitions.
+	 * 
+	*/
+	private <T> ArrayList<T> scatter(Function<LibraryCatalog, T> query) {
+		ArrayList<CompletableFuture<T>> futures = new ArrayList<>(partitions.length);
+		for (LibraryCatalog partition : partitions) {
+			futures.add(CompletableFuture.supplyAsync(() -> query.apply(partition)));
+		}
+		ArrayList<T> results = new ArrayList<>(partitions.length);
+		for (CompletableFuture<T> future : futures) {
+			results.add(future.join());
+		}
+		return results;
+	}
+
+
+	/**
+	 * Adds a new book to the partition of its ID, checked out last on the current day of the partition like
+	 * {@link LibraryCatalog#addBook(String, String, String)} does.
+	 * 
+	 * @param title Title of the new book.
+	 * @param author Author of the new book.
+	 * @param genre Genre of the new book.
+	 * 
+	*/
+	public void addBook(String title, String author, String genre) {
+		int id;
+		synchronized (this) {
+			id = nextID++;
+			if (id >= sequence.length) {
+				sequence = Arrays.copyOf(sequence, Math.max(id + 1, sequence.length + (sequence.length >> 1)));
+			}
+			sequence[id] = nextSequence++;
+		}
+		LibraryCatalog partition = partitionFor(id);
+		partition.addBook(new Book(id, title, author, genre, partition.today(), false));
+	}
+
+	/** Removes a book from its partition, see {@link LibraryCatalog#removeBook(int)}. */
+	public void removeBook(int id) {
+		partitionFor(id).removeBook(id);
+	}
+
+	/** Checks out a book in its partition, see {@link LibraryCatalog#checkOutBook(int)}. */
+	public boolean checkOutBook(int id) {
+		return partitionFor(id).checkOutBook(id);
+	}
+
+	/** Returns a book in its partition, see {@link LibraryCatalog#returnBook(int)}. */
+	public boolean returnBook(int id) {
+		return partitionFor(id).returnBook(id);
+	}
+
+	/** Checks the availability of a book in its partition, see {@link LibraryCatalog#getBookAvailability(int)}. */
+	public boolean getBookAvailability(int id) {
+		return partitionFor(id).getBookAvailability(id);
+	}
+
+
+	/**
+	 * Checks out several books for a user. The books are grouped by partition and each partition checks out
+	 * its group as a batch.
+	 * 
+	 * @param userId ID of the user checking out the books.
+	 * @param bookIds IDs of the books to check out.
+	 * @return Result of each checkout in the same order as {@code bookIds}, see
+	 * {@link LibraryCatalog#checkOutBooks(int, int[])}.
+	 * 
+	*/
+	public boolean[] checkOutBooks(int userId, int[] bookIds) {
+		synchronized (users) {
+			return byPartition(bookIds, (partition, ids) -> partition.checkOutBooks(userId, ids));
+		}
+	}
+
+	/**
+	 * Returns several books. The books are grouped by partition and each partition returns its group as a
+	 * batch.
+	 * 
+	 * @param bookIds IDs of the books to return.
+	 * @return Result of each return in the same order as {@code bookIds}, see
+	 * {@link LibraryCatalog#returnBooks(int[])}.
+	 * 
+	*/
+	public boolean[] returnBooks(int[] bookIds) {
+		synchronized (users) {
+			return byPartition(bookIds, (partition, ids) -> partition.returnBooks(ids));
+		}
+	}
+
+	@FunctionalInterface
+	private interface BatchOperation {
+		boolean[] apply(LibraryCatalog partition, int[] ids);
+	}
+
+	/**
+	 * Splits a batch of book IDs by partition, runs the operation on every partition that has books in the batch
+	 * and puts the results back in the order of the batch.
+	 */
+	private boolean[] byPartition(int[] bookIds, BatchOperation operation) {
+		int[] counts = new int[partitions.length];
+		for (int id : bookIds) {
+			counts[partitionOf(id, partitions.length)]++;
+		}
+		int[][] ids = new int[partitions.length][];
+		int[][] positions = new int[partitions.length][];
+		for (int p = 0; p < partitions.length; p++) {
+			ids[p] = new int[counts[p]];
+			positions[p] = new int[counts[p]];
+			counts[p] = 0;
+		}
+		for (int i = 0; i < bookIds.length; i++) {
+			int p = partitionOf(bookIds[i], partitions.length);
+			ids[p][counts[p]] = bookIds[i];
+			positions[p][counts[p]] = i;
+			counts[p]++;
+		}
+
+		boolean[] results = new boolean[bookIds.length];
+		for (int p = 0; p < partitions.length; p++) {
+			if (counts[p] > 0) {
+				boolean[] partial = operation.apply(partitions[p], ids[p]);
+				for (int j = 0; j < partial.length; j++) {
+					results[positions[p][j]] = partial[j];
+				}
+			}
+		}
+		return results;
+	}
+
+
+	/**
+	 * Counts the books with a title ignoring case in every partition.
+	 * 
+	 * @param title Title of the book to count instances of.
+	 * @return The number of books with matching title.
+	 * 
+	*/
+	public int bookCount(String title) {
+		int count = 0;
+		for (int partial : scatter(partition -> partition.bookCount(title))) {
+			count += partial;
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the books of a genre ignoring case in every partition.
+	 * 
+	 * @param genre The genre to be counted
+	 * @return The number of books with the genre
+	 * 
+	*/
+	public int genreCount(String genre) {
+		int count = 0;
+		for (int partial : scatter(partition -> partition.genreCount(genre))) {
+			count += partial;
+		}
+		return count;
+	}
+
+	/**
+	 * Searches for books in every partition in parallel. The matches are merged in order of ID.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of books that follow the condition given by the lambda function.
+	 * 
+	*/
+	public List<Book> searchForBook(FilterFunction<Book> func) {
+		return mergeById(scatter(partition -> partition.searchForBook(func)));
+	}
+
+	/**
+	 * Searches for users.
+	 * 
+	 * @param func The lambda function received
+	 * @return List of users that follow the condition given by the lambda function.
+	 * 
+	*/
+	public List<User> searchForUsers(FilterFunction<User> func) {
+		DoublyLinkedList<User> matchingUsers = new DoublyLinkedList<>();
+		synchronized (users) {
+			for (User user : users) {
+				if (func.filter(user)) {
+					matchingUsers.add(user);
+				}
+			}
+		}
+		return matchingUsers;
+	}
+
+	/**
+	 * Merges the lists of books found in each partition into one list ordered by ID.
+	 * 
+	 * @param partials Lists of books of each partition.
+	 * @return Merged list of books.
+	 * 
+	*/
+	private static DoublyLinkedList<Book> mergeById(ArrayList<List<Book>> partials) {
+		int size = 0;
+		for (List<Book> partial : partials) {
+			size += partial.size();
+		}
+		Book[] books = new Book[size];
+		int index = 0;
+		for (List<Book> partial : partials) {
+			for (Book book : partial) {
+				books[index++] = book;
+			}
+		}
+		Arrays.sort(books, Comparator.comparingInt(Book::getId));
+
+		DoublyLinkedList<Book> merged = new DoublyLinkedList<>();
+		for (Book book : books) {
+			merged.add(book);
+		}
+		return merged;
+	}
+
+
+	/**
+	 * Generates the report of the whole catalog, writes it to report/report.txt and prints it to the console,
+	 * see {@link #generateReport(Path, boolean)}.
+	 * 
+	 * @throws IOException if an error occurs while generating the report.
+	 * 
+	*/
+	public void generateReport() throws IOException {
+		generateReport(Paths.get("report/report.txt"), true);
+	}
+
+	/**
+	 * Writes the report of the whole catalog to a file, in the same format and order as a single catalog with
+	 * the same books would. It's rendered once per version and day like {@link LibraryCatalog#generateReport(Path,
+	 * boolean)}, streamed to a temporary file next to the destination that replaces it when it's complete.
+	 * 
+	 * Every partition gathers the genre counts and the checked out books of its books in a single pass, in
+	 * parallel, the results are merged and checked out books are put back in catalog order. The partitions
+	 * don't look at the users, their fees are added in one pass while holding the lock of the users, like every
+	 * change to them, as of the current day of the partitions.
+	 * 
+	 * @param path File to write the report to, replaced if it exists.
+	 * @param echo Whether to print the report to the console as well.
+	 * @throws IOException if an error occurs while writing the report.
+	 * 
+	*/
+	public void generateReport(Path path, boolean echo) throws IOException {
+		int asOfDay = partitions[0].today();
+		PrintStream out = echo ? System.out : null;
+		// read before gathering, so the report is never older than the version it's cached as
+		long version = getVersion();
+		if (reportCache.write(version, asOfDay, path, out)) {
+			return;
+		}
+		LibraryReport report = gatherReport(asOfDay);
+		Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try (ReportWriter writer = ReportWriter.open(temporary, out)) {
+			report.writeTo(writer);
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		reportCache.put(version, asOfDay, temporary, path);
+	}
+
+	private LibraryReport gatherReport(int asOfDay) {
+		ReportAggregator merged = new ReportAggregator();
+		for (ReportAggregator partial : scatter(partition -> partition.aggregate(false))) {
+			merged.merge(partial);
+		}
+		Book[] checkedOut = new Book[merged.getCheckedOut().size()];
+		int i = 0;
+		for (Book book : merged.getCheckedOut()) {
+			checkedOut[i++] = book;
+		}
+		synchronized (this) {
+			int[] positions = sequence;
+			Arrays.sort(checkedOut, Comparator.comparingInt(book -> positions[book.getId()]));
+		}
+		DoublyLinkedList<Book> sorted = new DoublyLinkedList<>();
+		for (Book book : checkedOut) {
+			sorted.add(book);
+		}
+
+		synchronized (users) {
+			for (User user : users) {
+				merged.addUser(user, asOfDay);
+			}
+		}
+		return merged.toReport(sorted);
+	}
+}
@@ -0,0 +1,144 @@
+package main;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Class that gives every distinct string of a column a small integer code, so repeated values (a handful of
+ * genres, authors with many books) are stored once and compared by code instead of with equalsIgnoreCase. A
+ * query is matched against the distinct values once with {@link #matchesIgnoreCase(String)} and the scan only
+ * checks the codes of the books.
+ * 
+ * Every columnar or off-heap store has its own dictionaries, and loading a catalog file interns the strings of
+ * the books through dictionaries that are dropped once it's loaded, so the values of a catalog go away with it.
+ * Codes are never reused or removed while the dictionary lives. Lookups of values that are already in the
+ * dictionary don't lock, so the parallel loader can encode from several threads.
+ * 
+*/
+public class StringDictionary {
+
+	/** Code of a {@code null} value.*/
+	public static final int NULL_CODE = -1;
+	/** Queries whose matches are kept, the cache is emptied when it's full.*/
+	private static final int MAX_CACHED_MATCHES = 64;
+
+	private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+	/** Result of matchesIgnoreCase by query, for the codes the dictionary had when it was computed.*/
+	private final ConcurrentHashMap<String, boolean[]> cachedMatches = new ConcurrentHashMap<>();
+	/** Values by code, replaced by a bigger copy when full.*/
+	private volatile String[] values = new String[16];
+	private volatile int size;
+
+
+	/**
+	 * Returns the code of a value, adding it to the dictionary the first time it's seen.
+	 * 
+	 * @param value Value to encode, can be {@code null}.
+	 * @return Code of the value.
+	 * 
+	*/
+	public int encode(String value) {
+		if (value == null) {
+			return NULL_CODE;
+		}
+		Integer code = codes.get(value);
+		if (code != null) {
+			return code;
+		}
+		synchronized (this) {
+			code = codes.get(value);
+			if (code == null) {
+				String[] current = values;
+				if (size == current.length) {
+					String[] bigger = new String[current.length * 2];
+					System.arraycopy(current, 0, bigger, 0, size);
+					current = bigger;
+				}
+				code = size;
+				current[code] = value;
+				values = current;
+				size = code + 1;
+				codes.put(value, code);
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Returns the value of a code.
+	 * 
+	 * @param code Code returned by {@link #encode(String)}.
+	 * @return The value, the same instance for every book that has it.
+	 * 
+	*/
+	public String decode(int code) {
+		return code == NULL_CODE ? null : values[code];
+	}
+
+	/**
+	 * Returns the shared instance of a value, so equal strings read from different lines are stored once.
+	 * 
+	 * @param value Value to intern.
+	 * @return The instance kept by the dictionary.
+	 * 
+	*/
+	public String intern(String value) {
+		return decode(encode(value));
+	}
+
+	/** Returns the number of distinct values. */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Finds the codes whose value is equal to a value ignoring case. Codes added afterwards aren't covered, use
+	 * {@link #matches(boolean[], int, String)} to check a code against the result. The result is cached per
+	 * query until the dictionary gets new values, so repeated counts and searches don't go over the values
+	 * again.
+	 * 
+	 * @param value Value to match.
+	 * @return Array indexed by code, {@code true} for the codes that match. It's shared and must not be changed.
+	 * 
+	*/
+	public boolean[] matchesIgnoreCase(String value) {
+		int count = size;
+		boolean[] matches = value == null ? null : cachedMatches.get(value);
+		if (matches != null && matches.length == count) {
+			return matches;
+		}
+		String[] current = values;
+		matches = new boolean[count];
+		for (int code = 0; code < count; code++) {
+			matches[code] = current[code].equalsIgnoreCase(value);
+		}
+		if (value != null) {
+			if (cachedMatches.size() >= MAX_CACHED_MATCHES) {
+				cachedMatches.clear();
+			}
+			cachedMatches.put(value, matches);
+		}
+		return matches;
+	}
+
+	/**
+	 * Checks a code against the result of {@link #matchesIgnoreCase(String)}, comparing the strings only for
+	 * codes added after the matches were computed.
+	 * 
+	 * @param matches Result of matchesIgnoreCase for the value.
+	 * @param code Code to check.
+	 * @param value Value that was matched.
+	 * @return Whether the value of the code is equal to the value ignoring case.
+	 * 
+	*/
+	public boolean matches(boolean[] matches, int code, String value) {
+		if (code == NULL_CODE) {
+			return false;
+		}
+		if (code < matches.length) {
+			return matches[code];
+		}
+		return decode(code).equalsIgnoreCase(value);
+	}
+}
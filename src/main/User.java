@@ -1,26 +1,118 @@
 package main;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
 import data_structures.DoublyLinkedList;
 import interfaces.List;
 
 public class User {
-	
+
+	/** Shared by every user without checked out books.*/
+	private static final int[] NO_BOOKS = new int[0];
+
 	private int id;
 	private String name;
-	private DoublyLinkedList<Book> checkedOutList;
+	/** IDs of the checked out books, only the first bookCount entries are used.*/
+	private int[] bookIds = NO_BOOKS;
+	private int bookCount;
+	/** Finds the books of bookIds the first time they are used, {@code null} once they are found.*/
+	private volatile IntFunction<Book> resolver;
+	/** Books aligned with bookIds, {@code null} while they aren't resolved or if there are none.*/
+	private Book[] books;
+	/** Whether the user changed since it was last saved, set by every method that changes the user.*/
+	private boolean dirty;
 
 	public User(int id, String name) {
 		this.id = id;
 		this.name = name;
-		this.checkedOutList = new DoublyLinkedList<>();
 	}
-	
+
+	/**
+	 * Constructs a user that only stores the IDs of its checked out books until the list is first used. Then
+	 * every book is looked up once with the resolver and kept, IDs of books that don't exist are dropped. Users
+	 * that are never looked at in a session take a few bytes per book and never touch their books.
+	 * 
+	 * @param id ID of the user.
+	 * @param name Name of the user.
+	 * @param checkedOutIds IDs of the checked out books, the user keeps the array.
+	 * @param resolver Finds a book by its ID, returns {@code null} for books that don't exist. It may be called
+	 * from any thread that reads the user, so it has to do its own locking.
+	 * 
+	*/
+	public User(int id, String name, int[] checkedOutIds, IntFunction<Book> resolver) {
+		this.id = id;
+		this.name = name;
+		this.bookIds = checkedOutIds;
+		this.bookCount = checkedOutIds.length;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Looks up the books of the IDs the first time the list is used and drops the resolver, so later reads
+	 * don't go through it. The books are looked up without holding the user, a resolver that locks its catalog
+	 * would otherwise deadlock with a writer of the catalog changing the user; if two threads look them up, the
+	 * first one to finish is kept.
+	 */
+	private void resolve() {
+		IntFunction<Book> lookup = resolver;
+		if (lookup != null) {
+			int[] ids = bookIds;
+			int count = bookCount;
+			int[] keptIds = new int[count];
+			Book[] found = new Book[count];
+			int kept = 0;
+			for (int i = 0; i < count; i++) {
+				Book book = lookup.apply(ids[i]);
+				if (book != null) {
+					keptIds[kept] = ids[i];
+					found[kept++] = book;
+				}
+			}
+			synchronized (this) {
+				if (resolver == lookup) {
+					bookIds = kept == 0 ? NO_BOOKS : keptIds;
+					books = kept == 0 ? null : found;
+					bookCount = kept;
+					resolver = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the IDs of the checked out books if the list was never used, so they can be copied without
+	 * looking the books up. The array is shared with the user and must not be changed.
+	 * 
+	 * @return The IDs the user was loaded with, or {@code null} if the books were looked up.
+	 * 
+	*/
+	synchronized int[] unresolvedIds() {
+		return resolver == null ? null : bookIds;
+	}
+
+	/**
+	 * Replaces the resolver of a list that wasn't used yet, when the books move to another catalog.
+	 * 
+	 * @param resolver Finds a book by its ID, see {@link #User(int, String, int[], IntFunction)}.
+	 * 
+	*/
+	synchronized void setResolver(IntFunction<Book> resolver) {
+		if (this.resolver != null) {
+			this.resolver = resolver;
+		}
+	}
+
 	public int getId() {
 		return id;
 	}
 
 	public void setId(int id) {
 		this.id = id;
+		dirty = true;
 	}
 
 	public String getName() {
@@ -29,35 +121,262 @@ public class User {
 
 	public void setName(String name) {
 		this.name = name;
+		dirty = true;
 	}
 
+	/**
+	 * Returns the books checked out by the user. The list is a view of the user, it doesn't copy anything and
+	 * changes made through it change the user. The books are looked up the first time the list is used.
+	 * 
+	 * @return The checked out books.
+	 * 
+	*/
 	public List<Book> getCheckedOutList() {
-		return checkedOutList;
+		resolve();
+		return new CheckedOutList();
 	}
 
 	public void setCheckedOutList(DoublyLinkedList<Book> checkedOutList) {
-		this.checkedOutList = checkedOutList;
+		bookIds = checkedOutList.isEmpty() ? NO_BOOKS : new int[checkedOutList.size()];
+		books = checkedOutList.isEmpty() ? null : new Book[checkedOutList.size()];
+		bookCount = 0;
+		resolver = null;
+		for (Book book : checkedOutList) {
+			bookIds[bookCount] = book.getId();
+			books[bookCount] = book;
+			bookCount++;
+		}
+		dirty = true;
 	}
 
 	public void addBook(Book book) {
-		checkedOutList.add(book);
+		addBook(bookCount, book);
+	}
+
+	private void addBook(int index, Book book) {
+		resolve();
+		if (books == null || bookCount == books.length) {
+			int capacity = Math.max(2, bookCount + (bookCount >> 1) + 1);
+			bookIds = Arrays.copyOf(bookIds, capacity);
+			books = books == null ? new Book[capacity] : Arrays.copyOf(books, capacity);
+		}
+		System.arraycopy(bookIds, index, bookIds, index + 1, bookCount - index);
+		System.arraycopy(books, index, books, index + 1, bookCount - index);
+		bookIds[index] = book.getId();
+		books[index] = book;
+		bookCount++;
+		dirty = true;
 	}
-	
-	
+
+	/**
+	 * Removes a book from the checked out list of the user.
+	 * 
+	 * @param book Book to remove.
+	 * @return {@code true} if the book was in the list.
+	 * 
+	*/
+	public boolean removeBook(Book book) {
+		resolve();
+		for (int i = 0; i < bookCount; i++) {
+			if (bookIds[i] == book.getId() && book.equals(books[i])) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void removeAt(int index) {
+		System.arraycopy(bookIds, index + 1, bookIds, index, bookCount - index - 1);
+		System.arraycopy(books, index + 1, books, index, bookCount - index - 1);
+		books[bookCount - 1] = null;
+		bookCount--;
+		dirty = true;
+	}
+
+	/** Returns whether the user changed since it was last saved. */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public void markDirty() {
+		this.dirty = true;
+	}
+
+	public void markClean() {
+		this.dirty = false;
+	}
+
+
 	/**
 	 * Calculates the total library fees owed by the user. It's calculated as the sum of late fees for checked out books.
+	 * The fees are calculated up to the fixed day the library works with, not the clock of a catalog, see
+	 * {@link #libraryFees(FeeEngine)}.
 	 * 
 	 * @return The total library fees owed by the user.
 	 * 
 	*/
 	public float libraryFees() {
-		float dueFees = 0;
+		long dueCents = 0;
 		for (Book book : getCheckedOutList()) {
-			if (book.isCheckedOut() && book.calculateFees() > 0) {
-				dueFees += book.calculateFees();
+			if (book.isCheckedOut()) {
+				dueCents += Book.calculateFeeCents(book.getLastCheckoutDay(), Book.TODAY);
+			}
+		}
+		return dueCents / 100.0f;
+	}
+
+	/**
+	 * Calculates the total library fees owed by the user as of the current day of a fee engine, like the one of
+	 * the catalog of the user (see {@link LibraryCatalog#getFeeEngine()}).
+	 * 
+	 * @param engine Engine that tells the current day.
+	 * @return The total library fees owed by the user.
+	 * 
+	*/
+	public float libraryFees(FeeEngine engine) {
+		return engine.userFeeCents(this) / 100.0f;
+	}
+
+
+	/**
+	 * View of the checked out books of the user as a List.
+	 */
+	private class CheckedOutList implements List<Book> {
+
+		@Override
+		public int size() {
+			return bookCount;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return bookCount == 0;
+		}
+
+		@Override
+		public void add(Book obj) {
+			addBook(obj);
+		}
+
+		@Override
+		public void add(int index, Book obj) {
+			if (index < 0 || index > bookCount) {
+				throw new IndexOutOfBoundsException();
 			}
+			addBook(index, obj);
+		}
+
+		@Override
+		public Book get(int index) {
+			checkIndex(index);
+			return books[index];
+		}
+
+		@Override
+		public Book set(int index, Book obj) {
+			checkIndex(index);
+			Book old = books[index];
+			removeAt(index);
+			addBook(index, obj);
+			return old;
+		}
+
+		@Override
+		public boolean remove(int index) {
+			checkIndex(index);
+			removeAt(index);
+			return true;
+		}
+
+		@Override
+		public boolean remove(Book obj) {
+			return removeBook(obj);
+		}
+
+		@Override
+		public boolean contains(Book obj) {
+			return firstIndex(obj) >= 0;
+		}
+
+		@Override
+		public void clear() {
+			bookIds = NO_BOOKS;
+			books = null;
+			resolver = null;
+			bookCount = 0;
+			dirty = true;
+		}
+
+		@Override
+		public int removeAll(Book obj) {
+			int removed = 0;
+			while (removeBook(obj)) {
+				removed++;
+			}
+			return removed;
+		}
+
+		@Override
+		public int firstIndex(Book obj) {
+			for (int i = 0; i < bookCount; i++) {
+				if (Objects.equals(obj, books[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int lastIndex(Book obj) {
+			for (int i = bookCount - 1; i >= 0; i--) {
+				if (Objects.equals(obj, books[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public Book first() {
+			if (bookCount == 0) {
+				throw new NoSuchElementException();
+			}
+			return books[0];
+		}
+
+		@Override
+		public Book last() {
+			if (bookCount == 0) {
+				throw new NoSuchElementException();
+			}
+			return books[bookCount - 1];
+		}
+
+		private void checkIndex(int index) {
+			if (index < 0 || index >= bookCount) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+
+		@Override
+		public Iterator<Book> iterator() {
+			return new Iterator<Book>() {
+				private int position;
+
+				@Override
+				public boolean hasNext() {
+					return position < bookCount;
+				}
+
+				@Override
+				public Book next() {
+					if (position >= bookCount) {
+						throw new NoSuchElementException();
+					}
+					return books[position++];
+				}
+			};
 		}
-		return dueFees;
 	}
-	
 }
@@ -0,0 +1,127 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.CatalogEvent;
+import main.LibraryCatalog;
+import main.User;
+
+public class BatchCheckoutTester {
+
+	static final LocalDate TODAY = LocalDate.of(2023, 11, 20);
+
+	LibraryCatalog LC;
+	User john;
+	User jane;
+	ArrayList<CatalogEvent> events;
+
+	@Before
+	public void setup() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		for (int id = 1; id <= 5; id++) {
+			books.add(new Book(id, "Title " + id, "Author", "Fiction", LocalDate.of(2023, 9, id), id == 4));
+		}
+		john = new User(1, "John Smith");
+		jane = new User(2, "Jane Doe");
+		// both users hold book 4, like user.csv allows
+		john.getCheckedOutList().add(books.get(3));
+		jane.getCheckedOutList().add(books.get(3));
+		DoublyLinkedList<User> users = new DoublyLinkedList<>();
+		users.add(john);
+		users.add(jane);
+		LC = new LibraryCatalog(books, users);
+		LC.setClock(Clock.fixed(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+		events = new ArrayList<>();
+		LC.getEvents().addListener(events::add);
+	}
+
+	@Test
+	public void testCheckOutBooks() {
+		long version = LC.getVersion();
+		boolean[] results = LC.checkOutBooks(2, new int[] { 1, 2, 1, 99, 4 });
+		assertTrue("Only the first copy of each available book should be checked out, got " + Arrays.toString(results),
+				Arrays.equals(results, new boolean[] { true, true, false, false, false }));
+		assertTrue("The batch should be a single version.", LC.getVersion() == version + 1);
+		checkIds(jane, 4, 1, 2);
+		for (int id : new int[] { 1, 2 }) {
+			assertTrue("Book " + id + " should be checked out today.",
+					!LC.getBookAvailability(id) && TODAY.equals(findBook(id).getLastCheckOut()));
+		}
+		checkEvents(CatalogEvent.Type.BOOK_CHECKED_OUT, new int[] { 1, 2 }, new int[] { 2, 2 });
+
+		events.clear();
+		version = LC.getVersion();
+		assertTrue("A batch without available books checks out nothing.",
+				Arrays.equals(LC.checkOutBooks(1, new int[] { 1, 4, 99 }), new boolean[3]));
+		assertTrue("An unknown user checks out nothing.", Arrays.equals(LC.checkOutBooks(99, new int[] { 3 }), new boolean[1]));
+		assertTrue("A batch that changes nothing isn't a new version.", LC.getVersion() == version);
+		assertTrue("Nothing should be published when nothing changed.", events.isEmpty() && LC.getBookAvailability(3));
+		checkIds(john, 4);
+	}
+
+	@Test
+	public void testReturnBooks() {
+		LC.checkOutBooks(1, new int[] { 3 });
+		events.clear();
+		long version = LC.getVersion();
+		boolean[] results = LC.returnBooks(new int[] { 4, 4, 5, 99, 3 });
+		assertTrue("Only checked out books can be returned, once, got " + Arrays.toString(results),
+				Arrays.equals(results, new boolean[] { true, false, false, false, true }));
+		assertTrue("The batch should be a single version.", LC.getVersion() == version + 1);
+		assertTrue("The returned books should be available.", LC.getBookAvailability(3) && LC.getBookAvailability(4));
+		checkIds(john);
+		checkIds(jane);
+		// the first holder gets the return, every other holder a release
+		checkEvents(null, new int[] { 4, 4, 3 }, new int[] { 1, 2, 1 });
+		assertTrue("Book 4 should be returned by John and released by Jane, got " + events,
+				events.get(0).getType() == CatalogEvent.Type.BOOK_RETURNED
+				&& events.get(1).getType() == CatalogEvent.Type.BOOK_RELEASED
+				&& events.get(2).getType() == CatalogEvent.Type.BOOK_RETURNED);
+
+		events.clear();
+		version = LC.getVersion();
+		assertTrue("Books that aren't checked out can't be returned.",
+				Arrays.equals(LC.returnBooks(new int[] { 1, 3, 99 }), new boolean[3]));
+		assertTrue("A batch that returns nothing isn't a new version.", LC.getVersion() == version && events.isEmpty());
+	}
+
+	/** Checks the books and users of the events published, they must all carry the current version. */
+	private void checkEvents(CatalogEvent.Type type, int[] bookIds, int[] userIds) {
+		assertTrue(bookIds.length + " events should be published, got " + events, events.size() == bookIds.length);
+		for (int i = 0; i < bookIds.length; i++) {
+			CatalogEvent event = events.get(i);
+			assertTrue("Unexpected event " + event, (type == null || event.getType() == type)
+					&& event.getBookId() == bookIds[i] && event.getUserId() == userIds[i]
+					&& event.getVersion() == LC.getVersion());
+		}
+	}
+
+	private Book findBook(int id) {
+		for (Book book : LC.getBookCatalog()) {
+			if (book.getId() == id)
+				return book;
+		}
+		return null;
+	}
+
+	private static void checkIds(User user, int... ids) {
+		int[] actual = new int[user.getCheckedOutList().size()];
+		int count = 0;
+		for (Book book : user.getCheckedOutList()) {
+			actual[count++] = book.getId();
+		}
+		assertTrue("User " + user.getId() + " should hold " + Arrays.toString(ids) + " but holds " + Arrays.toString(actual),
+				Arrays.equals(actual, ids));
+	}
+}
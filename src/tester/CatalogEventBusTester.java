@@ -0,0 +1,130 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.CatalogEvent;
+import main.CatalogEventBus;
+import main.CatalogListener;
+import main.LibraryCatalog;
+
+public class CatalogEventBusTester {
+
+	CatalogEventBus bus;
+	Book book;
+
+	@Before
+	public void setup() {
+		bus = new CatalogEventBus();
+		book = new Book(1, "Title", "Author", "Fiction", LocalDate.of(2023, 9, 1), false);
+	}
+
+	@Test
+	public void testSynchronousListeners() {
+		assertTrue("A new bus has no listeners.", !bus.hasListeners());
+		ArrayList<CatalogEvent> received = new ArrayList<>();
+		bus.addListener(event -> {
+			throw new IllegalStateException("listener failure");
+		});
+		bus.addListener(received::add);
+		assertTrue("The bus should have listeners.", bus.hasListeners());
+
+		CatalogEvent first = new CatalogEvent(CatalogEvent.Type.BOOK_ADDED, 1, book, CatalogEvent.NO_USER);
+		CatalogEvent second = new CatalogEvent(CatalogEvent.Type.BOOK_CHECKED_OUT, 2, book, 3);
+		bus.publish(first);
+		bus.publish(second);
+		assertTrue("A failing listener shouldn't stop the others, got " + received,
+				received.size() == 2 && received.get(0) == first && received.get(1) == second);
+
+		CatalogEventBus other = new CatalogEventBus();
+		ArrayList<CatalogEvent> kept = new ArrayList<>();
+		CatalogListener listener = kept::add;
+		other.addListener(listener);
+		assertTrue("A registered listener should be removed.", other.removeListener(listener) && !other.hasListeners());
+		other.publish(first);
+		assertTrue("A removed listener shouldn't get events.", kept.isEmpty());
+	}
+
+	@Test
+	public void testCatalogPublishesChanges() throws IOException {
+		LibraryCatalog LC = new LibraryCatalog();
+		ArrayList<CatalogEvent> received = new ArrayList<>();
+		LC.getEvents().addListener(received::add);
+		LC.addBook("Title", "Author", "Fiction");
+		int id = received.get(0).getBookId();
+		LC.checkOutBooks(1, new int[] { id });
+		LC.returnBooks(new int[] { id });
+		LC.removeBook(id);
+
+		CatalogEvent.Type[] expected = { CatalogEvent.Type.BOOK_ADDED, CatalogEvent.Type.BOOK_CHECKED_OUT,
+				CatalogEvent.Type.BOOK_RETURNED, CatalogEvent.Type.BOOK_REMOVED };
+		assertTrue(expected.length + " events should be published, got " + received, received.size() == expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			CatalogEvent event = received.get(i);
+			assertTrue("Unexpected event " + event, event.getType() == expected[i] && event.getBookId() == id
+					&& (i == 0 || event.getVersion() > received.get(i - 1).getVersion()));
+		}
+		assertTrue("The checkout and return should carry the user.",
+				received.get(1).getUserId() == 1 && received.get(2).getUserId() == 1);
+	}
+
+	@Test
+	public void testAsyncListenerDropsEventsWhenFull() throws InterruptedException {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<CatalogEvent> received = Collections.synchronizedList(new ArrayList<>());
+		CatalogEventBus.Subscription subscription = bus.addAsyncListener(event -> {
+			received.add(event);
+			entered.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 2);
+
+		CatalogEvent[] events = new CatalogEvent[5];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = new CatalogEvent(CatalogEvent.Type.BOOK_CHECKED_OUT, i, book, i);
+		}
+		bus.publish(events[0]);
+		assertTrue("The listener should get the first event.", entered.await(10, TimeUnit.SECONDS));
+		// the listener is busy with the first event, two more fit in the buffer and the rest are dropped
+		for (int i = 1; i < events.length; i++) {
+			bus.publish(events[i]);
+		}
+		assertTrue("Two events should wait and two be dropped, " + subscription.getPendingEvents() + " wait and "
+				+ subscription.getDroppedEvents() + " were dropped.",
+				subscription.getPendingEvents() == 2 && subscription.getDroppedEvents() == 2);
+
+		release.countDown();
+		subscription.awaitDelivery();
+		assertTrue("The events that fit should be delivered in order, got " + received,
+				received.size() == 3 && received.get(0) == events[0] && received.get(1) == events[1] && received.get(2) == events[2]);
+
+		subscription.close();
+		bus.publish(events[4]);
+		assertTrue("A closed subscription shouldn't get events.", received.size() == 3 && !bus.hasListeners());
+
+		try {
+			bus.addAsyncListener(event -> { }, 0);
+			fail("A buffer without room should be rejected.");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
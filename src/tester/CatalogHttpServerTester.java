@@ -0,0 +1,126 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.CatalogHttpServer;
+import main.LibraryCatalog;
+import main.MoneyFormat;
+import main.User;
+
+public class CatalogHttpServerTester {
+
+	LibraryCatalog LC;
+
+	@Before
+	public void setup() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		books.add(new Book(1, "Plain", "Author", "Fiction", LocalDate.of(2023, 9, 1), false));
+		books.add(new Book(2, "Commas, and \"quotes\"", "Doe, Jane", "fiction", LocalDate.of(2023, 9, 1), true));
+		books.add(new Book(3, "Other", "Author", "Mystery", LocalDate.of(2023, 9, 1), false));
+		DoublyLinkedList<User> users = new DoublyLinkedList<>();
+		users.add(new User(1, "John Smith"));
+		LC = new LibraryCatalog(books, users);
+	}
+
+	@Test
+	public void testSearchQuotesFields() throws IOException {
+		CatalogHttpServer server = new CatalogHttpServer(LC, 0);
+		server.start();
+		try {
+			Response response = request(server, "GET", "/search?genre=FICTION");
+			assertTrue("Searching should answer 200 but answered " + response.status, response.status == 200);
+			assertTrue("The books of the genre should be listed with their fields quoted, got: " + response.body,
+					response.body.equals("1,Plain,Author,Fiction,true\n2,\"Commas, and \"\"quotes\"\"\",\"Doe, Jane\",fiction,false\n"));
+
+			response = request(server, "GET", "/search?author=" + URLEncoder.encode("doe, jane", StandardCharsets.UTF_8)
+					+ "&title=" + URLEncoder.encode("commas, and \"quotes\"", StandardCharsets.UTF_8));
+			assertTrue("Every given field should be matched ignoring case, got: " + response.body, response.body.startsWith("2,"));
+			assertTrue("A search without matches should be empty.", request(server, "GET", "/search?genre=Poetry").body.isEmpty());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testCheckoutAndReturn() throws IOException {
+		CatalogHttpServer server = new CatalogHttpServer(LC, 0);
+		server.start();
+		try {
+			Response response = request(server, "POST", "/checkout?user=1&book=1,2,99,1");
+			assertTrue("Each book should have its own result, got: " + response.body,
+					response.status == 200 && response.body.equals("1,true\n2,false\n99,false\n1,false\n"));
+			assertTrue("The checked out book shouldn't be available.",
+					request(server, "GET", "/availability?book=1").body.equals("false\n"));
+			assertTrue("The fees of the user should be answered.",
+					request(server, "GET", "/fees?user=1").body.equals(MoneyFormat.format(0) + "\n"));
+
+			response = request(server, "POST", "/return?book=1,3");
+			assertTrue("Only the checked out book can be returned, got: " + response.body, response.body.equals("1,true\n3,false\n"));
+			assertTrue("The returned book should be available again.",
+					request(server, "GET", "/availability?book=1").body.equals("true\n"));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testInvalidRequests() throws IOException {
+		CatalogHttpServer server = new CatalogHttpServer(LC, 0);
+		server.start();
+		try {
+			assertTrue("A checkout must be a POST.", request(server, "GET", "/checkout?user=1&book=1").status == 405);
+			assertTrue("A missing parameter is a bad request.", request(server, "GET", "/availability").status == 400);
+			assertTrue("A parameter that isn't a number is a bad request.", request(server, "GET", "/fees?user=abc").status == 400);
+			assertTrue("A list with a bad ID is a bad request.", request(server, "POST", "/return?book=1,x").status == 400);
+			assertTrue("An unknown user isn't found.", request(server, "GET", "/fees?user=99").status == 404);
+			assertTrue("An unknown user can't check out books.", request(server, "POST", "/checkout?user=99&book=1").status == 404);
+			assertTrue("Nothing should have been checked out.", LC.getBookAvailability(1));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	private static class Response {
+		int status;
+		String body;
+	}
+
+	private static Response request(CatalogHttpServer server, String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) URI.create("http://localhost:" + server.getPort() + path).toURL()
+				.openConnection();
+		connection.setRequestMethod(method);
+		try {
+			Response response = new Response();
+			response.status = connection.getResponseCode();
+			InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			if (in != null) {
+				try (InputStream stream = in) {
+					stream.transferTo(bytes);
+				}
+			}
+			response.body = bytes.toString(StandardCharsets.UTF_8);
+			return response;
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.CatalogJournal;
+import main.LibraryCatalog;
+import main.User;
+
+public class CatalogJournalTester {
+
+	LibraryCatalog LC;
+	Path journalFile;
+
+	@Before
+	public void setup() throws IOException {
+		LC = new LibraryCatalog();
+		journalFile = Files.createTempFile("catalog", ".journal");
+	}
+
+	@Test
+	public void testReplayKeepsCheckoutDay() throws Exception {
+		LocalDate checkoutDay = LocalDate.of(2023, 10, 2);
+		LC.setClock(clockAt(checkoutDay));
+		int[] ids = availableBookIds(LC, 2);
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			LC.checkOutBook(ids[0]);
+			LC.checkOutBooks(1, new int[] { ids[1] });
+			journal.close();
+
+			// replayed weeks later, the checkouts must keep the day they were made on
+			LibraryCatalog recovered = new LibraryCatalog();
+			recovered.setClock(clockAt(checkoutDay.plusDays(45)));
+			CatalogJournal.open(recovered, journalFile).close();
+
+			for (int id : ids) {
+				Book book = findBookById(recovered, id);
+				if (book == null)
+					fail("Replayed catalog lost the book with id = " + id);
+				assertTrue("Replayed checkout of book id = " + id + " should be on " + checkoutDay + " but was on " + book.getLastCheckOut(),
+						book.isCheckedOut() && checkoutDay.equals(book.getLastCheckOut()));
+			}
+			assertTrue("Replayed catalog should have the same version as the journaled one.", recovered.getVersion() == LC.getVersion());
+		}
+		finally {
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	@Test
+	public void testReplayRestoresCatalog() throws Exception {
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			changeCatalog(LC);
+			journal.close();
+
+			LibraryCatalog recovered = new LibraryCatalog();
+			CatalogJournal.open(recovered, journalFile).close();
+			checkSameCatalog(LC, recovered);
+		}
+		finally {
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	@Test
+	public void testTornRecordIsDiscarded() throws Exception {
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			changeCatalog(LC);
+			journal.close();
+			long goodSize = Files.size(journalFile);
+
+			// a crash in the middle of a write leaves the length of a record without the rest of it
+			Files.write(journalFile, new byte[] { 0, 0, 0, 64, 1, 2, 3 }, StandardOpenOption.APPEND);
+			LibraryCatalog recovered = new LibraryCatalog();
+			journal = CatalogJournal.open(recovered, journalFile);
+			checkSameCatalog(LC, recovered);
+			assertTrue("The torn record should be cut off the journal.", Files.size(journalFile) == goodSize);
+
+			// records journaled after recovering must follow the last good one
+			recovered.addBook("After Recovery", "Author", "Fiction");
+			journal.close();
+			LibraryCatalog replayed = new LibraryCatalog();
+			CatalogJournal.open(replayed, journalFile).close();
+			checkSameCatalog(recovered, replayed);
+		}
+		finally {
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	@Test
+	public void testRecoverFromCheckpoint() throws Exception {
+		Path snapshotFile = Files.createTempFile("catalog", ".snapshot");
+		Path previousSegment = journalFile.resolveSibling(journalFile.getFileName() + ".old");
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			changeCatalog(LC);
+			journal.checkpoint(snapshotFile);
+			assertTrue("A finished checkpoint shouldn't leave the previous segment behind.", !Files.exists(previousSegment));
+			changeCatalog(LC);
+			journal.close();
+
+			CatalogJournal recovered = CatalogJournal.recover(snapshotFile, journalFile);
+			recovered.close();
+			checkSameCatalog(LC, recovered.getCatalog());
+		}
+		finally {
+			Files.deleteIfExists(snapshotFile);
+			Files.deleteIfExists(previousSegment);
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	@Test
+	public void testCrashBeforeOldSegmentIsDeleted() throws Exception {
+		Path snapshotFile = Files.createTempFile("catalog", ".snapshot");
+		Path previousSegment = journalFile.resolveSibling(journalFile.getFileName() + ".old");
+		Path oldRecords = Files.createTempFile("catalog", ".journal");
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			changeCatalog(LC);
+			journal.sync();
+			Files.copy(journalFile, oldRecords, StandardCopyOption.REPLACE_EXISTING);
+			journal.checkpoint(snapshotFile);
+			changeCatalog(LC);
+			journal.close();
+
+			// a crash after the snapshot was saved but before the old segment was deleted leaves both behind
+			Files.copy(oldRecords, previousSegment);
+			CatalogJournal recovered = CatalogJournal.recover(snapshotFile, journalFile);
+			recovered.close();
+			checkSameCatalog(LC, recovered.getCatalog());
+		}
+		finally {
+			Files.deleteIfExists(snapshotFile);
+			Files.deleteIfExists(oldRecords);
+			Files.deleteIfExists(previousSegment);
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	@Test
+	public void testFailedCheckpointKeepsOldSegment() throws Exception {
+		// a snapshot can't replace a directory that isn't empty, so saving it fails after the journal rotated
+		Path snapshotDirectory = Files.createTempDirectory("catalog");
+		Path blocker = Files.createFile(snapshotDirectory.resolve("blocker"));
+		Path missingSnapshot = snapshotDirectory.resolveSibling(snapshotDirectory.getFileName() + ".missing");
+		Path previousSegment = journalFile.resolveSibling(journalFile.getFileName() + ".old");
+		try {
+			CatalogJournal journal = CatalogJournal.open(LC, journalFile);
+			changeCatalog(LC);
+			try {
+				journal.checkpoint(snapshotDirectory);
+				fail("Saved a snapshot over a directory.");
+			}
+			catch (IOException e) {
+				// expected
+			}
+			assertTrue("A failed checkpoint must keep the old segment.", Files.exists(previousSegment));
+			changeCatalog(LC);
+			journal.close();
+
+			// without a snapshot the catalog is read from the CSV files and both segments are replayed
+			CatalogJournal recovered = CatalogJournal.recover(missingSnapshot, journalFile);
+			recovered.close();
+			checkSameCatalog(LC, recovered.getCatalog());
+		}
+		finally {
+			Files.deleteIfExists(blocker);
+			Files.deleteIfExists(snapshotDirectory);
+			Files.deleteIfExists(snapshotDirectory.resolveSibling(snapshotDirectory.getFileName() + ".tmp"));
+			Files.deleteIfExists(previousSegment);
+			Files.deleteIfExists(journalFile);
+		}
+	}
+
+	private static Clock clockAt(LocalDate day) {
+		return Clock.fixed(day.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+	}
+
+	private static int[] availableBookIds(LibraryCatalog catalog, int count) {
+		int[] ids = new int[count];
+		int found = 0;
+		for (Book book : catalog.getBookCatalog()) {
+			if (found < count && !book.isCheckedOut()) {
+				ids[found++] = book.getId();
+			}
+		}
+		if (found < count)
+			fail("The catalog doesn't have " + count + " available books.");
+		return ids;
+	}
+
+	private static Book findBookById(LibraryCatalog catalog, int id) {
+		for (Book book : catalog.getBookCatalog()) {
+			if (book.getId() == id)
+				return book;
+		}
+		return null;
+	}
+
+	/** Makes one change of every kind journaled: added and removed books, checkouts and returns with and without a user. */
+	private static void changeCatalog(LibraryCatalog catalog) {
+		User user = catalog.getUsers().iterator().next();
+		int[] ids = availableBookIds(catalog, 4);
+		catalog.checkOutBooks(user.getId(), new int[] { ids[0], ids[1] });
+		catalog.checkOutBook(ids[2]);
+		catalog.returnBooks(new int[] { ids[1] });
+		catalog.returnBook(ids[2]);
+		catalog.removeBook(ids[3]);
+		catalog.addBook("Journaled Title", "Journaled Author", "Fiction");
+	}
+
+	private static void checkSameCatalog(LibraryCatalog expected, LibraryCatalog actual) {
+		assertTrue("Replayed catalog should be at version " + expected.getVersion() + " but is at " + actual.getVersion(),
+				actual.getVersion() == expected.getVersion());
+		Iterator<Book> expectedBooks = expected.getBookCatalog().iterator();
+		for (Book book : actual.getBookCatalog()) {
+			if (!expectedBooks.hasNext())
+				fail("Replayed catalog has more books than the journaled one.");
+			checkSameBook(expectedBooks.next(), book);
+		}
+		assertTrue("Replayed catalog has fewer books than the journaled one.", !expectedBooks.hasNext());
+
+		Iterator<User> expectedUsers = expected.getUsers().iterator();
+		for (User user : actual.getUsers()) {
+			if (!expectedUsers.hasNext())
+				fail("Replayed catalog has more users than the journaled one.");
+			User expectedUser = expectedUsers.next();
+			Iterator<Book> expectedList = expectedUser.getCheckedOutList().iterator();
+			for (Book book : user.getCheckedOutList()) {
+				if (!expectedList.hasNext())
+					fail("User " + user.getId() + " has more checked out books after replaying.");
+				checkSameBook(expectedList.next(), book);
+			}
+			assertTrue("User " + user.getId() + " has fewer checked out books after replaying.",
+					user.getId() == expectedUser.getId() && !expectedList.hasNext());
+		}
+		assertTrue("Replayed catalog has fewer users than the journaled one.", !expectedUsers.hasNext());
+	}
+
+	private static void checkSameBook(Book expected, Book actual) {
+		assertTrue("Book " + expected.getId() + " wasn't replayed with the same fields.",
+				actual.getId() == expected.getId()
+				&& actual.getTitle().equals(expected.getTitle())
+				&& actual.getAuthor().equals(expected.getAuthor())
+				&& actual.getGenre().equals(expected.getGenre())
+				&& actual.getLastCheckoutDay() == expected.getLastCheckoutDay()
+				&& actual.isCheckedOut() == expected.isCheckedOut());
+	}
+}
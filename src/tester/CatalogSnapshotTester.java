@@ -0,0 +1,137 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.LibraryCatalog;
+import main.User;
+
+public class CatalogSnapshotTester {
+
+	LibraryCatalog LC;
+	Path snapshotFile;
+
+	@Before
+	public void setup() throws IOException {
+		LC = new LibraryCatalog();
+		snapshotFile = Files.createTempFile("catalog", ".snapshot");
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		try {
+			User user = LC.getUsers().iterator().next();
+			int[] ids = new int[3];
+			int found = 0;
+			for (Book book : LC.getBookCatalog()) {
+				if (found < ids.length && !book.isCheckedOut()) {
+					ids[found++] = book.getId();
+				}
+			}
+			LC.checkOutBooks(user.getId(), new int[] { ids[0], ids[1] });
+			LC.checkOutBook(ids[2]);
+			LC.returnBook(ids[1]);
+			LC.addBook("Snapshot Title", "Snapshot Author", "Fiction");
+			LC.removeBook(LC.getBookCatalog().iterator().next().getId());
+
+			LC.saveSnapshot(snapshotFile);
+			LibraryCatalog loaded = LibraryCatalog.loadSnapshot(snapshotFile);
+
+			assertTrue("Loaded catalog should be at version " + LC.getVersion() + " but is at " + loaded.getVersion(),
+					loaded.getVersion() == LC.getVersion());
+			Iterator<Book> expectedBooks = LC.getBookCatalog().iterator();
+			for (Book book : loaded.getBookCatalog()) {
+				if (!expectedBooks.hasNext())
+					fail("Loaded catalog has more books than the saved one.");
+				checkBook(expectedBooks.next(), book);
+			}
+			assertTrue("Loaded catalog has fewer books than the saved one.", !expectedBooks.hasNext());
+
+			Iterator<User> expectedUsers = LC.getUsers().iterator();
+			for (User loadedUser : loaded.getUsers()) {
+				if (!expectedUsers.hasNext())
+					fail("Loaded catalog has more users than the saved one.");
+				User expected = expectedUsers.next();
+				assertTrue("User " + expected.getId() + " wasn't loaded with the same ID and name.",
+						loadedUser.getId() == expected.getId() && loadedUser.getName().equals(expected.getName()));
+				Iterator<Book> expectedList = expected.getCheckedOutList().iterator();
+				for (Book book : loadedUser.getCheckedOutList()) {
+					if (!expectedList.hasNext())
+						fail("User " + expected.getId() + " has more checked out books after loading.");
+					checkBook(expectedList.next(), book);
+				}
+				assertTrue("User " + expected.getId() + " has fewer checked out books after loading.", !expectedList.hasNext());
+			}
+			assertTrue("Loaded catalog has fewer users than the saved one.", !expectedUsers.hasNext());
+
+			// new books must not reuse the ID of a book that was removed before saving
+			LC.addBook("Next", "Author", "Fiction");
+			loaded.addBook("Next", "Author", "Fiction");
+			assertTrue("Loaded catalog should give new books the same ID as the saved one.",
+					lastBook(loaded).getId() == lastBook(LC).getId());
+		}
+		finally {
+			Files.deleteIfExists(snapshotFile);
+		}
+	}
+
+	@Test
+	public void testCorruptedSnapshotIsRejected() throws IOException {
+		try {
+			LC.saveSnapshot(snapshotFile);
+			byte[] saved = Files.readAllBytes(snapshotFile);
+			// one flipped bit anywhere after the magic number must fail the checksum
+			for (int offset = 4; offset < saved.length; offset += Math.max(1, saved.length / 50)) {
+				byte[] corrupted = saved.clone();
+				corrupted[offset] ^= 0x10;
+				Files.write(snapshotFile, corrupted);
+				try {
+					LibraryCatalog.loadSnapshot(snapshotFile);
+					fail("Loaded a snapshot corrupted at byte " + offset);
+				}
+				catch (IOException e) {
+					// expected
+				}
+			}
+			Files.write(snapshotFile, Arrays.copyOf(saved, saved.length / 2));
+			try {
+				LibraryCatalog.loadSnapshot(snapshotFile);
+				fail("Loaded a truncated snapshot.");
+			}
+			catch (IOException e) {
+				// expected
+			}
+		}
+		finally {
+			Files.deleteIfExists(snapshotFile);
+		}
+	}
+
+	private static void checkBook(Book expected, Book actual) {
+		assertTrue("Book " + expected.getId() + " wasn't loaded with the same fields.",
+				actual.getId() == expected.getId()
+				&& actual.getTitle().equals(expected.getTitle())
+				&& actual.getAuthor().equals(expected.getAuthor())
+				&& actual.getGenre().equals(expected.getGenre())
+				&& actual.getLastCheckoutDay() == expected.getLastCheckoutDay()
+				&& actual.isCheckedOut() == expected.isCheckedOut());
+	}
+
+	private static Book lastBook(LibraryCatalog catalog) {
+		Book last = null;
+		for (Book book : catalog.getBookCatalog()) {
+			last = book;
+		}
+		return last;
+	}
+}
@@ -0,0 +1,177 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.CatalogSnapshot;
+import main.LibraryCatalog;
+import main.User;
+
+public class CatalogVersionsTester {
+
+	static final Clock CLOCK = Clock.fixed(LocalDate.of(2023, 11, 20).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+
+	LibraryCatalog LC;
+
+	@Before
+	public void setup() throws IOException {
+		LC = new LibraryCatalog();
+		LC.setClock(CLOCK);
+	}
+
+	@Test
+	public void testSnapshotsKeepTheirVersion() {
+		// the first snapshot is taken before any list of a user is used
+		ArrayList<CatalogSnapshot> snapshots = new ArrayList<>();
+		ArrayList<String> expected = new ArrayList<>();
+		snapshots.add(LC.snapshot());
+		expected.add(describe(LC.getBookCatalog(), LC.getUsers()));
+
+		Random random = new Random(26);
+		for (int step = 1; step <= 3000; step++) {
+			change(LC, random, step);
+			if (step % 250 == 0) {
+				snapshots.add(LC.snapshot());
+				expected.add(describe(LC.getBookCatalog(), LC.getUsers()));
+				// some snapshots are read right away, the others only once the catalog moved on
+				if (step % 500 == 0) {
+					checkSnapshot(snapshots.get(snapshots.size() - 1), expected.get(expected.size() - 1));
+				}
+			}
+		}
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			checkSnapshot(snapshots.get(i), expected.get(i));
+		}
+	}
+
+	@Test
+	public void testSnapshotIsSharedUntilNextChange() {
+		CatalogSnapshot first = LC.snapshot();
+		assertTrue("Readers of the same version should share its snapshot.", LC.snapshot() == first);
+		String before = describe(first.getBookCatalog(), first.getUsers());
+
+		LC.addBook("Title", "Author", "Fiction");
+		CatalogSnapshot second = LC.snapshot();
+		assertTrue("A change should give a new snapshot.", second != first && second.getVersion() > first.getVersion());
+		assertTrue("The old snapshot changed after the catalog did.", describe(first.getBookCatalog(), first.getUsers()).equals(before));
+
+		// changing a copy of a snapshot doesn't change the catalog or other snapshots
+		first.getBookCatalog().get(0).setCheckedOut(!first.getBookCatalog().get(0).isCheckedOut());
+		first.getUsers().get(0).getCheckedOutList().clear();
+		assertTrue("Changing a snapshot changed the catalog.",
+				describe(second.getBookCatalog(), second.getUsers()).equals(describe(LC.getBookCatalog(), LC.getUsers())));
+	}
+
+	@Test
+	public void testRemovedBooksAreReclaimed() {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		DoublyLinkedList<User> users = new DoublyLinkedList<>();
+		for (int id = 1; id <= 50; id++) {
+			books.add(new Book(id, "Title " + id, "Author", "Fiction", LocalDate.of(2023, 9, 1), false));
+		}
+		User holder = new User(1, "John Smith");
+		users.add(holder);
+		LibraryCatalog catalog = new LibraryCatalog(books, users);
+		catalog.setClock(CLOCK);
+		catalog.checkOutBooks(holder.getId(), new int[] { 3 });
+		catalog.snapshot();
+
+		ArrayList<WeakReference<Book>> removed = new ArrayList<>();
+		for (int round = 0; round < 40; round++) {
+			for (int i = 0; i < 25; i++) {
+				catalog.addBook("Added " + round, "Author", "Mystery");
+			}
+			for (Book book : catalog.getBookCatalog()) {
+				if (book.getId() > 50) {
+					removed.add(new WeakReference<>(book));
+				}
+			}
+			for (WeakReference<Book> reference : removed) {
+				Book book = reference.get();
+				if (book != null) {
+					catalog.removeBook(book.getId());
+				}
+			}
+			catalog.snapshot();
+		}
+		catalog.removeBook(3);
+		CatalogSnapshot last = catalog.snapshot();
+		assertTrue("The removed book held by the user should still be in the snapshot.",
+				last.getUsers().get(0).getCheckedOutList().size() == 1
+				&& last.getUsers().get(0).getCheckedOutList().get(0).getId() == 3);
+		assertTrue("The snapshot should only list the books left.", last.getBookCatalog().size() == 49);
+
+		int alive = removed.size();
+		for (int attempt = 0; attempt < 20 && alive > removed.size() / 10; attempt++) {
+			System.gc();
+			alive = 0;
+			for (WeakReference<Book> reference : removed) {
+				if (reference.get() != null)
+					alive++;
+			}
+		}
+		assertTrue(alive + " of " + removed.size() + " removed books are still reachable.", alive <= removed.size() / 10);
+	}
+
+	private static void change(LibraryCatalog catalog, Random random, int step) {
+		int id = 1 + random.nextInt(50 + step / 3);
+		int userId = 1 + random.nextInt(32);
+		switch (random.nextInt(6)) {
+		case 0:
+		case 1:
+			// more books are added than removed, so the vectors grow past a few levels
+			catalog.addBook("Title " + step, "Author " + step % 7, "Fiction");
+			break;
+		case 2:
+			catalog.removeBook(id);
+			break;
+		case 3:
+			catalog.checkOutBooks(userId, new int[] { id, id + 1 });
+			break;
+		case 4:
+			catalog.returnBooks(new int[] { id, id - 1 });
+			break;
+		default:
+			catalog.checkOutBook(id);
+			break;
+		}
+	}
+
+	private static void checkSnapshot(CatalogSnapshot snapshot, String expected) {
+		String actual = describe(snapshot.getBookCatalog(), snapshot.getUsers());
+		assertTrue("The snapshot of version " + snapshot.getVersion() + " doesn't hold the catalog as it was.", actual.equals(expected));
+	}
+
+	/** Writes every field of the books and users that a snapshot must keep. */
+	private static String describe(Iterable<Book> books, Iterable<User> users) {
+		StringBuilder text = new StringBuilder();
+		for (Book book : books) {
+			describe(text, book);
+		}
+		for (User user : users) {
+			text.append(user.getId()).append(' ').append(user.getName()).append(':');
+			for (Book book : user.getCheckedOutList()) {
+				describe(text, book);
+			}
+			text.append('\n');
+		}
+		return text.toString();
+	}
+
+	private static void describe(StringBuilder text, Book book) {
+		text.append(book.getId()).append(',').append(book.getTitle()).append(',').append(book.getAuthor()).append(',')
+				.append(book.isCheckedOut()).append(',').append(book.getLastCheckoutDay()).append(';');
+	}
+}
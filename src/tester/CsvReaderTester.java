@@ -0,0 +1,134 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import main.CsvReader;
+
+public class CsvReaderTester {
+
+	static final String QUOTED = "1,\"Hello, World\",\"He said \"\"hi\"\"\",\"two\nlines\",plain\r\n"
+			+ "2,,\"\",  7  ,\"\u00e9t\u00e9\"\n";
+
+	@Test
+	public void testQuotedFieldsFromStream() throws IOException {
+		checkQuoted(new CsvReader(new ByteArrayInputStream(QUOTED.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void testQuotedFieldsFromBuffer() throws IOException {
+		checkQuoted(new CsvReader(ByteBuffer.wrap(QUOTED.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	private void checkQuoted(CsvReader reader) throws IOException {
+		try (CsvReader csv = reader) {
+			assertTrue("Failed to read the first record.", csv.nextRecord());
+			assertTrue("First record should have 5 fields but had " + csv.fieldCount(), csv.fieldCount() == 5);
+			assertTrue("Failed to parse the ID of the first record.", csv.getInt(0) == 1);
+			assertTrue("A quoted field should keep its comma.", csv.getString(1).equals("Hello, World"));
+			assertTrue("Escaped quotes should be unescaped.", csv.getString(2).equals("He said \"hi\""));
+			assertTrue("A quoted field should keep its line break.", csv.getString(3).equals("two\nlines"));
+			assertTrue("The \\r of a \\r\\n line break isn't part of the last field.", csv.getString(4).equals("plain"));
+			assertTrue("The record text should keep the quotes and drop the line break.",
+					csv.getRecord().equals("1,\"Hello, World\",\"He said \"\"hi\"\"\",\"two\nlines\",plain"));
+
+			assertTrue("Failed to read the second record.", csv.nextRecord());
+			assertTrue("Second record should have 5 fields but had " + csv.fieldCount(), csv.fieldCount() == 5);
+			assertTrue("Empty fields should be blank.", csv.isBlank(1) && csv.isBlank(2) && csv.getString(2).isEmpty());
+			assertTrue("Spaces around a number should be ignored.", csv.getInt(3) == 7);
+			assertTrue("Text should be decoded as UTF-8.", csv.getString(4).equals("\u00e9t\u00e9"));
+			assertTrue("There should be no third record.", !csv.nextRecord());
+		}
+	}
+
+	@Test
+	public void testQuotedFieldLongerThanBuffer() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append("a, \"b\"\n");
+		}
+		String field = text.toString();
+		String csv = "1,\"" + field.replace("\"", "\"\"") + "\",end\n2,x,y\n";
+		try (CsvReader reader = new CsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+			assertTrue("Failed to read the long record.", reader.nextRecord());
+			assertTrue("The long quoted field should be read whole.", reader.fieldCount() == 3
+					&& reader.getString(1).equals(field) && reader.getString(2).equals("end"));
+			assertTrue("Failed to read the record after the long one.", reader.nextRecord() && reader.getInt(0) == 2);
+		}
+	}
+
+	@Test
+	public void testGetEpochDay() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (LocalDate date = LocalDate.of(1896, 1, 1); date.getYear() < 2105; date = date.plusDays(1)) {
+			text.append(date).append(',').append(date.toEpochDay()).append('\n');
+		}
+		try (CsvReader reader = new CsvReader(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)))) {
+			while (reader.nextRecord()) {
+				assertTrue("Wrong epoch day for " + reader.getString(0) + ": " + reader.getEpochDay(0),
+						reader.getEpochDay(0) == reader.getInt(1));
+				assertTrue("Wrong date for " + reader.getString(0), reader.getDate(0).toEpochDay() == reader.getInt(1));
+			}
+		}
+	}
+
+	@Test
+	public void testGetEpochDayRejectsInvalidDates() throws IOException {
+		String[] invalid = { "2023-02-29", "2023-13-01", "2023-04-31", "2023-00-10", "2023/09/15", "15-09-2023" };
+		for (String date : invalid) {
+			try (CsvReader reader = new CsvReader(ByteBuffer.wrap((date + "\n").getBytes(StandardCharsets.US_ASCII)))) {
+				reader.nextRecord();
+				try {
+					reader.getEpochDay(0);
+					fail("Didn't reject the invalid date " + date);
+				}
+				catch (DateTimeException e) {
+					// expected
+				}
+			}
+		}
+		try (CsvReader reader = new CsvReader(ByteBuffer.wrap("2024-02-29\n".getBytes(StandardCharsets.US_ASCII)))) {
+			reader.nextRecord();
+			assertTrue("Failed to parse a leap day.", reader.getEpochDay(0) == LocalDate.of(2024, 2, 29).toEpochDay());
+		}
+	}
+
+	@Test
+	public void testGetIntList() throws IOException {
+		String valid = "{2 4 6},{},{ 50  30 },7,{-3 +8},{2147483647 -2147483648}\n";
+		try (CsvReader reader = new CsvReader(ByteBuffer.wrap(valid.getBytes(StandardCharsets.US_ASCII)))) {
+			reader.nextRecord();
+			assertTrue("Failed to parse a list of IDs.", Arrays.equals(reader.getIntList(0), new int[] { 2, 4, 6 }));
+			assertTrue("An empty list should have no numbers.", reader.getIntList(1).length == 0);
+			assertTrue("Extra spaces should be skipped.", Arrays.equals(reader.getIntList(2), new int[] { 50, 30 }));
+			assertTrue("A number without braces is a list of one.", Arrays.equals(reader.getIntList(3), new int[] { 7 }));
+			assertTrue("Signs should be kept.", Arrays.equals(reader.getIntList(4), new int[] { -3, 8 }));
+			assertTrue("The limits of an int should be parsed.",
+					Arrays.equals(reader.getIntList(5), new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE }));
+		}
+
+		String[] invalid = { "{2 x}", "{2-4}", "{-}", "{2,4}", "{1 2147483648}", "{-2147483649}", "{99999999999999999999}" };
+		for (String list : invalid) {
+			try (CsvReader reader = new CsvReader(ByteBuffer.wrap(("\"" + list + "\"\n").getBytes(StandardCharsets.US_ASCII)))) {
+				reader.nextRecord();
+				try {
+					reader.getIntList(0);
+					fail("Didn't reject the invalid list " + list);
+				}
+				catch (NumberFormatException e) {
+					// expected
+				}
+			}
+		}
+	}
+}
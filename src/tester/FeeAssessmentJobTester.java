@@ -0,0 +1,161 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.CsvReader;
+import main.FeeAssessmentJob;
+import main.LibraryCatalog;
+import main.MoneyFormat;
+import main.User;
+
+public class FeeAssessmentJobTester {
+
+	static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+	static final long THRESHOLD = 2000;
+	static final byte[] PREVIOUS = "previous ledger\n".getBytes(StandardCharsets.UTF_8);
+
+	LibraryCatalog LC;
+	Path directory;
+	Path ledger;
+
+	@Before
+	public void setup() throws IOException {
+		DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+		DoublyLinkedList<User> users = new DoublyLinkedList<>();
+		for (int id = 1; id <= 3000; id++) {
+			Book book = new Book(id, "Title " + id, "Author", "Fiction", TODAY.minusDays(id % 70), id % 4 != 0);
+			books.add(book);
+			User user = new User(id, id % 7 == 0 ? "Doe, \"Jane\" " + id : "User " + id);
+			user.getCheckedOutList().add(book);
+			if (id % 3 == 0) {
+				user.getCheckedOutList().add(books.get(id / 3 - 1));
+			}
+			users.add(user);
+		}
+		LC = new LibraryCatalog(books, users);
+		LC.setClock(Clock.fixed(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+		directory = Files.createTempDirectory("ledger");
+		ledger = directory.resolve("ledger.csv");
+		Files.write(ledger, PREVIOUS);
+	}
+
+	@Test
+	public void testLedgerIsReplaced() throws IOException {
+		try {
+			for (int parallelism : new int[] { 1, 4 }) {
+				FeeAssessmentJob job = new FeeAssessmentJob(LC, ledger, THRESHOLD, parallelism);
+				assertTrue("A job that didn't start has no progress.", job.getProgress() == 0.0 && job.getThroughput() == 0.0);
+				FeeAssessmentJob.Summary summary = job.run();
+				assertTrue("The job should finish, " + summary, !summary.isCancelled() && !job.isCancelled());
+				assertTrue("Every user should be assessed with " + parallelism + " threads.", job.getProgress() == 1.0
+						&& job.getAssessedUsers() == 3000 && summary.getUsers() == 3000 && job.getThroughput() > 0);
+				assertTrue("The fees should be as of the day of the catalog.", summary.getAsOfDay() == TODAY.toEpochDay());
+				checkLedger(summary);
+				checkOnlyLedger();
+
+				try {
+					job.run();
+					fail("A job can't be run twice.");
+				}
+				catch (IllegalStateException e) {
+					// expected
+				}
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testCancelKeepsPreviousLedger() throws IOException, InterruptedException {
+		try {
+			FeeAssessmentJob cancelled = new FeeAssessmentJob(LC, ledger, THRESHOLD, 2);
+			cancelled.cancel();
+			FeeAssessmentJob.Summary summary = cancelled.run();
+			assertTrue("A job cancelled before it starts shouldn't assess anyone, " + summary,
+					summary.isCancelled() && summary.getUsers() == 0);
+			checkPreviousLedger();
+
+			// cancelled from another thread once it's running, it may finish first
+			FeeAssessmentJob job = new FeeAssessmentJob(LC, ledger, THRESHOLD, 2);
+			Thread canceller = new Thread(() -> {
+				while (job.getProgress() == 0.0 && !Thread.currentThread().isInterrupted()) {
+					Thread.onSpinWait();
+				}
+				job.cancel();
+			});
+			canceller.start();
+			summary = job.run();
+			canceller.interrupt();
+			canceller.join();
+			if (summary.isCancelled()) {
+				assertTrue("A cancelled job should stop before the last user, " + summary, summary.getUsers() < 3000);
+				checkPreviousLedger();
+			}
+			else {
+				checkLedger(summary);
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	/** Checks the ledger line by line against the fees of the users. */
+	private void checkLedger(FeeAssessmentJob.Summary summary) throws IOException {
+		long total = 0;
+		long flagged = 0;
+		try (CsvReader reader = new CsvReader(Files.newInputStream(ledger))) {
+			assertTrue("The ledger should have a header.", reader.nextRecord() && reader.getRecord().equals("id,name,fees,flagged"));
+			for (User user : LC.getUsers()) {
+				long fee = LC.calculateLibraryFeeCents(user);
+				assertTrue("The ledger is missing user " + user.getId(), reader.nextRecord());
+				assertTrue("The entry of user " + user.getId() + " is wrong: " + reader.getRecord(),
+						reader.getInt(0) == user.getId() && reader.getString(1).equals(user.getName())
+						&& reader.getString(2).equals(MoneyFormat.format(fee)) && reader.getBoolean(3) == fee > THRESHOLD);
+				total += fee;
+				flagged += fee > THRESHOLD ? 1 : 0;
+			}
+			assertTrue("The ledger has more users than the catalog.", !reader.nextRecord());
+		}
+		assertTrue("The totals of the summary are wrong: " + summary,
+				summary.getTotalCents() == total && summary.getFlaggedUsers() == flagged && flagged > 0);
+	}
+
+	private void checkPreviousLedger() throws IOException {
+		assertTrue("A cancelled job shouldn't replace the ledger.", new String(Files.readAllBytes(ledger),
+				StandardCharsets.UTF_8).equals(new String(PREVIOUS, StandardCharsets.UTF_8)));
+		checkOnlyLedger();
+	}
+
+	private void checkOnlyLedger() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			assertTrue("The temporary file of the ledger should be gone.", files.count() == 1);
+		}
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
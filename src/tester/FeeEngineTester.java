@@ -0,0 +1,117 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.FeeEngine;
+import main.LibraryCatalog;
+import main.User;
+
+public class FeeEngineTester {
+
+	static final LocalDate START = LocalDate.of(2024, 2, 10);
+
+	LibraryCatalog LC;
+
+	@Before
+	public void setup() throws IOException {
+		LC = new LibraryCatalog();
+	}
+
+	@Test
+	public void testFeesGrowAsTheClockAdvances() {
+		Book book = new Book(1, "Title", "Author", "Fiction", START, true);
+		Book neverCheckedOut = new Book(2, "Title", "Author", "Fiction", (LocalDate) null, false);
+		for (int days = 0; days <= 90; days++) {
+			FeeEngine engine = new FeeEngine(clockAt(START.plusDays(days)));
+			assertTrue("The engine should be on " + START.plusDays(days) + " but is on day " + engine.today(),
+					engine.today() == START.plusDays(days).toEpochDay());
+			long expected = days < 31 ? 0 : 1000 + 150 * (days - 31);
+			long fee = engine.feeCents(book, engine.today());
+			assertTrue(days + " days after the checkout the fee should be " + expected + " cents but was " + fee, fee == expected);
+			assertTrue("The float fee should match the fee in cents.", engine.fee(book, engine.today()) == expected / 100.0f);
+			assertTrue("A book never checked out owes nothing.", engine.feeCents(neverCheckedOut, engine.today()) == 0);
+			assertTrue("The fee as of a day shouldn't depend on the clock.",
+					engine.feeCents(book, (int) START.plusDays(45).toEpochDay()) == 1000 + 150 * 14);
+		}
+	}
+
+	@Test
+	public void testCatalogFollowsItsClock() throws IOException {
+		User user = LC.getUsers().iterator().next();
+		int id = -1;
+		for (Book book : LC.getBookCatalog()) {
+			if (!book.isCheckedOut()) {
+				id = book.getId();
+				break;
+			}
+		}
+		if (id < 0)
+			fail("The catalog doesn't have an available book.");
+
+		LC.setClock(clockAt(START));
+		LC.checkOutBooks(user.getId(), new int[] { id });
+		Book checkedOut = findBookById(id);
+		assertTrue("The book should be checked out on the day of the clock.", START.equals(checkedOut.getLastCheckOut()));
+
+		Path report = Files.createTempFile("report", ".txt");
+		try {
+			byte[] previousReport = null;
+			for (int days = 29; days <= 34; days++) {
+				LocalDate day = START.plusDays(days);
+				LC.setClock(clockAt(day));
+				FeeEngine engine = LC.getFeeEngine();
+				assertTrue("The engine of the catalog should be on " + day, engine.today() == day.toEpochDay());
+
+				long expectedUser = engine.totalFeeCents(user.getCheckedOutList(), engine.today());
+				long newBookFee = days < 31 ? 0 : 1000 + 150 * (days - 31);
+				assertTrue("The fees of the user on " + day + " should be " + expectedUser + " cents but were "
+						+ LC.calculateLibraryFeeCents(user), LC.calculateLibraryFeeCents(user) == expectedUser);
+				assertTrue("The book checked out on " + START + " should owe " + newBookFee + " cents on " + day,
+						engine.feeCents(checkedOut, engine.today()) == newBookFee);
+
+				long expectedTotal = 0;
+				for (Book book : LC.getBookCatalog()) {
+					if (book.isCheckedOut())
+						expectedTotal += engine.feeCents(book, engine.today());
+				}
+				assertTrue("The outstanding fees on " + day + " should be " + expectedTotal + " cents but were "
+						+ LC.totalOutstandingFeeCents(), LC.totalOutstandingFeeCents() == expectedTotal);
+
+				// the report is cached by day, a new day must not hand out the report of the day before
+				LC.generateReport(report, false);
+				byte[] bytes = Files.readAllBytes(report);
+				assertTrue("The report of " + day + " should differ from the one of the day before.",
+						previousReport == null || !Arrays.equals(previousReport, bytes));
+				previousReport = bytes;
+			}
+		}
+		finally {
+			Files.deleteIfExists(report);
+		}
+	}
+
+	private Book findBookById(int id) {
+		for (Book book : LC.getBookCatalog()) {
+			if (book.getId() == id)
+				return book;
+		}
+		return null;
+	}
+
+	private static Clock clockAt(LocalDate day) {
+		return Clock.fixed(day.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,169 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.CsvReader;
+import main.IncrementalCatalogSaver;
+import main.LibraryCatalog;
+import main.User;
+
+public class IncrementalCatalogSaverTester {
+
+	LibraryCatalog LC;
+	IncrementalCatalogSaver saver;
+	Path directory;
+	Path catalogFile;
+	Path userFile;
+
+	@Before
+	public void setup() throws IOException {
+		LC = new LibraryCatalog();
+		directory = Files.createTempDirectory("catalog");
+		catalogFile = Files.copy(Paths.get("data/catalog.csv"), directory.resolve("catalog.csv"));
+		userFile = Files.copy(Paths.get("data/user.csv"), directory.resolve("user.csv"));
+		saver = new IncrementalCatalogSaver(LC, catalogFile, userFile);
+	}
+
+	@Test
+	public void testReturnUpdatesEveryHolder() throws IOException {
+		try {
+			Iterator<User> users = LC.getUsers().iterator();
+			User first = users.next();
+			User second = users.next();
+			int id = availableBookId();
+			// a single return leaves the book in the list of the first user, so both users end up having it
+			LC.checkOutBooks(first.getId(), new int[] { id });
+			LC.returnBook(id);
+			LC.checkOutBooks(second.getId(), new int[] { id });
+			saver.save();
+
+			LC.returnBooks(new int[] { id });
+			assertTrue("Returning the book should take it out of both lists.",
+					!hasBook(first, id) && !hasBook(second, id));
+			saver.save();
+			IncrementalCatalogSaver.compact(catalogFile, userFile);
+			checkSavedCatalog();
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testSavedChangesMatchCatalog() throws IOException {
+		try {
+			Iterator<User> users = LC.getUsers().iterator();
+			int userId = users.next().getId();
+			int otherUserId = users.next().getId();
+			int[] ids = new int[4];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = availableBookId();
+				LC.checkOutBook(ids[i]);
+			}
+			LC.returnBooks(ids);
+			LC.checkOutBooks(userId, new int[] { ids[0], ids[1] });
+			LC.checkOutBooks(otherUserId, new int[] { ids[2] });
+			LC.returnBooks(new int[] { ids[1], ids[2] });
+			LC.removeBook(ids[3]);
+			LC.addBook("Commas, \"quotes\"\nand lines", "Author", "Fiction");
+			saver.save();
+			// changes saved in several rounds pile up in the deltas
+			LC.checkOutBooks(otherUserId, new int[] { ids[1] });
+			saver.save();
+			IncrementalCatalogSaver.compact(catalogFile, userFile);
+			assertTrue("Compacting should delete the deltas.",
+					!Files.exists(directory.resolve("catalog.csv.delta")) && !Files.exists(directory.resolve("user.csv.delta")));
+			checkSavedCatalog();
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	/** Checks that the compacted CSV files hold the books and users of the catalog, in catalog order. */
+	private void checkSavedCatalog() throws IOException {
+		try (CsvReader reader = new CsvReader(Files.newInputStream(catalogFile))) {
+			reader.nextRecord(); // header
+			Iterator<Book> books = LC.getBookCatalog().iterator();
+			while (reader.nextRecord()) {
+				if (!books.hasNext())
+					fail("The saved catalog has more books than the catalog.");
+				Book book = books.next();
+				String date = book.getLastCheckOut() == null ? "" : book.getLastCheckOut().toString();
+				assertTrue("The saved row of book " + book.getId() + " doesn't match it: " + reader.getRecord(),
+						reader.getInt(0) == book.getId()
+						&& reader.getString(1).equals(book.getTitle())
+						&& reader.getString(2).equals(book.getAuthor())
+						&& reader.getString(3).equals(book.getGenre())
+						&& reader.getString(4).equals(date)
+						&& reader.getBoolean(5) == book.isCheckedOut());
+			}
+			assertTrue("The saved catalog has fewer books than the catalog.", !books.hasNext());
+		}
+		try (CsvReader reader = new CsvReader(Files.newInputStream(userFile))) {
+			reader.nextRecord(); // header
+			Iterator<User> users = LC.getUsers().iterator();
+			while (reader.nextRecord()) {
+				if (!users.hasNext())
+					fail("The saved catalog has more users than the catalog.");
+				User user = users.next();
+				int[] ids = new int[user.getCheckedOutList().size()];
+				int count = 0;
+				for (Book book : user.getCheckedOutList()) {
+					ids[count++] = book.getId();
+				}
+				int[] saved = reader.fieldCount() > 2 ? reader.getIntList(2) : new int[0];
+				assertTrue("The saved list of user " + user.getId() + " is " + Arrays.toString(saved) + " instead of "
+						+ Arrays.toString(ids), reader.getInt(0) == user.getId() && Arrays.equals(saved, ids));
+			}
+			assertTrue("The saved catalog has fewer users than the catalog.", !users.hasNext());
+		}
+	}
+
+	private int availableBookId() {
+		for (Book book : LC.getBookCatalog()) {
+			if (!book.isCheckedOut() && !heldByAnyUser(book.getId()))
+				return book.getId();
+		}
+		fail("The catalog doesn't have an available book.");
+		return -1;
+	}
+
+	private boolean heldByAnyUser(int id) {
+		for (User user : LC.getUsers()) {
+			if (hasBook(user, id))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean hasBook(User user, int id) {
+		for (Book book : user.getCheckedOutList()) {
+			if (book.getId() == id)
+				return true;
+		}
+		return false;
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,138 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.LibraryCatalog;
+import main.User;
+
+public class LiveReportTester {
+
+	static final LocalDate START = LocalDate.of(2023, 11, 20);
+	static final String[] GENRES = { "Fiction", "MYSTERY", "classics", "Adventure", "Science Fiction", "Poetry" };
+
+	Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("live");
+	}
+
+	@Test
+	public void testMatchesFullReport() throws IOException {
+		try {
+			LibraryCatalog full = new LibraryCatalog();
+			LibraryCatalog live = new LibraryCatalog();
+			LibraryCatalog[] catalogs = { full, live };
+			setDay(catalogs, START);
+			live.enableLiveReport();
+			checkSameReport(full, live, 0);
+
+			Random random = new Random(45);
+			for (int step = 1; step <= 1500; step++) {
+				int op = random.nextInt(7);
+				int id = 1 + random.nextInt(60 + step / 10);
+				int userId = 1 + random.nextInt(32);
+				for (LibraryCatalog catalog : catalogs) {
+					switch (op) {
+					case 0:
+						catalog.addBook("Title " + step, "Author", GENRES[step % GENRES.length]);
+						break;
+					case 1:
+						catalog.removeBook(id);
+						break;
+					case 2:
+						catalog.checkOutBook(id);
+						break;
+					case 3:
+						catalog.returnBook(id);
+						break;
+					case 4:
+						catalog.checkOutBooks(userId, new int[] { id, id + 1, id + 4 });
+						break;
+					case 5:
+						catalog.returnBooks(new int[] { id, id + 2 });
+						break;
+					default:
+						catalog.checkOutBooks(userId, new int[] { id });
+						break;
+					}
+				}
+				if (step % 150 == 0) {
+					// the days go by too, the fees of the live report are added up as of the day it's written
+					setDay(catalogs, START.plusDays(step / 30));
+					checkSameReport(full, live, step);
+				}
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testFeesGrowWithoutChanges() throws IOException {
+		try {
+			DoublyLinkedList<Book> books = new DoublyLinkedList<>();
+			for (int id = 1; id <= 6; id++) {
+				books.add(new Book(id, "Title " + id, "Author", GENRES[id % GENRES.length], START.minusDays(10 * id), id % 2 == 0));
+			}
+			DoublyLinkedList<User> users = new DoublyLinkedList<>();
+			for (int id = 1; id <= 3; id++) {
+				User user = new User(id, "User " + id);
+				user.getCheckedOutList().add(books.get(2 * id - 1));
+				users.add(user);
+			}
+			// both catalogs share the books, so they have to be checked at the same time
+			LibraryCatalog full = new LibraryCatalog(books, users);
+			LibraryCatalog live = new LibraryCatalog(books, users);
+			LibraryCatalog[] catalogs = { full, live };
+			live.enableLiveReport();
+			for (int days = 0; days <= 60; days += 5) {
+				setDay(catalogs, START.plusDays(days));
+				checkSameReport(full, live, days);
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	private static void setDay(LibraryCatalog[] catalogs, LocalDate day) {
+		for (LibraryCatalog catalog : catalogs) {
+			catalog.setClock(Clock.fixed(day.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+		}
+	}
+
+	private void checkSameReport(LibraryCatalog full, LibraryCatalog live, int step) throws IOException {
+		Path expected = directory.resolve("full.txt");
+		Path actual = directory.resolve("live.txt");
+		full.generateReport(expected, false);
+		live.generateReport(actual, false);
+		assertTrue("The live report differs from the one computed from the catalog at step " + step + ".",
+				Arrays.equals(Files.readAllBytes(expected), Files.readAllBytes(actual)));
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
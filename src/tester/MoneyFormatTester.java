@@ -0,0 +1,69 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import main.MoneyFormat;
+
+public class MoneyFormatTester {
+
+	@Test
+	public void testSmallAmounts() {
+		for (long cents = -100000; cents <= 100000; cents++) {
+			String expected = String.format(Locale.ROOT, "%.2f", cents / 100.0);
+			assertTrue(cents + " cents should be formatted as " + expected + " but was " + MoneyFormat.format(cents),
+					MoneyFormat.format(cents).equals(expected));
+		}
+	}
+
+	@Test
+	public void testExtremeAmounts() {
+		long[] amounts = { Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE, Long.MAX_VALUE - 1, -1, -99, -100, -101,
+				Integer.MIN_VALUE, Integer.MAX_VALUE, 1_000_000_000_000_000_00L, -1_000_000_000_000_000_00L };
+		for (long cents : amounts) {
+			checkAmount(cents);
+		}
+		assertTrue("Long.MIN_VALUE cents should be formatted as -92233720368547758.08.",
+				MoneyFormat.format(Long.MIN_VALUE).equals("-92233720368547758.08"));
+	}
+
+	@Test
+	public void testRandomAmounts() {
+		Random random = new Random(48);
+		for (int i = 0; i < 100000; i++) {
+			// spread over every magnitude, not only the huge amounts a plain nextLong gives
+			checkAmount(random.nextLong() >> random.nextInt(64));
+		}
+	}
+
+	@Test
+	public void testFormatIntoArray() {
+		byte[] dest = new byte[MoneyFormat.MAX_LENGTH + 10];
+		for (long cents : new long[] { 0, 5, -5, 123456, -123456, Long.MIN_VALUE, Long.MAX_VALUE }) {
+			Arrays.fill(dest, (byte) '#');
+			int end = MoneyFormat.format(cents, dest, 5);
+			String expected = BigDecimal.valueOf(cents, 2).toPlainString();
+			assertTrue("Formatting " + cents + " cents should end after " + expected.length() + " bytes but ended after " + (end - 5),
+					end - 5 == expected.length());
+			assertTrue("Formatting " + cents + " cents wrote " + new String(dest, 5, end - 5) + " instead of " + expected,
+					new String(dest, 5, end - 5).equals(expected));
+			for (int i = 0; i < dest.length; i++) {
+				if (i < 5 || i >= end)
+					assertTrue("Formatting " + cents + " cents wrote outside of its bytes at " + i, dest[i] == '#');
+			}
+		}
+	}
+
+	private static void checkAmount(long cents) {
+		String expected = BigDecimal.valueOf(cents, 2).toPlainString();
+		String formatted = MoneyFormat.format(cents);
+		assertTrue(cents + " cents should be formatted as " + expected + " but was " + formatted, formatted.equals(expected));
+		assertTrue(cents + " cents took more than " + MoneyFormat.MAX_LENGTH + " bytes.", formatted.length() <= MoneyFormat.MAX_LENGTH);
+	}
+}
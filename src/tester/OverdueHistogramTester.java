@@ -0,0 +1,93 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.FeeEngine;
+import main.OverdueHistogram;
+
+public class OverdueHistogramTester {
+
+	static final int START_DAY = 19600;
+
+	OverdueHistogram histogram;
+	FeeEngine engine;
+	/** Checkout days of the books in the histogram.*/
+	ArrayList<Integer> days;
+
+	@Before
+	public void setup() {
+		histogram = new OverdueHistogram();
+		engine = new FeeEngine();
+		days = new ArrayList<>();
+	}
+
+	@Test
+	public void testRandomAddsAndRemoves() {
+		Random random = new Random(49);
+		for (int step = 0; step < 5000; step++) {
+			if (days.isEmpty() || random.nextInt(3) > 0) {
+				// checkouts spread over a few years around the start, so the histogram grows both ways
+				int day = START_DAY + random.nextInt(2000) - 1000;
+				histogram.add(day);
+				days.add(day);
+			}
+			else {
+				histogram.remove(days.remove(random.nextInt(days.size())));
+			}
+			if (step % 100 == 0) {
+				checkTotals();
+			}
+		}
+		checkTotals();
+	}
+
+	@Test
+	public void testGrowTowardLowerDays() {
+		// every checkout is older than the ones before, the histogram has to grow at its start each time
+		for (int day = START_DAY; day > START_DAY - 6000; day -= 7) {
+			histogram.add(day);
+			days.add(day);
+			if (days.size() % 50 == 0) {
+				checkTotals();
+			}
+		}
+		checkTotals();
+		for (int i = days.size() - 1; i >= 0; i -= 2) {
+			histogram.remove(days.remove(i));
+		}
+		checkTotals();
+	}
+
+	@Test
+	public void testBooksWithoutCheckoutDayAreIgnored() {
+		histogram.add(Book.NO_DATE);
+		histogram.remove(START_DAY);
+		assertTrue("Histogram should ignore books without a checkout day and books it didn't count.",
+				histogram.size() == 0 && histogram.totalFeeCents(START_DAY + 1000) == 0);
+	}
+
+	private void checkTotals() {
+		assertTrue("Histogram should count " + days.size() + " books but counts " + histogram.size(), histogram.size() == days.size());
+		for (int asOf = START_DAY - 7000; asOf <= START_DAY + 3000; asOf += 97) {
+			long expected = 0;
+			long overdue = 0;
+			for (int day : days) {
+				long fee = engine.feeCents(new Book(0, "Title", "Author", "Genre", day, true), asOf);
+				expected += fee;
+				if (fee > 0)
+					overdue++;
+			}
+			assertTrue("Total fees as of day " + asOf + " should be " + expected + " cents but were " + histogram.totalFeeCents(asOf),
+					histogram.totalFeeCents(asOf) == expected);
+			assertTrue("Overdue books as of day " + asOf + " should be " + overdue + " but were " + histogram.overdueCount(asOf),
+					histogram.overdueCount(asOf) == overdue);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data_structures.DoublyLinkedList;
+import main.Book;
+import main.LibraryCatalog;
+import main.ParallelCatalogLoader;
+
+public class ParallelCatalogLoaderTester {
+
+	static final int[] PARALLELISM = { 1, 2, 3, 8, 32 };
+
+	Path catalogFile;
+
+	@Before
+	public void setup() throws IOException {
+		catalogFile = Files.createTempFile("catalog", ".csv");
+	}
+
+	@Test
+	public void testSampleCatalog() throws IOException {
+		try {
+			LibraryCatalog LC = new LibraryCatalog();
+			ArrayList<Book> expected = new ArrayList<>();
+			for (Book book : LC.getBookCatalog()) {
+				expected.add(book);
+			}
+			for (int parallelism : PARALLELISM) {
+				checkBooks(expected, ParallelCatalogLoader.loadBooks(Paths.get("data/catalog.csv"), parallelism), parallelism);
+			}
+		}
+		finally {
+			Files.deleteIfExists(catalogFile);
+		}
+	}
+
+	@Test
+	public void testQuotedLineBreaks() throws IOException {
+		try {
+			String[] titles = { "Plain", "Commas, and more, commas", "Two\nlines", "Three\r\nlines\nhere", "\"Quoted\" start",
+					"Escaped \"\" quotes\n, and a break", "\n", "Ends with a break\n", "5\" floppy" };
+			ArrayList<Book> expected = new ArrayList<>();
+			StringBuilder text = new StringBuilder("ID,Title,Author,Genre,Last Checkout Date,Checked Out\n");
+			for (int id = 1; id <= 400; id++) {
+				String title = titles[id % titles.length] + " " + id;
+				LocalDate date = id % 5 == 0 ? null : LocalDate.of(2023, 1 + id % 12, 1 + id % 28);
+				expected.add(new Book(id, title, "Author " + id, "Fiction", date, id % 3 == 0));
+				text.append(id).append(',').append(field(title)).append(',').append("Author ").append(id).append(",Fiction,")
+						.append(date == null ? "" : date.toString()).append(',').append(id % 3 == 0).append('\n');
+			}
+			Files.write(catalogFile, text.toString().getBytes(StandardCharsets.UTF_8));
+
+			for (int parallelism : PARALLELISM) {
+				checkBooks(expected, ParallelCatalogLoader.loadBooks(catalogFile, parallelism), parallelism);
+			}
+		}
+		finally {
+			Files.deleteIfExists(catalogFile);
+		}
+	}
+
+	/** Quotes a field the way the catalog files do, a quote in the middle of a plain field is left alone. */
+	private static String field(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('\n') < 0 && !value.startsWith("\"")) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static void checkBooks(ArrayList<Book> expected, DoublyLinkedList<Book> loaded, int parallelism) {
+		Iterator<Book> books = loaded.iterator();
+		for (Book book : expected) {
+			if (!books.hasNext())
+				fail("Only " + loaded.size() + " of " + expected.size() + " books were loaded with " + parallelism + " threads.");
+			Book actual = books.next();
+			assertTrue("Book " + book.getId() + " wasn't loaded right with " + parallelism + " threads: " + actual.getId() + " "
+					+ actual.getTitle(),
+					actual.getId() == book.getId()
+					&& actual.getTitle().equals(book.getTitle())
+					&& actual.getAuthor().equals(book.getAuthor())
+					&& actual.getGenre().equals(book.getGenre())
+					&& actual.getLastCheckoutDay() == book.getLastCheckoutDay()
+					&& actual.isCheckedOut() == book.isCheckedOut());
+		}
+		assertTrue(loaded.size() + " books were loaded with " + parallelism + " threads instead of " + expected.size(),
+				!books.hasNext());
+	}
+}
@@ -0,0 +1,136 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.LibraryCatalog;
+import main.LibraryCatalog.Storage;
+
+public class ParallelReportTester {
+
+	static final Clock CLOCK = Clock.fixed(LocalDate.of(2023, 11, 20).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+
+	Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("report");
+	}
+
+	@Test
+	public void testSampleDataMatchesSequentialReport() throws IOException {
+		try {
+			for (Storage storage : Storage.values()) {
+				for (int parallelism : new int[] { 1, 2, 3, 8 }) {
+					checkSameReport(catalog(storage), catalog(storage), storage, parallelism);
+				}
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testChangedCatalogMatchesSequentialReport() throws IOException {
+		try {
+			for (Storage storage : Storage.values()) {
+				LibraryCatalog sequential = catalog(storage);
+				LibraryCatalog parallel = catalog(storage);
+				Random random = new Random(44);
+				for (int step = 0; step < 300; step++) {
+					int id = 1 + random.nextInt(60);
+					int userId = 1 + random.nextInt(32);
+					for (LibraryCatalog catalog : new LibraryCatalog[] { sequential, parallel }) {
+						switch (step % 4) {
+						case 0:
+							catalog.addBook("Title " + step, "Author", "Mystery");
+							break;
+						case 1:
+							catalog.checkOutBooks(userId, new int[] { id, id + 1 });
+							break;
+						case 2:
+							catalog.returnBooks(new int[] { id });
+							break;
+						default:
+							catalog.removeBook(id + 2);
+							break;
+						}
+					}
+					if (step % 30 == 0) {
+						checkSameReport(sequential, parallel, storage, 4);
+					}
+				}
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testParallelReportIsCached() throws IOException {
+		try {
+			LibraryCatalog catalog = catalog(Storage.OBJECTS);
+			Path report = directory.resolve("report.txt");
+			catalog.generateReport(report, false, 4);
+			Object written = fileKey(report);
+			byte[] bytes = Files.readAllBytes(report);
+
+			// a cached report isn't written again while the file still holds it
+			catalog.generateReport(report, false);
+			catalog.generateReport(report, false, 4);
+			assertTrue("A cached parallel report shouldn't be written again.",
+					written == null || written.equals(fileKey(report)));
+			assertTrue("The cached report changed.", Arrays.equals(bytes, Files.readAllBytes(report)));
+
+			try (Stream<Path> files = Files.list(directory)) {
+				assertTrue("The temporary files of the reports should be gone.", files.count() == 1);
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	private void checkSameReport(LibraryCatalog sequential, LibraryCatalog parallel, Storage storage, int parallelism) throws IOException {
+		Path expected = directory.resolve("sequential.txt");
+		Path actual = directory.resolve("parallel.txt");
+		sequential.generateReport(expected, false);
+		parallel.generateReport(actual, false, parallelism);
+		assertTrue("The parallel report of a " + storage + " catalog with " + parallelism + " threads differs from the sequential one.",
+				Arrays.equals(Files.readAllBytes(expected), Files.readAllBytes(actual)));
+	}
+
+	private static LibraryCatalog catalog(Storage storage) throws IOException {
+		LibraryCatalog catalog = new LibraryCatalog(1, storage);
+		catalog.setClock(CLOCK);
+		return catalog;
+	}
+
+	private static Object fileKey(Path file) throws IOException {
+		return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,133 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.LibraryCatalog;
+import main.ReportCache;
+
+public class ReportCacheTester {
+
+	static final int DAY = 19700;
+
+	ReportCache cache;
+	Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		cache = new ReportCache();
+		directory = Files.createTempDirectory("cache");
+	}
+
+	@Test
+	public void testVersionAndDayChanges() throws IOException {
+		try {
+			Path report = directory.resolve("report.txt");
+			assertTrue("An empty cache has no report.", !cache.has(0, DAY) && !cache.write(0, DAY, report, null));
+			assertTrue("Nothing should be written without a report.", !Files.exists(report));
+
+			cache.put(3, DAY, rendered("version 3"), report);
+			assertTrue("The report should be cached for its version and day.", cache.has(3, DAY));
+			assertTrue("Another version needs a new report.", !cache.has(4, DAY) && !cache.write(4, DAY, report, null));
+			assertTrue("Another day needs a new report.", !cache.has(3, DAY + 1) && !cache.write(3, DAY + 1, report, null));
+
+			// a report of an older version finished late doesn't replace the newer one
+			cache.put(2, DAY, rendered("version 2, a bit longer"), report);
+			assertTrue("The newer report should still be cached.", cache.has(3, DAY) && !cache.has(2, DAY));
+			assertTrue("The newer report should be written again.", cache.write(3, DAY, report, null)
+					&& read(report).equals("version 3"));
+
+			ByteArrayOutputStream echo = new ByteArrayOutputStream();
+			assertTrue("The report should be echoed.", cache.write(3, DAY, report, new PrintStream(echo, true, StandardCharsets.UTF_8))
+					&& echo.toString(StandardCharsets.UTF_8).startsWith("version 3"));
+
+			cache.clear();
+			assertTrue("A cleared cache has no report.", !cache.has(3, DAY));
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testFileChanges() throws IOException {
+		try {
+			Path report = directory.resolve("report.txt");
+			Path other = directory.resolve("other.txt");
+			cache.put(1, DAY, rendered("small report"), report);
+
+			Files.write(report, "changed by someone else".getBytes(StandardCharsets.UTF_8));
+			assertTrue("A small report should be written again from memory.", cache.write(1, DAY, report, null)
+					&& read(report).equals("small report"));
+			assertTrue("The report should be written to another file.", cache.write(1, DAY, other, null)
+					&& read(other).equals("small report"));
+
+			// a large report is only kept in its file
+			char[] text = new char[100 * 1024];
+			Arrays.fill(text, 'x');
+			String large = new String(text);
+			cache.put(2, DAY, rendered(large), report);
+			assertTrue("The large report should be copied to another file.", cache.write(2, DAY, other, null)
+					&& read(other).equals(large));
+			Files.write(other, "changed".getBytes(StandardCharsets.UTF_8));
+			assertTrue("The large report can't be read back from a changed file.", !cache.has(2, DAY)
+					&& !cache.write(2, DAY, other, null));
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testCatalogRewritesChangedFile() throws IOException {
+		try {
+			LibraryCatalog LC = new LibraryCatalog();
+			Path report = directory.resolve("report.txt");
+			LC.generateReport(report, false);
+			byte[] expected = Files.readAllBytes(report);
+
+			Files.write(report, "changed by someone else".getBytes(StandardCharsets.UTF_8));
+			LC.generateReport(report, false);
+			assertTrue("A report file changed by someone else should be written again.",
+					Arrays.equals(expected, Files.readAllBytes(report)));
+
+			LC.addBook("Title", "Author", "Fiction");
+			LC.generateReport(report, false);
+			assertTrue("A change of the catalog should render the report again.", !Arrays.equals(expected, Files.readAllBytes(report)));
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	/** Writes a report to a temporary file, like the catalog renders it before putting it in the cache. */
+	private Path rendered(String text) throws IOException {
+		Path temporary = Files.createTempFile(directory, "report", ".tmp");
+		Files.write(temporary, text.getBytes(StandardCharsets.UTF_8));
+		return temporary;
+	}
+
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
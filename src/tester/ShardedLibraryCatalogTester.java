@@ -0,0 +1,157 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.LibraryCatalog;
+import main.ShardedLibraryCatalog;
+import main.User;
+
+public class ShardedLibraryCatalogTester {
+
+	static final Clock CLOCK = Clock.fixed(LocalDate.of(2023, 11, 20).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+
+	Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("sharded");
+	}
+
+	@Test
+	public void testReportMatchesSingleCatalog() throws IOException {
+		try {
+			for (int partitions : new int[] { 1, 3, 8 }) {
+				LibraryCatalog single = new LibraryCatalog();
+				single.setClock(CLOCK);
+				ShardedLibraryCatalog sharded = new ShardedLibraryCatalog(partitions);
+				sharded.setClock(CLOCK);
+				checkSameReport(single, sharded, partitions);
+
+				Random random = new Random(30);
+				for (int step = 1; step <= 600; step++) {
+					int id = 1 + random.nextInt(50 + step / 4);
+					int userId = 1 + random.nextInt(32);
+					switch (random.nextInt(6)) {
+					case 0:
+						single.addBook("Title " + step, "Author", "Mystery");
+						sharded.addBook("Title " + step, "Author", "Mystery");
+						break;
+					case 1:
+						single.removeBook(id);
+						sharded.removeBook(id);
+						break;
+					case 2:
+						single.checkOutBooks(userId, new int[] { id, id + 5, id + 9 });
+						sharded.checkOutBooks(userId, new int[] { id, id + 5, id + 9 });
+						break;
+					case 3:
+						single.returnBooks(new int[] { id, id + 1 });
+						sharded.returnBooks(new int[] { id, id + 1 });
+						break;
+					case 4:
+						single.checkOutBook(id);
+						sharded.checkOutBook(id);
+						break;
+					default:
+						single.returnBook(id);
+						sharded.returnBook(id);
+						break;
+					}
+					if (step % 100 == 0) {
+						checkSameReport(single, sharded, partitions);
+					}
+				}
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	@Test
+	public void testUsersFindBooksInPartitions() throws IOException {
+		WeakReference<LibraryCatalog> source = new WeakReference<>(new LibraryCatalog());
+		ShardedLibraryCatalog sharded = new ShardedLibraryCatalog(4, source.get());
+		// John Smith has books 2, 4 and 6 in user.csv, book 2 is removed before his list is used
+		sharded.removeBook(2);
+		for (int attempt = 0; attempt < 20 && source.get() != null; attempt++) {
+			System.gc();
+		}
+		assertTrue("The users shouldn't keep the catalog the partitions were split from.", source.get() == null);
+
+		User user = null;
+		for (User candidate : sharded.getUsers()) {
+			if (candidate.getId() == 1)
+				user = candidate;
+		}
+		int[] ids = new int[user.getCheckedOutList().size()];
+		int count = 0;
+		for (Book book : user.getCheckedOutList()) {
+			ids[count++] = book.getId();
+		}
+		assertTrue("User 1 should still have books 2, 4 and 6 but has " + Arrays.toString(ids), Arrays.equals(ids, new int[] { 2, 4, 6 }));
+	}
+
+	@Test
+	public void testReportIsCached() throws IOException {
+		try {
+			ShardedLibraryCatalog sharded = new ShardedLibraryCatalog(4);
+			sharded.setClock(CLOCK);
+			Path report = directory.resolve("report.txt");
+			sharded.generateReport(report, false);
+			Object written = Files.readAttributes(report, BasicFileAttributes.class).fileKey();
+			long version = sharded.getVersion();
+
+			sharded.generateReport(report, false);
+			assertTrue("A cached report shouldn't be written again.",
+					written == null || written.equals(Files.readAttributes(report, BasicFileAttributes.class).fileKey()));
+
+			sharded.addBook("Title", "Author", "Fiction");
+			assertTrue("Adding a book should change the version.", sharded.getVersion() > version);
+			byte[] before = Files.readAllBytes(report);
+			sharded.checkOutBooks(1, new int[] { 51 });
+			sharded.generateReport(report, false);
+			assertTrue("A change should render the report again.", !Arrays.equals(before, Files.readAllBytes(report)));
+			try (Stream<Path> files = Files.list(directory)) {
+				assertTrue("The temporary files of the reports should be gone.", files.count() == 1);
+			}
+		}
+		finally {
+			deleteDirectory();
+		}
+	}
+
+	private void checkSameReport(LibraryCatalog single, ShardedLibraryCatalog sharded, int partitions) throws IOException {
+		Path expected = directory.resolve("single.txt");
+		Path actual = directory.resolve("sharded.txt");
+		single.generateReport(expected, false);
+		sharded.generateReport(actual, false);
+		assertTrue("The report of " + partitions + " partitions differs from the one of a single catalog.",
+				Arrays.equals(Files.readAllBytes(expected), Files.readAllBytes(actual)));
+	}
+
+	private void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,122 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import main.Book;
+import main.LibraryCatalog;
+import main.LibraryCatalog.Storage;
+
+public class StorageModeTester {
+
+	static final String[] GENRES = { "Fiction", "Mystery", "Classics", "Adventure", "Science Fiction", "Other" };
+
+	@Test
+	public void testColumnarMatchesObjects() throws IOException {
+		checkSameAsObjects(Storage.COLUMNAR, false);
+	}
+
+	@Test
+	public void testColumnarLiveReportMatchesObjects() throws IOException {
+		checkSameAsObjects(Storage.COLUMNAR, true);
+	}
+
+	@Test
+	public void testOffHeapMatchesObjects() throws IOException {
+		checkSameAsObjects(Storage.OFF_HEAP, false);
+	}
+
+	@Test
+	public void testOffHeapLiveReportMatchesObjects() throws IOException {
+		checkSameAsObjects(Storage.OFF_HEAP, true);
+	}
+
+	/**
+	 * Makes the same random changes to a catalog kept as objects and to one kept in another storage mode, and
+	 * checks that both list the same books and write the same report along the way.
+	 */
+	private static void checkSameAsObjects(Storage storage, boolean liveReport) throws IOException {
+		Clock clock = Clock.fixed(LocalDate.of(2023, 11, 20).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+		LibraryCatalog objects = new LibraryCatalog(1, Storage.OBJECTS);
+		LibraryCatalog other = new LibraryCatalog(1, storage);
+		LibraryCatalog[] catalogs = { objects, other };
+		for (LibraryCatalog catalog : catalogs) {
+			catalog.setClock(clock);
+		}
+		if (liveReport) {
+			other.enableLiveReport();
+		}
+		Path expectedReport = Files.createTempFile("objects", ".txt");
+		Path actualReport = Files.createTempFile(storage.name().toLowerCase(), ".txt");
+		try {
+			Random random = new Random(38);
+			for (int step = 0; step < 2000; step++) {
+				int op = random.nextInt(7);
+				int id = 1 + random.nextInt(80);
+				int userId = 1 + random.nextInt(32);
+				for (LibraryCatalog catalog : catalogs) {
+					switch (op) {
+					case 0:
+						catalog.addBook("Title " + step % 9, "Author", GENRES[step % GENRES.length]);
+						break;
+					case 1:
+						catalog.removeBook(id);
+						break;
+					case 2:
+						catalog.checkOutBook(id);
+						break;
+					case 3:
+						catalog.returnBook(id);
+						break;
+					case 4:
+						catalog.checkOutBooks(userId, new int[] { id, id + 1, id + 3 });
+						break;
+					case 5:
+						catalog.returnBooks(new int[] { id, id + 2 });
+						break;
+					default:
+						catalog.checkOutBooks(userId, new int[] { id });
+						break;
+					}
+				}
+				if (step % 100 == 0) {
+					checkSameBooks(objects, other, storage);
+					objects.generateReport(expectedReport, false);
+					other.generateReport(actualReport, false);
+					assertTrue("The report of a " + storage + " catalog differs from the one kept as objects after " + step + " changes.",
+							Arrays.equals(Files.readAllBytes(expectedReport), Files.readAllBytes(actualReport)));
+				}
+			}
+		}
+		finally {
+			Files.deleteIfExists(expectedReport);
+			Files.deleteIfExists(actualReport);
+		}
+	}
+
+	private static void checkSameBooks(LibraryCatalog expected, LibraryCatalog actual, Storage storage) {
+		Iterator<Book> expectedBooks = expected.getBookCatalog().iterator();
+		for (Book book : actual.getBookCatalog()) {
+			assertTrue("A " + storage + " catalog has more books than the one kept as objects.", expectedBooks.hasNext());
+			Book other = expectedBooks.next();
+			assertTrue("Book " + other.getId() + " differs in a " + storage + " catalog.",
+					book.getId() == other.getId()
+					&& book.getTitle().equals(other.getTitle())
+					&& book.getGenre().equals(other.getGenre())
+					&& book.getLastCheckoutDay() == other.getLastCheckoutDay()
+					&& book.isCheckedOut() == other.isCheckedOut());
+		}
+		assertTrue("A " + storage + " catalog has fewer books than the one kept as objects.", !expectedBooks.hasNext());
+	}
+}
@@ -0,0 +1,77 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Book;
+import main.LibraryCatalog;
+import main.LibraryCatalog.Storage;
+import main.StringDictionary;
+
+public class StringDictionaryTester {
+
+	StringDictionary dictionary;
+
+	@Before
+	public void setup() {
+		dictionary = new StringDictionary();
+		for (String genre : new String[] { "Fiction", "Mystery", "fiction", "Classics" }) {
+			dictionary.encode(genre);
+		}
+	}
+
+	@Test
+	public void testMatchesAreCachedUntilValuesAreAdded() {
+		boolean[] matches = dictionary.matchesIgnoreCase("FICTION");
+		assertTrue("Both spellings of Fiction should match.", matches[0] && !matches[1] && matches[2] && !matches[3]);
+		assertTrue("The same query should reuse its matches.", dictionary.matchesIgnoreCase("FICTION") == matches);
+		assertTrue("Encoding a known value isn't a new value.", dictionary.encode("Mystery") == 1
+				&& dictionary.matchesIgnoreCase("FICTION") == matches);
+
+		int added = dictionary.encode("FICTION");
+		assertTrue("A code added after the matches should still be checked.",
+				dictionary.matches(matches, added, "FICTION") && !dictionary.matches(matches, 1, "FICTION")
+				&& !dictionary.matches(matches, StringDictionary.NULL_CODE, "FICTION"));
+		boolean[] updated = dictionary.matchesIgnoreCase("FICTION");
+		assertTrue("New values should give new matches.", updated != matches && updated.length == dictionary.size()
+				&& updated[added]);
+	}
+
+	@Test
+	public void testInternSharesStrings() {
+		String author = new String("Jane Austen");
+		String first = dictionary.intern(author);
+		assertTrue("Equal strings should be interned to the same instance.",
+				dictionary.intern(new String("Jane Austen")) == first && dictionary.intern(null) == null);
+		assertTrue("Another dictionary has its own values.", new StringDictionary().size() == 0);
+	}
+
+	@Test
+	public void testCatalogsDontShareGenres() throws IOException {
+		for (Storage storage : Storage.values()) {
+			LibraryCatalog first = new LibraryCatalog(1, storage);
+			LibraryCatalog second = new LibraryCatalog(1, storage);
+			int fiction = first.genreCount("Fiction");
+			first.addBook("Title", "Author", "FICTION");
+			first.addBook("Title", "Author", "Cookbooks");
+			assertTrue(storage + ": a genre added to one catalog shouldn't be counted by another.",
+					second.genreCount("cookbooks") == 0 && second.genreCount("Fiction") == fiction);
+			assertTrue(storage + ": genres should be counted ignoring case.",
+					first.genreCount("fiction") == fiction + 1 && first.genreCount("COOKBOOKS") == 1);
+
+			// the books loaded from the file share the strings of their genres
+			Book previous = null;
+			for (Book book : second.getBookCatalog()) {
+				if (previous != null && previous.getGenre().equals(book.getGenre())) {
+					assertTrue(storage + ": books of the same genre should share its string.",
+							previous.getGenre() == book.getGenre());
+				}
+				previous = book;
+			}
+		}
+	}
+}
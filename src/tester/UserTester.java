@@ -0,0 +1,190 @@
+package tester;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import interfaces.List;
+import main.Book;
+import main.LibraryCatalog;
+import main.User;
+
+public class UserTester {
+
+	Book[] books;
+
+	@Before
+	public void setup() {
+		books = new Book[10];
+		for (int i = 1; i < books.length; i++) {
+			books[i] = new Book(i, "Title " + i, "Author", "Fiction", LocalDate.of(2023, 9, i), true);
+		}
+	}
+
+	@Test
+	public void testLazyListIsResolvedOnce() {
+		AtomicInteger lookups = new AtomicInteger();
+		IntFunction<Book> resolver = id -> {
+			lookups.incrementAndGet();
+			return id < books.length ? books[id] : null;
+		};
+		User user = new User(1, "John Smith", new int[] { 2, 40, 4, 6 }, resolver);
+		assertTrue("The books shouldn't be looked up before the list is used.", lookups.get() == 0);
+
+		List<Book> list = user.getCheckedOutList();
+		assertTrue("Every ID should be looked up once, " + lookups.get() + " lookups were made.", lookups.get() == 4);
+		checkIds(user, 2, 4, 6);
+		assertTrue("The list should hold the books of the resolver.", list.get(0) == books[2] && list.last() == books[6]);
+
+		for (int round = 0; round < 3; round++) {
+			for (Book book : user.getCheckedOutList()) {
+				book.getId();
+			}
+			user.getCheckedOutList().get(1);
+		}
+		assertTrue("The books should be kept once they are found, " + lookups.get() + " lookups were made.", lookups.get() == 4);
+		assertTrue("Resolving the list isn't a change of the user.", !user.isDirty());
+	}
+
+	@Test
+	public void testChangingAnUnresolvedList() {
+		AtomicInteger lookups = new AtomicInteger();
+		IntFunction<Book> resolver = id -> {
+			lookups.incrementAndGet();
+			return books[id];
+		};
+		User added = new User(1, "John Smith", new int[] { 2, 4 }, resolver);
+		added.addBook(books[7]);
+		checkIds(added, 2, 4, 7);
+
+		User removed = new User(2, "Jane Doe", new int[] { 3, 5 }, resolver);
+		assertTrue("A book of the IDs should be found when it's removed.", removed.removeBook(books[3]));
+		assertTrue("A book that isn't in the list can't be removed.", !removed.removeBook(books[3]));
+		checkIds(removed, 5);
+
+		User cleared = new User(3, "Michael Johnson", new int[] { 8, 9 }, resolver);
+		cleared.getCheckedOutList().clear();
+		checkIds(cleared);
+		assertTrue("Every change should mark the user.", added.isDirty() && removed.isDirty() && cleared.isDirty());
+	}
+
+	@Test
+	public void testCompactListOperations() {
+		User user = new User(1, "John Smith");
+		List<Book> list = user.getCheckedOutList();
+		assertTrue("A new user doesn't have books.", list.isEmpty() && list.size() == 0);
+		for (int i = 1; i < books.length; i++) {
+			list.add(books[i]);
+		}
+		checkIds(user, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+		list.add(0, books[9]);
+		list.add(5, books[1]);
+		checkIds(user, 9, 1, 2, 3, 4, 1, 5, 6, 7, 8, 9);
+		assertTrue("The first and last index of a book twice in the list are wrong.",
+				list.firstIndex(books[1]) == 1 && list.lastIndex(books[1]) == 5);
+
+		assertTrue("Setting a book should return the one it replaced.", list.set(2, books[5]) == books[2]);
+		assertTrue("The list should still have two copies of book 1.", list.removeAll(books[1]) == 2);
+		list.remove(0);
+		checkIds(user, 5, 3, 4, 5, 6, 7, 8, 9);
+		assertTrue("The list should contain book 5 but not book 2.", list.contains(books[5]) && !list.contains(books[2]));
+		assertTrue("The first and last books are wrong.", list.first() == books[5] && list.last() == books[9]);
+
+		try {
+			list.get(list.size());
+			fail("Reading after the end of the list should throw an exception.");
+		}
+		catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+
+		list.clear();
+		checkIds(user);
+		list.add(books[4]);
+		checkIds(user, 4);
+	}
+
+	@Test
+	public void testLoadedUserKeepsRemovedBooks() throws IOException {
+		LibraryCatalog LC = new LibraryCatalog();
+		User user = findUserById(LC, 1);
+		// John Smith has books 2, 4 and 6 in user.csv, book 2 is removed before his list is used
+		LC.removeBook(2);
+		checkIds(user, 2, 4, 6);
+		for (Book book : user.getCheckedOutList()) {
+			assertTrue("The books of a loaded user should be the ones of the catalog.", book.getTitle() != null);
+		}
+	}
+
+	@Test
+	public void testListsReadWhileCatalogChanges() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			LibraryCatalog LC = new LibraryCatalog();
+			ExecutorService readers = Executors.newFixedThreadPool(4);
+			try {
+				Future<?>[] reads = new Future<?>[4];
+				for (int i = 0; i < reads.length; i++) {
+					reads[i] = readers.submit(() -> {
+						for (User user : LC.getUsers()) {
+							for (Book book : user.getCheckedOutList()) {
+								if (book == null)
+									throw new AssertionError("User " + user.getId() + " has a null book.");
+							}
+						}
+					});
+				}
+				// the writers take the lock of the catalog the lookups need too
+				for (int id = 1; id <= 50; id++) {
+					LC.checkOutBooks(1 + id % 30, new int[] { id });
+					LC.returnBooks(new int[] { 51 - id });
+				}
+				for (Future<?> read : reads) {
+					read.get(30, TimeUnit.SECONDS);
+				}
+			}
+			finally {
+				readers.shutdownNow();
+			}
+		}
+	}
+
+	private static User findUserById(LibraryCatalog LC, int id) {
+		for (User user : LC.getUsers()) {
+			if (user.getId() == id)
+				return user;
+		}
+		fail("The catalog doesn't have user " + id);
+		return null;
+	}
+
+	private static void checkIds(User user, int... ids) {
+		List<Book> list = user.getCheckedOutList();
+		boolean same = list.size() == ids.length;
+		for (int i = 0; same && i < ids.length; i++) {
+			same = list.get(i).getId() == ids[i];
+		}
+		int count = 0;
+		for (Book book : list) {
+			same = same && count < ids.length && book.getId() == ids[count++];
+		}
+		StringBuilder actual = new StringBuilder();
+		for (Book book : list) {
+			actual.append(' ').append(book.getId());
+		}
+		assertTrue("The list of user " + user.getId() + " should hold" + Arrays.toString(ids) + " but holds" + actual,
+				same && count == ids.length);
+	}
+}